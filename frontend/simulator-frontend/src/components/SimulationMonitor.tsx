@@ -21,6 +21,20 @@ interface NodeMessages {
   [nodeId: string]: Message[];
 }
 
+interface ReporterStats {
+  [nodeId: string]: { reported: number; shed: number };
+}
+
+// Per node counts of the last window on the aggregated stream
+interface NodeRates {
+  [nodeId: string]: {
+    sent: number;
+    received: number;
+    dropped: number;
+    windowMs: number;
+  };
+}
+
 const SimulationMonitor: React.FC<SimulationMonitorProps> = ({
   nodes,
   jitterConfig,
@@ -32,6 +46,9 @@ const SimulationMonitor: React.FC<SimulationMonitorProps> = ({
   const [isSimulationRunning, setIsSimulationRunning] = useState(false);
   const [globalMessages, setGlobalMessages] = useState<Message[]>([]);
   const [nodeMessages, setNodeMessages] = useState<NodeMessages>({});
+  const [reporterStats, setReporterStats] = useState<ReporterStats>({});
+  const [aggregated, setAggregated] = useState(false);
+  const [nodeRates, setNodeRates] = useState<NodeRates>({});
   const [simulationStatus, setSimulationStatus] = useState("");
 
   const wsRef = useRef<WebSocket | null>(null);
@@ -87,6 +104,72 @@ const SimulationMonitor: React.FC<SimulationMonitorProps> = ({
         const jsonStr = content.substring("Received: ".length);
         const messageData = JSON.parse(jsonStr);
 
+        // One window of the aggregated stream, replaces per event updates
+        if (messageData.type === "AGGREGATE") {
+          const rates: NodeRates = {};
+          for (const node of messageData.nodes) {
+            rates[node.node] = {
+              sent: node.sent,
+              received: node.received,
+              dropped: node.dropped,
+              windowMs: messageData.windowMs,
+            };
+          }
+          setNodeRates(rates);
+          if (onMessageAnimation) {
+            for (const edge of messageData.edges) {
+              if (edge.sent > 0) {
+                onMessageAnimation(edge.from, edge.to);
+              }
+            }
+          }
+          return;
+        }
+
+        // State of the simulation so far, sent first when connecting
+        if (messageData.type === "SNAPSHOT") {
+          addGlobalMessage(
+            `Joined simulation with ${messageData.events} events so far`,
+          );
+          const stats: ReporterStats = {};
+          for (const [nodeId, node] of Object.entries<any>(messageData.nodes)) {
+            if (node.lastEvent) {
+              addMessageToNode(
+                nodeId,
+                `Received: ${JSON.stringify(node.lastEvent)}`,
+              );
+            }
+            const reporter = node.latest?.REPORTER_STATS;
+            if (reporter) {
+              const counters = JSON.parse(reporter.message);
+              stats[nodeId] = {
+                reported: counters.reported,
+                shed: counters.shed,
+              };
+            }
+          }
+          setReporterStats(stats);
+          return;
+        }
+
+        // Periodic counters from each node's reporter
+        if (messageData.type === "REPORTER_STATS") {
+          const counters = JSON.parse(messageData.message);
+          setReporterStats((prev) => ({
+            ...prev,
+            [messageData.fromNode]: {
+              reported: counters.reported,
+              shed: counters.shed,
+            },
+          }));
+          return;
+        }
+
+        if (messageData.fromNode && messageData.type === "DROPPED") {
+          addMessageToNode(messageData.fromNode, content);
+          return;
+        }
+
         // Add to both fromNode and toNode inboxes
         if (messageData.fromNode && messageData.type === "SENT") {
           addMessageToNode(messageData.fromNode, content);
@@ -130,7 +213,8 @@ const SimulationMonitor: React.FC<SimulationMonitorProps> = ({
 
   const connectWebSocket = () => {
     const protocol = window.location.protocol === "https:" ? "wss:" : "ws:";
-    const wsUrl = `${protocol}//${window.location.hostname}:8080/ws/simulation`;
+    const path = aggregated ? "ws/aggregate" : "ws/simulation";
+    const wsUrl = `${protocol}//${window.location.hostname}:8080/${path}`;
 
     wsRef.current = new WebSocket(wsUrl);
 
@@ -140,6 +224,17 @@ const SimulationMonitor: React.FC<SimulationMonitorProps> = ({
     };
 
     wsRef.current.onmessage = (event) => {
+      // Events arrive coalesced, several of them in one JSON array frame
+      if (event.data.startsWith("[")) {
+        try {
+          for (const item of JSON.parse(event.data)) {
+            parseAndDistributeMessage(`Received: ${JSON.stringify(item)}`);
+          }
+          return;
+        } catch (error) {
+          // not an event frame, handled as a single message below
+        }
+      }
       parseAndDistributeMessage(`Received: ${event.data}`);
     };
 
@@ -352,6 +447,24 @@ const SimulationMonitor: React.FC<SimulationMonitorProps> = ({
               Disconnect
             </button>
           </div>
+          <label
+            style={{
+              display: "flex",
+              alignItems: "center",
+              gap: "6px",
+              marginTop: "8px",
+              fontSize: "12px",
+              color: "#666",
+            }}
+          >
+            <input
+              type="checkbox"
+              checked={aggregated}
+              disabled={isConnected}
+              onChange={(e) => setAggregated(e.target.checked)}
+            />
+            Aggregated stream (counts per window, for large simulations)
+          </label>
         </div>
 
         {/* Simulation Controls */}
@@ -473,6 +586,20 @@ const SimulationMonitor: React.FC<SimulationMonitorProps> = ({
                   ? `Personal inbox (max ${MAX_MESSAGES_PER_NODE} messages)`
                   : "System messages and connection status"}
               </div>
+              {selectedNodeId && reporterStats[selectedNodeId] && (
+                <div
+                  style={{ fontSize: "12px", color: "#666", marginTop: "2px" }}
+                >
+                  {`Reported ${reporterStats[selectedNodeId].reported} events, shed ${reporterStats[selectedNodeId].shed}`}
+                </div>
+              )}
+              {selectedNodeId && nodeRates[selectedNodeId] && (
+                <div
+                  style={{ fontSize: "12px", color: "#666", marginTop: "2px" }}
+                >
+                  {`Last ${nodeRates[selectedNodeId].windowMs}ms: sent ${nodeRates[selectedNodeId].sent}, received ${nodeRates[selectedNodeId].received}, dropped ${nodeRates[selectedNodeId].dropped}`}
+                </div>
+              )}
             </div>
             <div style={{ display: "flex", gap: "6px" }}>
               {selectedNodeId && (
@@ -1,6 +1,7 @@
 package com.example.api;
 
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public interface Storage {
     void put(String key, Object value);
@@ -10,4 +11,49 @@ public interface Storage {
     void clear();
     int size();
     Map<String, Object> getAll();
+
+    /**
+     * Visits every entry without copying the whole store like getAll() does.
+     */
+    default void forEach(BiConsumer<String, Object> action) {
+        getAll().forEach(action);
+    }
+
+    // Primitive accessors, backends that keep values unboxed override these
+
+    default void putLong(String key, long value) {
+        put(key, value);
+    }
+
+    default long getLong(String key, long defaultValue) {
+        Object value = get(key);
+        return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+    }
+
+    default void putInt(String key, int value) {
+        put(key, value);
+    }
+
+    default int getInt(String key, int defaultValue) {
+        Object value = get(key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    default void putDouble(String key, double value) {
+        put(key, value);
+    }
+
+    default double getDouble(String key, double defaultValue) {
+        Object value = get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+
+    default void putBoolean(String key, boolean value) {
+        put(key, value);
+    }
+
+    default boolean getBoolean(String key, boolean defaultValue) {
+        Object value = get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
 }
@@ -6,11 +6,20 @@ public class NodeConfig {
     private String nodeId;
     private String programName;
     private List<String> peerNodeIds;
+    private ResourceProfile resources;
 
     public NodeConfig(String nodeId, String programName, List<String> peerNodeIds) {
+        this(nodeId, programName, peerNodeIds, null);
+    }
+
+    /**
+     * @param resources null leaves the node's container without limits
+     */
+    public NodeConfig(String nodeId, String programName, List<String> peerNodeIds, ResourceProfile resources) {
         this.nodeId = nodeId;
         this.programName = programName;
         this.peerNodeIds = peerNodeIds;
+        this.resources = resources;
     }
 
     public String getNodeId() {
@@ -24,4 +33,8 @@ public class NodeConfig {
     public List<String> getPeerNodeIds() {
         return peerNodeIds;
     }
+
+    public ResourceProfile getResources() {
+        return resources;
+    }
 }
@@ -0,0 +1,181 @@
+package com.example.model;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resource limits of a node's container and the JVM flags to match, from a
+ * resources section of the topology YAML:
+ *
+ * resources:
+ *   memory: "256m"   # container memory limit, no swap
+ *   cpus: 0.5        # CPU quota in cores
+ *   cpuset: "auto"   # pinned cores, "auto" spreads nodes across the host
+ *   gc: "serial"     # serial, parallel, g1, z or shenandoah
+ *   heap: "192m"     # max heap, 75% of the memory limit if left out
+ *
+ * Unset fields are null and leave the docker or JVM default in place.
+ */
+public class ResourceProfile {
+    public static final String AUTO_CPUSET = "auto";
+    public static final String DEFAULT_GC = "serial";
+    // the same defaults the node image starts the JVM with, see docker/Dockerfile.node
+    public static final int DEFAULT_HEAP_PERCENT = 75;
+
+    private Long memoryBytes;
+    private Double cpus;
+    private String cpuset;
+    private String gc;
+    private Long heapBytes;
+
+    public ResourceProfile() {
+    }
+
+    public static ResourceProfile fromMap(Map<String, Object> resources) {
+        ResourceProfile profile = new ResourceProfile();
+        for (Map.Entry<String, Object> entry : resources.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+
+            switch (key) {
+                case "memory":
+                    profile.memoryBytes = parseBytes(key, value);
+                    break;
+                case "heap":
+                    profile.heapBytes = parseBytes(key, value);
+                    break;
+                case "cpus":
+                    if (!(value instanceof Number) || ((Number) value).doubleValue() <= 0) {
+                        throw new IllegalArgumentException("YAML config - resources cpus should be a positive number");
+                    }
+                    profile.cpus = ((Number) value).doubleValue();
+                    break;
+                case "cpuset":
+                    String cpuset = String.valueOf(value);
+                    if (!AUTO_CPUSET.equals(cpuset) && !cpuset.matches("\\d+(-\\d+)?(,\\d+(-\\d+)?)*")) {
+                        throw new IllegalArgumentException(
+                                "YAML config - resources cpuset should be auto or a list of cores like 0-3,6");
+                    }
+                    profile.cpuset = cpuset;
+                    break;
+                case "gc":
+                    profile.gc = String.valueOf(value).toLowerCase(Locale.ROOT);
+                    gcFlag(profile.gc);
+                    break;
+                default:
+                    throw new IllegalArgumentException("YAML config - unknown resources field: " + key);
+            }
+        }
+
+        return profile.checkHeap();
+    }
+
+    /**
+     * @return this profile with the fields set in override replacing its own
+     */
+    public ResourceProfile merge(ResourceProfile override) {
+        if (override == null) {
+            return this;
+        }
+        ResourceProfile merged = new ResourceProfile();
+        merged.memoryBytes = override.memoryBytes != null ? override.memoryBytes : memoryBytes;
+        merged.cpus = override.cpus != null ? override.cpus : cpus;
+        merged.cpuset = override.cpuset != null ? override.cpuset : cpuset;
+        merged.gc = override.gc != null ? override.gc : gc;
+        merged.heapBytes = override.heapBytes != null ? override.heapBytes : heapBytes;
+        // a heap from one section and a memory limit from another still have to fit
+        return merged.checkHeap();
+    }
+
+    /**
+     * The GC and heap flags for the node's JVM, in place of the node image's
+     * defaults.
+     */
+    public String jvmOptions() {
+        String heap = heapBytes != null
+                ? "-Xmx" + (heapBytes / 1024) + "k"
+                : "-XX:MaxRAMPercentage=" + DEFAULT_HEAP_PERCENT;
+        return gcFlag(gc != null ? gc : DEFAULT_GC) + " " + heap;
+    }
+
+    /**
+     * Whole cores a pinned node gets, at least one.
+     */
+    public int coreCount() {
+        return cpus == null ? 1 : Math.max(1, (int) Math.ceil(cpus));
+    }
+
+    public Long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public Double getCpus() {
+        return cpus;
+    }
+
+    public String getCpuset() {
+        return cpuset;
+    }
+
+    public String getGc() {
+        return gc;
+    }
+
+    public Long getHeapBytes() {
+        return heapBytes;
+    }
+
+    private ResourceProfile checkHeap() {
+        if (heapBytes != null && memoryBytes != null && heapBytes >= memoryBytes) {
+            throw new IllegalArgumentException("YAML config - resources heap should be below the memory limit");
+        }
+        return this;
+    }
+
+    private static String gcFlag(String gc) {
+        switch (gc) {
+            case "serial":
+                return "-XX:+UseSerialGC";
+            case "parallel":
+                return "-XX:+UseParallelGC";
+            case "g1":
+                return "-XX:+UseG1GC";
+            case "z":
+                return "-XX:+UseZGC";
+            case "shenandoah":
+                return "-XX:+UseShenandoahGC";
+            default:
+                throw new IllegalArgumentException(
+                        "YAML config - resources gc should be one of serial, parallel, g1, z or shenandoah");
+        }
+    }
+
+    /*
+     * Accepts a number of bytes or a size with a k, m or g suffix
+     */
+    static long parseBytes(String key, Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        String size = String.valueOf(value).trim().toLowerCase(Locale.ROOT);
+        if (size.endsWith("b")) {
+            size = size.substring(0, size.length() - 1);
+        }
+        long unit = 1;
+        if (size.endsWith("k")) {
+            unit = 1024;
+        } else if (size.endsWith("m")) {
+            unit = 1024 * 1024;
+        } else if (size.endsWith("g")) {
+            unit = 1024 * 1024 * 1024;
+        }
+        if (unit > 1) {
+            size = size.substring(0, size.length() - 1);
+        }
+        try {
+            return Long.parseLong(size.trim()) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("YAML config - resources " + key + " should be a size like 256m");
+        }
+    }
+}
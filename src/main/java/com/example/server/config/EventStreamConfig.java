@@ -0,0 +1,87 @@
+package com.example.server.config;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.example.simulator.CausalOrderBuffer;
+import com.example.simulator.DockerManager;
+import com.example.simulator.EventAggregator;
+import com.example.simulator.EventStore;
+import com.example.simulator.EventStreamServer;
+import com.example.simulator.LatencyTracker;
+import com.example.simulator.MonitorState;
+import com.example.server.websocket.AggregateWebSocketHandler;
+import com.example.server.websocket.EventPipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Nodes started in server mode stream their events to this listener instead
+ * of posting them to /message(s). Events from all nodes go through a
+ * CausalOrderBuffer so the frontend sees them in causal order, and are
+ * counted by the EventAggregator for /ws/aggregate, kept in the EventStore
+ * for /api/events, paired up by the LatencyTracker for /api/latency and
+ * folded into the MonitorState new sessions start from
+ */
+@Configuration
+public class EventStreamConfig {
+  private static final Logger logger = LoggerFactory.getLogger(EventStreamConfig.class);
+
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  public EventAggregator eventAggregator(
+      @Value("${simulation.aggregate.window-ms:" + EventAggregator.DEFAULT_WINDOW_MS + "}") long windowMs) {
+    return new EventAggregator(windowMs, AggregateWebSocketHandler::broadcast);
+  }
+
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  public LatencyTracker latencyTracker(
+      @Value("${simulation.latency.lost-after-ms:" + LatencyTracker.DEFAULT_LOST_AFTER_MS + "}") long lostAfterMs,
+      @Value("${simulation.latency.max-pending:" + LatencyTracker.DEFAULT_MAX_PENDING + "}") int maxPending) {
+    return new LatencyTracker(lostAfterMs, maxPending);
+  }
+
+  @Bean
+  public MonitorState monitorState() {
+    return new MonitorState();
+  }
+
+  @Bean(destroyMethod = "close")
+  public EventStore eventStore(
+      @Value("${simulation.event-store.dir:.event-store}") String dir,
+      @Value("${simulation.event-store.max-segments:" + EventStore.DEFAULT_MAX_SEGMENTS + "}") int maxSegments)
+      throws IOException {
+    return new EventStore(Paths.get(dir), EventStore.DEFAULT_SEGMENT_BYTES, maxSegments);
+  }
+
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  public CausalOrderBuffer causalOrderBuffer(
+      @Value("${simulation.causal-order.hold-ms:" + CausalOrderBuffer.DEFAULT_HOLD_MS + "}") long holdMs,
+      EventAggregator eventAggregator, EventStore eventStore, EventPipeline eventPipeline,
+      MonitorState monitorState, LatencyTracker latencyTracker) {
+    return new CausalOrderBuffer(holdMs, event -> {
+      eventAggregator.add(event);
+      latencyTracker.add(event);
+      try {
+        eventStore.append(event);
+      } catch (IOException e) {
+        logger.error("Failed to store event from {}: {}", event.fromNode, e.getMessage());
+      }
+      synchronized (monitorState) {
+        monitorState.apply(event);
+        eventPipeline.publish(event);
+      }
+    });
+  }
+
+  @Bean(initMethod = "start", destroyMethod = "stop")
+  public EventStreamServer eventStreamServer(
+      @Value("${simulation.event-stream.port:" + DockerManager.MONITOR_STREAM_PORT + "}") int port,
+      CausalOrderBuffer causalOrderBuffer) {
+    return new EventStreamServer(port, causalOrderBuffer::offer);
+  }
+}
@@ -1,19 +1,46 @@
 package com.example.server.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 
+import com.example.server.websocket.AggregateWebSocketHandler;
+import com.example.server.websocket.EventPipeline;
 import com.example.server.websocket.SimulationWebSocketHandler;
+import com.example.simulator.MonitorState;
 
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    // events are coalesced into one array frame per interval, see EventPipeline
+    @Value("${simulation.websocket.frame-interval-ms:" + EventPipeline.DEFAULT_FRAME_INTERVAL_MS + "}")
+    private long frameIntervalMs;
+
+    @Value("${simulation.websocket.max-frame-bytes:" + EventPipeline.DEFAULT_MAX_FRAME_BYTES + "}")
+    private int maxFrameBytes;
+
+    // events buffered per session before the session starts missing them
+    @Value("${simulation.websocket.session-buffer:" + EventPipeline.DEFAULT_SUBSCRIBER_BUFFER + "}")
+    private int sessionBuffer;
+
+    @Autowired
+    private MonitorState monitorState;
+
+    @Bean(destroyMethod = "close")
+    public EventPipeline eventPipeline() {
+        return new EventPipeline(frameIntervalMs, maxFrameBytes, sessionBuffer);
+    }
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(new SimulationWebSocketHandler(), "/ws/simulation")
+        registry.addHandler(new SimulationWebSocketHandler(eventPipeline(), monitorState), "/ws/simulation")
                 .setAllowedOrigins("*"); // Configure CORS as needed
+        registry.addHandler(new AggregateWebSocketHandler(), "/ws/aggregate")
+                .setAllowedOrigins("*");
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.example.server.controller;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.simulator.EventStore;
+
+/*
+ * Range queries and replays over the events recorded by the EventStore, times
+ * are epoch milliseconds
+ */
+@CrossOrigin(origins = "http://localhost:3000")
+@RestController
+public class EventStoreController {
+  private static final Logger logger = LoggerFactory.getLogger(EventStoreController.class);
+  private static final int MAX_PAGE_SIZE = 10_000;
+  // each replay holds a thread for as long as the run it plays back
+  private static final int MAX_REPLAYS = 8;
+
+  @Autowired
+  private EventStore eventStore;
+
+  // no queue, a replay either starts right away or is turned down
+  private final ExecutorService replayExecutor = new ThreadPoolExecutor(0, MAX_REPLAYS, 60, TimeUnit.SECONDS,
+      new SynchronousQueue<>(), r -> {
+        Thread thread = new Thread(r, "event-replay");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  /*
+   * One page of events, pass the returned cursor back to get the next one
+   */
+  @GetMapping("/api/events")
+  public ResponseEntity<?> queryEvents(
+      @RequestParam(value = "from", defaultValue = "0") long from,
+      @RequestParam(value = "to", defaultValue = "" + Long.MAX_VALUE) long to,
+      @RequestParam(value = "node", required = false) String node,
+      @RequestParam(value = "cursor", defaultValue = "0") long cursor,
+      @RequestParam(value = "limit", defaultValue = "1000") int limit) {
+    if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().body("limit should be between 1 and " + MAX_PAGE_SIZE);
+    }
+    try {
+      return ResponseEntity.ok(eventStore.query(from, to, node, cursor, limit));
+    } catch (Exception e) {
+      logger.error("Failed to query events: {}", e.getMessage());
+      return ResponseEntity.status(500).body("Failed to query events: " + e.getMessage());
+    }
+  }
+
+  /*
+   * Streams the events of a range as server-sent events, speed 2 plays the
+   * run back twice as fast as it happened. A speed that is not positive gets a
+   * 400, and at most MAX_REPLAYS run at once, further ones get a 503
+   */
+  @GetMapping("/api/events/replay")
+  public ResponseEntity<SseEmitter> replayEvents(
+      @RequestParam(value = "from", defaultValue = "0") long from,
+      @RequestParam(value = "to", defaultValue = "" + Long.MAX_VALUE) long to,
+      @RequestParam(value = "node", required = false) String node,
+      @RequestParam(value = "speed", defaultValue = "1") double speed) {
+    if (speed <= 0) {
+      // the body has to be an emitter, so the reason is only logged
+      logger.debug("Rejected replay at speed {}", speed);
+      return ResponseEntity.badRequest().build();
+    }
+    SseEmitter emitter = new SseEmitter(0L);
+    try {
+      replayExecutor.execute(() -> replay(emitter, from, to, node, speed));
+    } catch (RejectedExecutionException e) {
+      logger.warn("Rejected replay, {} are already running", MAX_REPLAYS);
+      return ResponseEntity.status(503).build();
+    }
+    return ResponseEntity.ok(emitter);
+  }
+
+  private void replay(SseEmitter emitter, long from, long to, String node, double speed) {
+    try {
+      long played = eventStore.replay(from, to, node, speed, event -> {
+        try {
+          emitter.send(event);
+        } catch (Exception e) {
+          // the client went away, stop the replay
+          throw new IllegalStateException(e);
+        }
+      });
+      logger.info("Replayed {} events at {}x", played, speed);
+      emitter.complete();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      emitter.complete();
+    } catch (Exception e) {
+      logger.debug("Replay ended early: {}", e.getMessage());
+      emitter.completeWithError(e);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    replayExecutor.shutdownNow();
+  }
+}
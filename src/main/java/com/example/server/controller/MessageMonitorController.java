@@ -1,5 +1,7 @@
 package com.example.server.controller;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -8,24 +10,108 @@ import org.springframework.http.ResponseEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.example.server.websocket.SimulationWebSocketHandler;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.example.server.websocket.EventPipeline;
+import com.example.simulator.CausalOrderBuffer;
+import com.example.simulator.LatencyTracker;
+import com.example.simulator.MonitorState;
+import com.example.simulator.MessageReporter.MessageEvent;
 
 @RestController
 public class MessageMonitorController {
   private static final Logger logger = LoggerFactory.getLogger(MessageMonitorController.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Autowired
+  private CausalOrderBuffer causalOrderBuffer;
+
+  @Autowired
+  private EventPipeline eventPipeline;
 
+  @Autowired
+  private MonitorState monitorState;
+
+  @Autowired
+  private LatencyTracker latencyTracker;
+
+  /*
+   * Only publishes the message to the EventPipeline, the WebSocket sessions
+   * get it asynchronously
+   */
   @PostMapping("/message")
   public ResponseEntity<String> receiveMessage(@RequestBody String messageJson) {
     try {
-      logger.info("Received message: {}", messageJson);
+      logger.debug("Received message: {}", messageJson);
 
-      // Broadcast the message to all connected WebSocket clients
-      SimulationWebSocketHandler.broadcast(messageJson);
+      eventPipeline.publish(messageJson);
 
-      return ResponseEntity.ok("Message received and broadcasted");
+      return ResponseEntity.accepted().body("Message accepted for broadcast");
     } catch (Exception e) {
       logger.error("Error processing message: {}", e.getMessage());
       return ResponseEntity.status(500).body("Error processing message: " + e.getMessage());
     }
   }
+
+  /*
+   * Batch ingestion used by the MessageReporter, the body is a JSON array of
+   * events which are put in causal order with those of the other nodes and
+   * broadcasted one by one
+   */
+  @PostMapping("/messages")
+  public ResponseEntity<String> receiveMessages(@RequestBody String batchJson) {
+    try {
+      JsonNode batch = objectMapper.readTree(batchJson);
+      if (!batch.isArray()) {
+        return ResponseEntity.badRequest().body("Expected a JSON array of messages");
+      }
+      logger.debug("Received batch of {} messages", batch.size());
+
+      for (JsonNode event : batch) {
+        causalOrderBuffer.offer(objectMapper.treeToValue(event, MessageEvent.class));
+      }
+
+      return ResponseEntity.ok("Received and broadcasted " + batch.size() + " messages");
+    } catch (Exception e) {
+      logger.error("Error processing message batch: {}", e.getMessage());
+      return ResponseEntity.status(500).body("Error processing message batch: " + e.getMessage());
+    }
+  }
+
+  /*
+   * The same SNAPSHOT a new WebSocket session starts with
+   */
+  @GetMapping("/state")
+  public ResponseEntity<String> getState() {
+    try {
+      return ResponseEntity.ok(monitorState.toSnapshot());
+    } catch (Exception e) {
+      logger.error("Error serializing state: {}", e.getMessage());
+      return ResponseEntity.status(500).body("Error serializing state: " + e.getMessage());
+    }
+  }
+
+  /*
+   * Transport metrics of all nodes in Prometheus text format, as last sent by
+   * their reporters
+   */
+  @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4")
+  public ResponseEntity<String> getMetrics() {
+    return ResponseEntity.ok(monitorState.toMetrics());
+  }
+
+  /*
+   * Per-edge delivery latency of the messages whose SENT and RECEIVED events
+   * have both arrived, and the messages that never did
+   */
+  @GetMapping("/api/latency")
+  public ResponseEntity<String> getLatency() {
+    try {
+      return ResponseEntity.ok(latencyTracker.toJson());
+    } catch (Exception e) {
+      logger.error("Error serializing latency: {}", e.getMessage());
+      return ResponseEntity.status(500).body("Error serializing latency: " + e.getMessage());
+    }
+  }
 }
@@ -1,6 +1,7 @@
 package com.example.server.controller;
 
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -8,204 +9,158 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.beans.factory.annotation.Autowired;
-import javax.annotation.PreDestroy;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.example.server.websocket.SimulationWebSocketHandler;
+import com.example.server.service.SimulationService;
 
+/*
+ * REST front of the SimulationService. Requests complete once the simulation
+ * did what was asked: 400 for invalid requests, 409 when there is no
+ * simulation to act on or already one, 404 for unknown nodes and 500 when
+ * docker failed
+ */
 @CrossOrigin(origins = "http://localhost:3000")
 @RestController
 public class SimulationController {
-  private Process simulatorProcess;
-  private BufferedWriter processWriter;
-  private File tempFile;
   private static final Logger logger = LoggerFactory.getLogger(SimulationController.class);
 
+  @Autowired
+  private SimulationService simulationService;
+
   @PostMapping("/api/simulation/start")
-  public ResponseEntity<String> startSimulation(@RequestParam("file") MultipartFile file) {
+  public CompletableFuture<ResponseEntity<String>> startSimulation(@RequestParam("file") MultipartFile file) {
+    Path topology;
     try {
-      if (simulatorProcess != null) {
-        return ResponseEntity.status(500)
-            .body("Another process is running the simulation with config: " + tempFile.toString());
-      }
-
-      // Create docker images first
-      runCommand("docker", "build", "-t", "distro/node", "-f", "docker/Dockerfile.node", ".");
-      logger.info("Created docker images for nodes");
-
-      tempFile = File.createTempFile("topology-", ".yaml");
-      file.transferTo(tempFile);
-
-      String topologyPath = tempFile.getAbsolutePath();
-
-      ProcessBuilder pb = new ProcessBuilder(
-          "java", "-jar", "target/simulator.jar", topologyPath, "server");
-
-      DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
-      String timestamp = LocalDateTime.now().format(formatter);
-      File logDir = new File(".server-logs");
-      if (!logDir.exists()) {
-        logDir.mkdir();
-      }
-      File logFile = new File(logDir, "simulator_" + timestamp + ".log");
-      pb.redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
-      pb.redirectError(ProcessBuilder.Redirect.appendTo(logFile));
-
-      simulatorProcess = pb.start();
-      processWriter = new BufferedWriter(new OutputStreamWriter(simulatorProcess.getOutputStream()));
-      logger.info("Simulation started with config: {}", topologyPath);
-
-      return ResponseEntity.ok("Simulation started with config: " + tempFile.toString());
-    } catch (IOException | InterruptedException e) {
-      String errorMsg = "Failed to start simulation: " + e.getMessage();
-      return ResponseEntity.status(500).body(errorMsg);
+      topology = Files.createTempFile("topology-", ".yaml");
+      file.transferTo(topology);
+    } catch (IOException e) {
+      return CompletableFuture.completedFuture(
+          ResponseEntity.status(500).body("Failed to start simulation: " + e.getMessage()));
     }
+    return respond(simulationService.start(topology));
   }
 
-  @PostMapping("/api/simulation/node/pause")
-  public ResponseEntity<String> pauseNode(@RequestBody String nodeId) {
-    try {
-      if (simulatorProcess == null || !simulatorProcess.isAlive()) {
-        return ResponseEntity.status(500).body("No simulation is currently running");
-      }
-      if (processWriter == null) {
-        return ResponseEntity.status(500).body("Cannot communicate with simulator process");
-      }
-
-      processWriter.write("pause " + nodeId);
-      processWriter.newLine();
-      processWriter.flush();
-      logger.info("Sent pause command for node: {}", nodeId);
+  @GetMapping("/api/simulation/status")
+  public ResponseEntity<String> getStatus() {
+    return ResponseEntity.ok(simulationService.getStatus().name());
+  }
 
-      return ResponseEntity.ok("Pause command sent for node: " + nodeId);
-    } catch (IOException e) {
-      String errorMsg = "Failed to pause node: " + e.getMessage();
-      logger.error(errorMsg, e);
-      return ResponseEntity.status(500).body(errorMsg);
-    }
+  @PostMapping("/api/simulation/node/pause")
+  public CompletableFuture<ResponseEntity<String>> pauseNode(@RequestBody String nodeId) {
+    return respond(simulationService.pauseNode(nodeId.trim()));
   }
 
   @PostMapping("/api/simulation/node/resume")
-  public ResponseEntity<String> resumeNode(@RequestBody String nodeId) {
-    try {
-      if (simulatorProcess == null || !simulatorProcess.isAlive()) {
-        return ResponseEntity.status(500).body("No simulation is currently running");
-      }
-      if (processWriter == null) {
-        return ResponseEntity.status(500).body("Cannot communicate with simulator process");
-      }
+  public CompletableFuture<ResponseEntity<String>> resumeNode(@RequestBody String nodeId) {
+    return respond(simulationService.resumeNode(nodeId.trim()));
+  }
 
-      processWriter.write("resume " + nodeId);
-      processWriter.newLine();
-      processWriter.flush();
-      logger.info("Sent resume command for node: {}", nodeId);
+  @PostMapping("/api/simulation/node/stop")
+  public CompletableFuture<ResponseEntity<String>> stopNode(@RequestBody String nodeId) {
+    return respond(simulationService.stopNode(nodeId.trim()));
+  }
 
-      return ResponseEntity.ok("Resume command sent for node: " + nodeId);
-    } catch (IOException e) {
-      String errorMsg = "Failed to resume node: " + e.getMessage();
-      logger.error(errorMsg, e);
-      return ResponseEntity.status(500).body(errorMsg);
-    }
+  @PostMapping("/api/simulation/node/restart")
+  public CompletableFuture<ResponseEntity<String>> restartNode(@RequestBody String nodeId) {
+    return respond(simulationService.restartNode(nodeId.trim()));
   }
 
-  @PostMapping("/api/simulation/node/stop")
-  public ResponseEntity<String> stopNode(@RequestBody String nodeId) {
-    try {
-      if (simulatorProcess == null || !simulatorProcess.isAlive()) {
-        return ResponseEntity.status(500).body("No simulation is currently running");
-      }
-      if (processWriter == null) {
-        return ResponseEntity.status(500).body("Cannot communicate with simulator process");
-      }
+  /*
+   * Body: the groups of node ids, e.g. [["node1","node2"],["node3"]]
+   */
+  @PostMapping("/api/simulation/fault/partition")
+  public CompletableFuture<ResponseEntity<String>> partition(@RequestBody List<Set<String>> groups) {
+    return respond(simulationService.partition(groups));
+  }
 
-      processWriter.write("stop " + nodeId);
-      processWriter.newLine();
-      processWriter.flush();
-      logger.info("Sent stop command for node: {}", nodeId);
+  @PostMapping("/api/simulation/fault/heal")
+  public CompletableFuture<ResponseEntity<String>> heal() {
+    return respond(simulationService.heal());
+  }
 
-      return ResponseEntity.ok("Stop command sent for node: " + nodeId);
-    } catch (IOException e) {
-      String errorMsg = "Failed to stop node: " + e.getMessage();
-      logger.error(errorMsg, e);
-      return ResponseEntity.status(500).body(errorMsg);
+  /*
+   * Body: {"node":"node1","dropRate":0.3} or with a "peer" to only change the
+   * link between the two
+   */
+  @PostMapping("/api/simulation/fault/drop")
+  public CompletableFuture<ResponseEntity<String>> setDropRate(@RequestBody FaultRequest request) {
+    if (request.node == null || request.dropRate == null) {
+      return badRequest("node and dropRate are required");
     }
+    return respond(simulationService.setDropRate(request.node, request.dropRate, request.peer));
   }
 
-  @PostMapping("/api/simulation/stop")
-  public ResponseEntity<String> stopSimulation() {
-    try {
-      if (simulatorProcess == null) {
-        return ResponseEntity.status(500).body("There is not simulation running");
-      }
-      long pid = simulatorProcess.pid();
-      ProcessBuilder pb = new ProcessBuilder("kill", "-SIGINT", Long.toString(pid));
-      Process killProcess = pb.start();
-      killProcess.waitFor();
-      simulatorProcess.waitFor();
-      if (tempFile != null && tempFile.exists()) {
-        tempFile.deleteOnExit();
-      }
-      if (processWriter != null) {
-        processWriter.close();
-        processWriter = null;
-      }
-      simulatorProcess = null;
-      logger.info("Simulation stopped");
-
-      return ResponseEntity.ok("Simulation stopped");
-    } catch (Exception e) {
-      String errorMsg = "Simulation stopped but not intentional: " + e.getMessage();
-      return ResponseEntity.ok(errorMsg);
+  /*
+   * Body: {"node":"node1","delayMs":200}
+   */
+  @PostMapping("/api/simulation/fault/delay")
+  public CompletableFuture<ResponseEntity<String>> setDelay(@RequestBody FaultRequest request) {
+    if (request.node == null || request.delayMs == null) {
+      return badRequest("node and delayMs are required");
     }
+    return respond(simulationService.setDelay(request.node, request.delayMs));
   }
 
-  private static void runCommand(String... command) throws IOException, InterruptedException {
-    ProcessBuilder pb = new ProcessBuilder(command);
-    pb.redirectErrorStream(true);
+  @PostMapping("/api/simulation/fault/hold")
+  public CompletableFuture<ResponseEntity<String>> holdDelivery(@RequestBody String nodeId) {
+    return respond(simulationService.holdDelivery(nodeId.trim()));
+  }
 
-    Process process = pb.start();
+  @PostMapping("/api/simulation/fault/release")
+  public CompletableFuture<ResponseEntity<String>> releaseDelivery(@RequestBody String nodeId) {
+    return respond(simulationService.releaseDelivery(nodeId.trim()));
+  }
 
-    try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-      String line;
-      while ((line = reader.readLine()) != null) {
-        System.out.println(line);
-      }
-    }
+  @PostMapping("/api/simulation/fault/reset")
+  public CompletableFuture<ResponseEntity<String>> resetFaults() {
+    return respond(simulationService.resetFaults());
+  }
 
-    int exitCode = process.waitFor();
-    if (exitCode != 0) {
-      System.err.println("Command exited with code " + exitCode);
-    }
+  public static class FaultRequest {
+    public String node;
+    public String peer;
+    // boxed, so a missing field is told apart from 0
+    public Double dropRate;
+    public Long delayMs;
   }
 
-  @PreDestroy
-  public void cleanup() {
-    try {
-      if (simulatorProcess != null && simulatorProcess.isAlive()) {
-        logger.info("Shutting down simulator process during server shutdown");
-        long pid = simulatorProcess.pid();
-        ProcessBuilder pb = new ProcessBuilder("kill", "-SIGINT", Long.toString(pid));
-        Process killProcess = pb.start();
-        killProcess.waitFor();
-        simulatorProcess.waitFor();
+  @PostMapping("/api/simulation/stop")
+  public CompletableFuture<ResponseEntity<String>> stopSimulation() {
+    return respond(simulationService.stop());
+  }
+
+  private static CompletableFuture<ResponseEntity<String>> badRequest(String message) {
+    return CompletableFuture.completedFuture(ResponseEntity.status(400).body(message));
+  }
+
+  private CompletableFuture<ResponseEntity<String>> respond(CompletableFuture<String> result) {
+    return result.handle((message, error) -> {
+      if (error == null) {
+        return ResponseEntity.ok(message);
       }
-      if (tempFile != null && tempFile.exists()) {
-        tempFile.deleteOnExit();
+      Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+      if (cause instanceof NoSuchElementException) {
+        return ResponseEntity.status(404).body(cause.getMessage());
       }
-      logger.info("Cleanup completed");
-    } catch (Exception e) {
-      logger.error("Error during cleanup: " + e.getMessage(), e);
-    }
+      if (cause instanceof IllegalArgumentException) {
+        return ResponseEntity.status(400).body(cause.getMessage());
+      }
+      if (cause instanceof IllegalStateException) {
+        return ResponseEntity.status(409).body(cause.getMessage());
+      }
+      logger.error(cause.getMessage(), cause);
+      return ResponseEntity.status(500).body(cause.getMessage());
+    });
   }
 }
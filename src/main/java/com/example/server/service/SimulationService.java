@@ -0,0 +1,268 @@
+package com.example.server.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.server.websocket.EventPipeline;
+import com.example.simulator.DockerSimulator;
+import com.example.simulator.EventStreamServer;
+import com.example.simulator.LatencyTracker;
+import com.example.simulator.MonitorState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/*
+ * Runs the DockerSimulator inside the server. Every control call goes to a
+ * single control thread, so docker operations never overlap, and returns a
+ * future with its outcome: it fails with an IllegalStateException when there
+ * is no simulation (or already one), with a NoSuchElementException for
+ * unknown nodes and with an IllegalArgumentException for invalid faults.
+ * Every change of the simulation or a node is also published to
+ * the WebSocket sessions as a SIMULATION_STATUS message
+ */
+@Service
+public class SimulationService {
+  private static final Logger logger = LoggerFactory.getLogger(SimulationService.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  public enum Status {
+    IDLE, STARTING, RUNNING, STOPPING, FAILED
+  }
+
+  interface SimulatorFactory {
+    DockerSimulator create(Path topology) throws Exception;
+  }
+
+  private final EventPipeline eventPipeline;
+  private final MonitorState monitorState;
+  private final LatencyTracker latencyTracker;
+  private final EventStreamServer eventStreamServer;
+  private final SimulatorFactory simulatorFactory;
+  private final ExecutorService control = Executors.newSingleThreadExecutor(r -> {
+    Thread thread = new Thread(r, "simulation-control");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // only changed on the control thread
+  private volatile DockerSimulator simulator;
+  private volatile Status status = Status.IDLE;
+
+  @Autowired
+  public SimulationService(EventPipeline eventPipeline, MonitorState monitorState, LatencyTracker latencyTracker,
+      EventStreamServer eventStreamServer, @Value("${simulation.pool-size:0}") int poolSize) {
+    this(eventPipeline, monitorState, latencyTracker, eventStreamServer, topology -> {
+      // server mode, the nodes report to this server
+      DockerSimulator simulator = new DockerSimulator(topology.toString(), false);
+      simulator.setPoolSize(poolSize);
+      return simulator;
+    });
+  }
+
+  SimulationService(EventPipeline eventPipeline, MonitorState monitorState, LatencyTracker latencyTracker,
+      EventStreamServer eventStreamServer, SimulatorFactory simulatorFactory) {
+    this.eventPipeline = eventPipeline;
+    this.monitorState = monitorState;
+    this.latencyTracker = latencyTracker;
+    this.eventStreamServer = eventStreamServer;
+    this.simulatorFactory = simulatorFactory;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * Starts a simulation of the topology, the file is deleted once read.
+   */
+  public CompletableFuture<String> start(Path topology) {
+    return CompletableFuture.supplyAsync(() -> {
+      if (simulator != null) {
+        throw new IllegalStateException("A simulation is already running");
+      }
+      setStatus(Status.STARTING, null, "Starting simulation");
+      monitorState.clear();
+      latencyTracker.clear();
+      eventStreamServer.clear();
+
+      DockerSimulator started = null;
+      try {
+        started = simulatorFactory.create(topology);
+        started.startSimulation();
+        simulator = started;
+      } catch (Exception e) {
+        if (started != null) {
+          // containers that did come up must not outlive the failed start
+          started.shutdown();
+        }
+        setStatus(Status.FAILED, null, "Failed to start simulation: " + e.getMessage());
+        throw new RuntimeException("Failed to start simulation: " + e.getMessage(), e);
+      } finally {
+        deleteQuietly(topology);
+      }
+
+      String message = "Simulation started with " + started.getNodeIds().size() + " nodes";
+      setStatus(Status.RUNNING, null, message);
+      return message;
+    }, control);
+  }
+
+  public CompletableFuture<String> stop() {
+    return CompletableFuture.supplyAsync(() -> {
+      DockerSimulator running = requireSimulator();
+      setStatus(Status.STOPPING, null, "Stopping simulation");
+      try {
+        running.shutdown();
+      } finally {
+        simulator = null;
+      }
+      setStatus(Status.IDLE, null, "Simulation stopped");
+      return "Simulation stopped";
+    }, control);
+  }
+
+  public CompletableFuture<String> pauseNode(String nodeId) {
+    return nodeCommand(nodeId, "PAUSED", "Paused node: ", running -> running.pauseNode(nodeId));
+  }
+
+  public CompletableFuture<String> resumeNode(String nodeId) {
+    return nodeCommand(nodeId, "RUNNING", "Resumed node: ", running -> running.resumeNode(nodeId));
+  }
+
+  public CompletableFuture<String> stopNode(String nodeId) {
+    return nodeCommand(nodeId, "STOPPED", "Stopped node: ", running -> running.stopNode(nodeId));
+  }
+
+  public CompletableFuture<String> restartNode(String nodeId) {
+    return nodeCommand(nodeId, "RUNNING", "Restarted node: ", running -> running.restartNode(nodeId));
+  }
+
+  public CompletableFuture<String> partition(List<Set<String>> groups) {
+    return faultCommand("Partitioned nodes into " + groups, running -> running.partition(groups));
+  }
+
+  public CompletableFuture<String> heal() {
+    return faultCommand("Healed all partitions", DockerSimulator::heal);
+  }
+
+  public CompletableFuture<String> setDropRate(String nodeId, double dropRate, String peer) {
+    String message = "Set drop rate of " + nodeId + (peer != null ? " to " + peer : "") + " to " + dropRate;
+    return faultCommand(message, running -> running.setDropRate(nodeId, dropRate, peer));
+  }
+
+  public CompletableFuture<String> setDelay(String nodeId, long delayMs) {
+    return faultCommand("Set delay of " + nodeId + " to " + delayMs + "ms",
+        running -> running.setDelay(nodeId, delayMs));
+  }
+
+  public CompletableFuture<String> holdDelivery(String nodeId) {
+    return faultCommand("Holding delivery on " + nodeId, running -> running.holdDelivery(nodeId));
+  }
+
+  public CompletableFuture<String> releaseDelivery(String nodeId) {
+    return faultCommand("Released delivery on " + nodeId, running -> running.releaseDelivery(nodeId));
+  }
+
+  public CompletableFuture<String> resetFaults() {
+    return faultCommand("Reset all faults", DockerSimulator::resetFaults);
+  }
+
+  private interface NodeCommand {
+    void run(DockerSimulator simulator);
+  }
+
+  private CompletableFuture<String> nodeCommand(String nodeId, String nodeStatus, String message,
+      NodeCommand command) {
+    return CompletableFuture.supplyAsync(() -> {
+      DockerSimulator running = requireSimulator();
+      if (!running.getNodeIds().contains(nodeId)) {
+        throw new NoSuchElementException("Unknown node: " + nodeId);
+      }
+      command.run(running);
+      monitorState.setNodeStatus(nodeId, nodeStatus);
+      publishStatus(nodeId, nodeStatus, message + nodeId);
+      return message + nodeId;
+    }, control);
+  }
+
+  /*
+   * Faults are injected by the nodes themselves, the simulation keeps running
+   */
+  private interface FaultCommand {
+    DockerSimulator.FaultResult run(DockerSimulator simulator);
+  }
+
+  private CompletableFuture<String> faultCommand(String message, FaultCommand command) {
+    return CompletableFuture.supplyAsync(() -> {
+      DockerSimulator.FaultResult result = command.run(requireSimulator());
+      String summary = result == null ? message : message + " (" + result + ")";
+      publishStatus(null, status.name(), summary);
+      return summary;
+    }, control);
+  }
+
+  private DockerSimulator requireSimulator() {
+    DockerSimulator running = simulator;
+    if (running == null) {
+      throw new IllegalStateException("No simulation is currently running");
+    }
+    return running;
+  }
+
+  private void setStatus(Status status, String nodeId, String message) {
+    this.status = status;
+    publishStatus(nodeId, status.name(), message);
+  }
+
+  private void publishStatus(String nodeId, String status, String message) {
+    logger.info(message);
+    ObjectNode event = objectMapper.createObjectNode()
+        .put("type", "SIMULATION_STATUS")
+        .put("status", status)
+        .put("message", message)
+        .put("timestamp", System.currentTimeMillis());
+    if (nodeId != null) {
+      event.put("node", nodeId);
+    }
+    eventPipeline.publish(event.toString());
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (Exception e) {
+      logger.warn("Failed to delete {}: {}", file, e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    try {
+      if (simulator != null) {
+        logger.info("Shutting down the simulation during server shutdown");
+        // waits for a running command, then stops the simulation
+        stop().get(1, TimeUnit.MINUTES);
+      }
+    } catch (Exception e) {
+      logger.error("Error during cleanup: " + e.getMessage(), e);
+    } finally {
+      control.shutdown();
+    }
+  }
+}
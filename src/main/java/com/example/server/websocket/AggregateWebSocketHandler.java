@@ -0,0 +1,45 @@
+package com.example.server.websocket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/*
+ * Serves the windowed counters of the EventAggregator on /ws/aggregate, for
+ * simulations too busy to follow event by event
+ */
+public class AggregateWebSocketHandler extends TextWebSocketHandler {
+  private static final Logger logger = LoggerFactory.getLogger(AggregateWebSocketHandler.class);
+  private static final CopyOnWriteArraySet<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+
+  @Override
+  public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+    sessions.add(session);
+    logger.info("Aggregate WebSocket connection established: {}", session.getId());
+  }
+
+  @Override
+  public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+    sessions.remove(session);
+    logger.info("Aggregate WebSocket connection closed: {}", session.getId());
+  }
+
+  public static void broadcast(String window) {
+    for (WebSocketSession session : sessions) {
+      if (session.isOpen()) {
+        synchronized (session) {
+          try {
+            session.sendMessage(new TextMessage(window));
+          } catch (Exception e) {
+            logger.error("Error broadcasting to aggregate session {}: {}", session.getId(), e.getMessage());
+          }
+        }
+      }
+    }
+  }
+}
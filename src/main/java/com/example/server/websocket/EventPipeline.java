@@ -0,0 +1,374 @@
+package com.example.server.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.simulator.BinaryEventCodec;
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.example.simulator.PayloadCache;
+import com.example.simulator.Subscription;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Carries events from the ingestion endpoints to the /ws/simulation sessions.
+ *
+ * Publishing only offers the event to a SubmissionPublisher and never waits:
+ * every session subscribes with its own bounded buffer, and a session whose
+ * buffer is full has the event dropped for it alone. A session requests its
+ * next event only once the previous one is in its pending frame, and stops
+ * requesting while a full frame is waiting to be sent, so a slow client
+ * backs up into its own buffer rather than into the publisher. Pending
+ * frames are sent as JSON arrays every frameIntervalMs or once they reach
+ * maxFrameBytes, each session on its own sender thread so a stalled socket
+ * only delays its own frames. Sessions that asked for the binary protocol get their
+ * events as BinaryEventCodec frames instead, with the payloads kept in the
+ * PayloadCache until they ask for them.
+ */
+public class EventPipeline implements AutoCloseable {
+  public static final long DEFAULT_FRAME_INTERVAL_MS = 25;
+  public static final int DEFAULT_MAX_FRAME_BYTES = 64 * 1024;
+  public static final int DEFAULT_SUBSCRIBER_BUFFER = 1024;
+  // a session whose frame has not gone out after this long is closed
+  public static final long SEND_TIME_LIMIT_MS = 10_000;
+
+  private static final Logger logger = LoggerFactory.getLogger(EventPipeline.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final int maxFrameBytes;
+  private final ExecutorService deliveryExecutor = Executors.newFixedThreadPool(
+      Math.max(2, Runtime.getRuntime().availableProcessors() / 2), daemonThreads("websocket-delivery"));
+  // only hands frames to the senders, it never waits on a session itself
+  private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+      daemonThreads("websocket-flusher"));
+  // at most one send in flight per session, so a stalled socket holds one thread and no other session
+  private final ExecutorService senders = Executors.newCachedThreadPool(daemonThreads("websocket-sender"));
+  private final SubmissionPublisher<Item> publisher;
+  private final Map<WebSocketSession, SessionSubscriber> subscribers = new ConcurrentHashMap<>();
+  private final PayloadCache payloadCache = new PayloadCache(PayloadCache.DEFAULT_CAPACITY);
+
+  public EventPipeline(long frameIntervalMs, int maxFrameBytes, int subscriberBuffer) {
+    this.maxFrameBytes = maxFrameBytes;
+    this.publisher = new SubmissionPublisher<>(deliveryExecutor, subscriberBuffer);
+    flusher.scheduleWithFixedDelay(this::flushAll, frameIntervalMs, frameIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  public void publish(MessageEvent event) {
+    if (!subscribers.isEmpty()) {
+      offer(new Item(event, null, payloadCache.put(event.message)));
+    }
+  }
+
+  /**
+   * Publishes an already serialized message, it bypasses subscriptions.
+   */
+  public void publish(String json) {
+    offer(new Item(null, json, 0));
+  }
+
+  public void subscribe(WebSocketSession session) {
+    subscribe(session, null, false);
+  }
+
+  /**
+   * @param first  message sent ahead of the session's events, may be null
+   * @param binary send events with the BinaryEventCodec rather than as JSON
+   */
+  public void subscribe(WebSocketSession session, String first, boolean binary) {
+    SessionSubscriber subscriber = new SessionSubscriber(session, binary ? new BinaryEventCodec.Encoder() : null);
+    if (first != null) {
+      subscriber.append(first);
+    }
+    subscribers.put(session, subscriber);
+    publisher.subscribe(subscriber);
+  }
+
+  public void unsubscribe(WebSocketSession session) {
+    SessionSubscriber subscriber = subscribers.remove(session);
+    if (subscriber != null) {
+      subscriber.cancel();
+      if (subscriber.dropped.get() > 0) {
+        logger.info("Session {} missed {} events while it was too slow", session.getId(), subscriber.dropped.get());
+      }
+    }
+  }
+
+  public void setSubscription(WebSocketSession session, Subscription subscription) {
+    SessionSubscriber subscriber = subscribers.get(session);
+    if (subscriber != null) {
+      subscriber.subscription = subscription;
+    }
+  }
+
+  public PayloadCache getPayloadCache() {
+    return payloadCache;
+  }
+
+  public int getSubscriberCount() {
+    return subscribers.size();
+  }
+
+  @Override
+  public void close() {
+    publisher.close();
+    flusher.shutdown();
+    senders.shutdown();
+    deliveryExecutor.shutdown();
+  }
+
+  private void offer(Item item) {
+    if (subscribers.isEmpty()) {
+      return;
+    }
+    publisher.offer(item, (subscriber, dropped) -> {
+      ((SessionSubscriber) subscriber).dropped.incrementAndGet();
+      return false;
+    });
+  }
+
+  private void flushAll() {
+    for (SessionSubscriber subscriber : subscribers.values()) {
+      subscriber.flush();
+    }
+  }
+
+  private static ThreadFactory daemonThreads(String name) {
+    AtomicInteger count = new AtomicInteger();
+    return r -> {
+      Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /*
+   * An event, serialized at most once however many sessions it goes to
+   */
+  private static class Item {
+    final MessageEvent event;
+    // PayloadCache id of the event's message
+    final long id;
+    private volatile String json;
+
+    Item(MessageEvent event, String json, long id) {
+      this.event = event;
+      this.json = json;
+      this.id = id;
+    }
+
+    String json() throws JsonProcessingException {
+      String value = json;
+      if (value == null) {
+        value = objectMapper.writeValueAsString(event);
+        json = value;
+      }
+      return value;
+    }
+  }
+
+  private class SessionSubscriber implements Flow.Subscriber<Item> {
+    private final WebSocketSession session;
+    private BinaryEventCodec.Encoder encoder;
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final AtomicBoolean closing = new AtomicBoolean();
+    // when the send in flight started, 0 when there is none
+    private volatile long sendingSince;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Subscription subscription = Subscription.ALL;
+    private volatile Flow.Subscription upstream;
+    private StringBuilder pending = new StringBuilder();
+    // events in the encoder since its last drain, see resync
+    private final List<Item> encoded = new ArrayList<>();
+    // set while a full frame waits to be sent, the next request comes after it
+    private boolean held;
+
+    SessionSubscriber(WebSocketSession session, BinaryEventCodec.Encoder encoder) {
+      this.session = session;
+      this.encoder = encoder;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription upstream) {
+      this.upstream = upstream;
+      upstream.request(1);
+    }
+
+    @Override
+    public void onNext(Item item) {
+      boolean full = false;
+      try {
+        if (item.event == null) {
+          full = append(item.json());
+        } else if (subscription.matches(item.event)) {
+          full = encoder != null ? encode(item) : append(item.json());
+        }
+      } catch (JsonProcessingException e) {
+        logger.error("Failed to serialize event from {}: {}", item.event.fromNode, e.getMessage());
+      }
+      if (full) {
+        flush();
+      } else {
+        upstream.request(1);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      logger.error("Event pipeline failed for session {}: {}", session.getId(), throwable.getMessage());
+    }
+
+    @Override
+    public void onComplete() {
+      // the senders may already be shut down, the last frame goes out here
+      if (flushing.compareAndSet(false, true)) {
+        send();
+      }
+    }
+
+    void cancel() {
+      Flow.Subscription current = upstream;
+      if (current != null) {
+        current.cancel();
+      }
+    }
+
+    private synchronized boolean append(String json) {
+      if (pending.length() > 0) {
+        pending.append(',');
+      }
+      pending.append(json);
+      return checkFull();
+    }
+
+    private synchronized boolean encode(Item item) {
+      encoder.encode(item.event, item.id);
+      encoded.add(item);
+      return checkFull();
+    }
+
+    private boolean checkFull() {
+      held = pending.length() + (encoder == null ? 0 : encoder.size()) >= maxFrameBytes;
+      return held;
+    }
+
+    private synchronized String drain() {
+      if (pending.length() == 0) {
+        return null;
+      }
+      String frame = "[" + pending + "]";
+      pending = new StringBuilder(frame.length());
+      return frame;
+    }
+
+    private synchronized byte[] drainBinary() {
+      encoded.clear();
+      return encoder == null ? null : encoder.drain();
+    }
+
+    /*
+     * After a lost frame the client's dictionary is out of step, a new
+     * encoder starts its next frame with a RESET. Events encoded while the
+     * frame was being sent refer to the old dictionary, so they go again
+     */
+    private synchronized void resync() {
+      if (encoder != null) {
+        encoder = new BinaryEventCodec.Encoder();
+        for (Item item : encoded) {
+          encoder.encode(item.event, item.id);
+        }
+      }
+    }
+
+    private synchronized boolean release() {
+      boolean wasHeld = held;
+      held = false;
+      return wasHeld;
+    }
+
+    /*
+     * Hands the pending frame to a sender thread. A session still sending its
+     * previous frame is skipped, and closed once that send is stuck for longer
+     * than SEND_TIME_LIMIT_MS, so one slow client never holds up the others
+     */
+    void flush() {
+      if (!flushing.compareAndSet(false, true)) {
+        long since = sendingSince;
+        if (since > 0 && System.currentTimeMillis() - since > SEND_TIME_LIMIT_MS
+            && closing.compareAndSet(false, true)) {
+          logger.warn("Closing session {}, its frame has not gone out in {}ms", session.getId(),
+              SEND_TIME_LIMIT_MS);
+          execute(this::closeSession);
+        }
+        return;
+      }
+      if (!execute(this::send)) {
+        flushing.set(false);
+      }
+    }
+
+    private boolean execute(Runnable task) {
+      try {
+        senders.execute(task);
+        return true;
+      } catch (RejectedExecutionException e) {
+        // the pipeline is closed
+        return false;
+      }
+    }
+
+    private void closeSession() {
+      try {
+        session.close(CloseStatus.SESSION_NOT_RELIABLE);
+      } catch (Exception e) {
+        logger.error("Error closing session {}: {}", session.getId(), e.getMessage());
+      }
+    }
+
+    private void send() {
+      sendingSince = System.currentTimeMillis();
+      try {
+        String frame = drain();
+        byte[] binaryFrame = drainBinary();
+        if (session.isOpen()) {
+          synchronized (session) {
+            if (frame != null) {
+              session.sendMessage(new TextMessage(frame));
+            }
+            if (binaryFrame != null) {
+              session.sendMessage(new BinaryMessage(binaryFrame));
+            }
+          }
+        }
+      } catch (Exception e) {
+        logger.error("Error broadcasting to session {}: {}", session.getId(), e.getMessage());
+        resync();
+      } finally {
+        sendingSince = 0;
+        flushing.set(false);
+      }
+      if (release()) {
+        upstream.request(1);
+      }
+    }
+  }
+}
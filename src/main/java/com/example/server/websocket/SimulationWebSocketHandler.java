@@ -1,47 +1,66 @@
 package com.example.server.websocket;
 
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.CopyOnWriteArraySet;
+import com.example.simulator.MonitorState;
+import com.example.simulator.Subscription;
 
+/*
+ * Every session subscribes to the EventPipeline, which buffers its events and
+ * sends them as JSON array frames. The first frame starts with a SNAPSHOT of
+ * the MonitorState. Clients can send a SUBSCRIBE message to only receive some
+ * of the events, see Subscription. Clients connecting with ?format=binary get
+ * their events in the compact BinaryEventCodec encoding and fetch payloads with
+ * PAYLOAD requests
+ */
 public class SimulationWebSocketHandler extends TextWebSocketHandler {
   private static final Logger logger = LoggerFactory.getLogger(SimulationWebSocketHandler.class);
-  private static final CopyOnWriteArraySet<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+
+  private final EventPipeline pipeline;
+  private final MonitorState monitorState;
+
+  public SimulationWebSocketHandler(EventPipeline pipeline, MonitorState monitorState) {
+    this.pipeline = pipeline;
+    this.monitorState = monitorState;
+  }
 
   @Override
   public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-    sessions.add(session);
     logger.info("WebSocket connection established: {}", session.getId());
     session.sendMessage(new TextMessage("Connected to simulation WebSocket"));
+    // events are applied and published under the same lock, see EventStreamConfig
+    String query = session.getUri() == null ? null : session.getUri().getQuery();
+    boolean binary = query != null && query.contains("format=binary");
+    synchronized (monitorState) {
+      pipeline.subscribe(session, monitorState.toSnapshot(), binary);
+    }
   }
 
   @Override
   protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
-    logger.info("Received message from {}: {}", session.getId(), message.getPayload());
+    logger.debug("Received message from {}: {}", session.getId(), message.getPayload());
+    String payload = pipeline.getPayloadCache().answer(message.getPayload());
+    if (payload != null) {
+      synchronized (session) {
+        session.sendMessage(new TextMessage(payload));
+      }
+      return;
+    }
+    try {
+      pipeline.setSubscription(session, Subscription.parse(message.getPayload()));
+    } catch (IllegalArgumentException e) {
+      logger.warn("Invalid subscription from {}: {}", session.getId(), e.getMessage());
+    }
   }
 
   @Override
-  public void afterConnectionClosed(WebSocketSession session, org.springframework.web.socket.CloseStatus status)
-      throws Exception {
-    sessions.remove(session);
+  public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+    pipeline.unsubscribe(session);
     logger.info("WebSocket connection closed: {}", session.getId());
   }
-
-  public static void broadcast(String message) {
-    for (WebSocketSession session : sessions) {
-      if (session.isOpen()) {
-        synchronized (session) {
-          try {
-            session.sendMessage(new TextMessage(message));
-          } catch (Exception e) {
-            logger.error("Error broadcasting to session {}: {}", session.getId(), e.getMessage());
-          }
-        }
-      }
-    }
-  }
 }
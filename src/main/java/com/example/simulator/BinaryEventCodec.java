@@ -0,0 +1,232 @@
+package com.example.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+/**
+ * Compact binary encoding of events for monitor WebSocket clients that
+ * connect with ?format=binary.
+ *
+ * Every binary frame starts with a VERSION byte followed by records:
+ *
+ * <pre>
+ * RESET: [0]
+ * DICT:  [1][varint id][varint length][utf-8 string]
+ * EVENT: [2][varint type id][varint from id + 1][varint to id + 1]
+ *        [zigzag varint timestamp delta][varint event id delta]
+ *        [varint payload bytes + 1]
+ * </pre>
+ *
+ * Event types and node ids are interned once per session: the first time a
+ * string is used a DICT record assigns it an id, and later events only carry
+ * the id (0 meaning null). Timestamps and event ids are deltas from the
+ * session's previous event. Payloads are left out, a client that wants one
+ * sends {"type":"PAYLOAD","id":n} and gets it back as JSON text while it is
+ * still in the PayloadCache. The encoder and decoder state carries over from
+ * one frame to the next, so frames must be decoded in order. A new encoder
+ * starts with a RESET record, which lets a server that lost a frame start
+ * over with an empty dictionary.
+ */
+public final class BinaryEventCodec {
+  public static final byte VERSION = 1;
+  public static final byte RECORD_RESET = 0;
+  public static final byte RECORD_DICT = 1;
+  public static final byte RECORD_EVENT = 2;
+
+  private BinaryEventCodec() {
+  }
+
+  /**
+   * Encodes the events of one session, not thread-safe.
+   */
+  public static class Encoder {
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final Output out = new Output();
+    private long lastTimestamp;
+    private long lastId;
+    private boolean reset = true;
+
+    public void encode(MessageEvent event, long id) {
+      if (out.size() == 0) {
+        out.write(VERSION);
+      }
+      if (reset) {
+        out.write(RECORD_RESET);
+        reset = false;
+      }
+      int type = intern(event.type);
+      int from = event.fromNode == null ? 0 : intern(event.fromNode) + 1;
+      int to = event.toNode == null ? 0 : intern(event.toNode) + 1;
+
+      out.write(RECORD_EVENT);
+      out.writeVarint(type);
+      out.writeVarint(from);
+      out.writeVarint(to);
+      out.writeVarint(zigzag(event.timestamp - lastTimestamp));
+      out.writeVarint(zigzag(id - lastId));
+      out.writeVarint(event.message == null ? 0 : utf8Length(event.message) + 1);
+      lastTimestamp = event.timestamp;
+      lastId = id;
+    }
+
+    /**
+     * Bytes encoded since the last drain.
+     */
+    public int size() {
+      return out.size();
+    }
+
+    /**
+     * @return the pending frame, or null if nothing was encoded since the
+     *         last call
+     */
+    public byte[] drain() {
+      if (out.size() == 0) {
+        return null;
+      }
+      byte[] frame = out.toByteArray();
+      out.reset();
+      return frame;
+    }
+
+    private int intern(String value) {
+      Integer id = dictionary.get(value);
+      if (id != null) {
+        return id;
+      }
+      int next = dictionary.size();
+      dictionary.put(value, next);
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.write(RECORD_DICT);
+      out.writeVarint(next);
+      out.writeVarint(bytes.length);
+      out.write(bytes, 0, bytes.length);
+      return next;
+    }
+  }
+
+  /**
+   * Reverses an Encoder, for Java clients and tests.
+   */
+  public static class Decoder {
+    private final List<String> dictionary = new ArrayList<>();
+    private long lastTimestamp;
+    private long lastId;
+
+    /**
+     * Decodes one frame. The events have no message, their payloadBytes say
+     * how long it is (-1 for none).
+     */
+    public List<Event> decode(byte[] frame) {
+      ByteBuffer in = ByteBuffer.wrap(frame);
+      byte version = in.get();
+      if (version != VERSION) {
+        throw new IllegalArgumentException("Unsupported binary protocol version: " + version);
+      }
+      List<Event> events = new ArrayList<>();
+      while (in.hasRemaining()) {
+        byte record = in.get();
+        if (record == RECORD_RESET) {
+          dictionary.clear();
+          lastTimestamp = 0;
+          lastId = 0;
+        } else if (record == RECORD_DICT) {
+          int id = (int) readVarint(in);
+          byte[] bytes = new byte[(int) readVarint(in)];
+          in.get(bytes);
+          if (id != dictionary.size()) {
+            throw new IllegalArgumentException("Dictionary id out of order: " + id);
+          }
+          dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+        } else if (record == RECORD_EVENT) {
+          MessageEvent event = new MessageEvent();
+          event.type = dictionary.get((int) readVarint(in));
+          event.fromNode = lookup((int) readVarint(in));
+          event.toNode = lookup((int) readVarint(in));
+          lastTimestamp += unzigzag(readVarint(in));
+          lastId += unzigzag(readVarint(in));
+          event.timestamp = lastTimestamp;
+          events.add(new Event(lastId, event, (int) readVarint(in) - 1));
+        } else {
+          throw new IllegalArgumentException("Unknown record: " + record);
+        }
+      }
+      return events;
+    }
+
+    private String lookup(int idPlusOne) {
+      return idPlusOne == 0 ? null : dictionary.get(idPlusOne - 1);
+    }
+  }
+
+  public static class Event {
+    public final long id;
+    public final MessageEvent event;
+    public final int payloadBytes;
+
+    public Event(long id, MessageEvent event, int payloadBytes) {
+      this.id = id;
+      this.event = event;
+      this.payloadBytes = payloadBytes;
+    }
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static long readVarint(ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = in.get();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+
+  private static int utf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  private static class Output extends ByteArrayOutputStream {
+    Output() {
+      super(256);
+    }
+
+    void writeVarint(long value) {
+      while ((value & ~0x7fL) != 0) {
+        write((int) ((value & 0x7f) | 0x80));
+        value >>>= 7;
+      }
+      write((int) value);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.example.simulator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reorders events arriving from many nodes by their hybrid logical clock
+ * stamp before handing them on.
+ *
+ * Nodes report asynchronously and in batches, so the RECEIVED event of a
+ * message can reach the monitor before its SENT event. Every event is held
+ * for holdMs after it arrived; the buffer only ever releases its
+ * lowest-stamped event, so anything that arrives within the hold time still
+ * gets delivered in causal order.
+ */
+public class CausalOrderBuffer {
+  public static final long DEFAULT_HOLD_MS = 200;
+  private static final long TICK_MS = 10;
+  private static final Logger logger = LoggerFactory.getLogger(CausalOrderBuffer.class);
+
+  private final long holdMs;
+  private final Consumer<MessageEvent> handler;
+  private final PriorityQueue<Held> held = new PriorityQueue<>(
+      Comparator.comparingLong((Held h) -> h.stamp).thenComparingLong(h -> h.arrival));
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "causal-order");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private long arrivals;
+
+  public CausalOrderBuffer(long holdMs, Consumer<MessageEvent> handler) {
+    this.holdMs = holdMs;
+    this.handler = handler;
+  }
+
+  public void start() {
+    executor.scheduleWithFixedDelay(this::releaseDue, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Releases everything still held, in order.
+   */
+  public void stop() {
+    executor.shutdown();
+    release(Long.MAX_VALUE);
+  }
+
+  public void offer(MessageEvent event) {
+    // events from older reporters carry no stamp, order them by wall clock
+    long stamp = event.hlc != 0 ? event.hlc : HybridLogicalClock.fromMillis(event.timestamp);
+    synchronized (held) {
+      held.add(new Held(event, stamp, System.nanoTime(), arrivals++));
+    }
+  }
+
+  public int size() {
+    synchronized (held) {
+      return held.size();
+    }
+  }
+
+  private void releaseDue() {
+    release(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(holdMs));
+  }
+
+  private void release(long arrivedBefore) {
+    List<MessageEvent> due = new ArrayList<>();
+    synchronized (held) {
+      while (!held.isEmpty() && held.peek().arrivedAt <= arrivedBefore) {
+        due.add(held.poll().event);
+      }
+    }
+
+    for (MessageEvent event : due) {
+      try {
+        handler.accept(event);
+      } catch (Exception e) {
+        logger.error("Failed to handle event from {}: {}", event.fromNode, e.getMessage());
+      }
+    }
+  }
+
+  private static class Held {
+    final MessageEvent event;
+    final long stamp;
+    final long arrivedAt;
+    final long arrival;
+
+    Held(MessageEvent event, long stamp, long arrivedAt, long arrival) {
+      this.event = event;
+      this.stamp = stamp;
+      this.arrivedAt = arrivedAt;
+      this.arrival = arrival;
+    }
+  }
+}
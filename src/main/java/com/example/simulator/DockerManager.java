@@ -1,28 +1,86 @@
 package com.example.simulator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.example.model.NodeConfig;
+import com.example.model.ResourceProfile;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
+import com.github.dockerjava.api.command.BuildImageResultCallback;
 import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.Bind;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.ContainerNetwork;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.Image;
 import com.github.dockerjava.api.model.Network;
+import com.github.dockerjava.api.model.Volume;
 import com.github.dockerjava.core.DefaultDockerClientConfig;
 import com.github.dockerjava.core.DockerClientConfig;
 import com.github.dockerjava.core.DockerClientImpl;
 import com.github.dockerjava.httpclient5.ApacheDockerHttpClient;
 import com.github.dockerjava.transport.DockerHttpClient;
 
-public class DockerManager {
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+public class DockerManager implements AutoCloseable {
   private DockerClient dockerClient;
   private String networkId;
-  private Map<String, String> containerIds = new HashMap<>();
+  // filled concurrently by createNodeContainers
+  private Map<String, String> containerIds = new ConcurrentHashMap<>();
   private Map<String, Double> networkJitterConfig = new HashMap<>();
+  private Map<String, Object> storageConfig = new HashMap<>();
   private final String networkName = "simulator-network";
   private final String monitorEndpoint = "host.docker.internal";
+  private final String nodeDataDir = "/data";
+  public static final int MONITOR_STREAM_PORT = 8092;
+  // stays well below the 100 connections of the docker http client
+  public static final int DEFAULT_PARALLELISM = 16;
+  // nodes get a short grace period to flush before docker kills them
+  public static final int STOP_TIMEOUT_SECONDS = 2;
+  private int parallelism = DEFAULT_PARALLELISM;
+  private String nodeImage = NodeImage.LATEST;
+  // for spreading nodes with an auto cpuset, see allocateCores
+  private int hostCores;
+  private int nextCore;
+  // idle pooled containers, and the ones claimed by nodes of this simulation
+  private final ConcurrentLinkedQueue<String> idlePool = new ConcurrentLinkedQueue<>();
+  private final Set<String> pooledIds = ConcurrentHashMap.newKeySet();
+  // volume of each pooled container, named after its slot
+  private final Map<String, String> poolVolumes = new ConcurrentHashMap<>();
+  public static final String POOL_LABEL = "distro.pool";
+  public static final String POOL_PREFIX = "distro-pool-";
+  public static final String POOL_ASSIGNMENT_PATH = "/tmp/assignment.env";
   private Boolean isDefault = true;
 
   /**
@@ -35,9 +93,11 @@ public class DockerManager {
     initializeNetwork();
   }
 
-  public DockerManager(Map<String, Double> networkJitterConfig, Boolean isDefault) {
+  public DockerManager(Map<String, Double> networkJitterConfig, Map<String, Object> storageConfig,
+      Boolean isDefault) {
     DockerClientConfig config = DefaultDockerClientConfig.createDefaultConfigBuilder().build();
     this.networkJitterConfig = networkJitterConfig;
+    this.storageConfig = storageConfig;
     this.isDefault = isDefault;
 
     DockerHttpClient httpClient = new ApacheDockerHttpClient.Builder()
@@ -50,7 +110,87 @@ public class DockerManager {
 
     // Initialise a docker client here
     dockerClient = DockerClientImpl.getInstance(config, httpClient);
-    initializeNetwork();
+    try {
+      initializeNetwork();
+    } catch (RuntimeException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /*
+   * Closes the docker client and its connection pool. The simulator can run
+   * inside the long-lived server, so every simulation has to give its client
+   * back
+   */
+  @Override
+  public void close() {
+    try {
+      dockerClient.close();
+    } catch (IOException e) {
+      System.out.println("Error closing docker client: " + e.getMessage());
+    }
+  }
+
+  public void setParallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  public String getNodeImage() {
+    return nodeImage;
+  }
+
+  /*
+   * Makes sure the node image for the given jar and Dockerfile exists, tagged
+   * with their content hash, and uses it for the node containers. The image
+   * is only built when no image has that tag yet; older content tags are
+   * removed after a build. Without the jar (e.g. the image was built
+   * elsewhere) the nodes keep using distro/node:latest
+   */
+  public String ensureNodeImage(Path jar, Path dockerfile) throws IOException {
+    if (!Files.exists(jar) || !Files.exists(dockerfile)) {
+      System.out.println("No " + jar + " to build the node image from, using " + NodeImage.LATEST);
+      nodeImage = NodeImage.LATEST;
+      return nodeImage;
+    }
+
+    String tag = NodeImage.tagFor(jar, dockerfile);
+    try {
+      dockerClient.inspectImageCmd(tag).exec();
+      System.out.println("Using cached node image " + tag);
+    } catch (NotFoundException e) {
+      long start = System.currentTimeMillis();
+      // the build context is the working directory, .dockerignore keeps it to the jars
+      dockerClient.buildImageCmd(dockerfile.toFile())
+          .withBaseDirectory(new File("."))
+          .withTags(Set.of(tag, NodeImage.LATEST))
+          .exec(new BuildImageResultCallback())
+          .awaitImageId();
+      System.out.println("Built node image " + tag + " (" + (System.currentTimeMillis() - start) + " ms)");
+      removeStaleNodeImages(tag);
+    }
+    nodeImage = tag;
+    return nodeImage;
+  }
+
+  private void removeStaleNodeImages(String current) {
+    try {
+      for (Image image : dockerClient.listImagesCmd().withImageNameFilter(NodeImage.REPOSITORY).exec()) {
+        if (image.getRepoTags() == null) {
+          continue;
+        }
+        for (String repoTag : image.getRepoTags()) {
+          if (repoTag.startsWith(NodeImage.REPOSITORY + ":") && !repoTag.equals(current)
+              && !repoTag.equals(NodeImage.LATEST)) {
+            dockerClient.removeImageCmd(repoTag).exec();
+            System.out.println("Removed stale node image " + repoTag);
+          }
+        }
+      }
+    } catch (Exception e) {
+      // still in use by a container, or already gone
+      System.out.println("Error removing stale node images: " + e.getMessage());
+    }
   }
 
   private void initializeNetwork() {
@@ -79,41 +219,59 @@ public class DockerManager {
   }
 
   public String createNodeContainer(String nodeId, String programName, List<String> peerNodeIds) {
-    try {
-      // Create environment variables for the container
-      List<String> env = new ArrayList<>();
-      env.add("NODE_ID=" + nodeId);
-      env.add("PROGRAM_NAME=" + programName);
-      env.add("PEER_NODES=" + String.join(",", peerNodeIds));
+    return createNodeContainer(nodeId, programName, peerNodeIds, 0);
+  }
 
-      if (networkJitterConfig.containsKey("drop_rate")) {
-        env.add("DROP_RATE=" + String.valueOf(networkJitterConfig.get("drop_rate")));
-      }
-      if (networkJitterConfig.containsKey("delay_ms")) {
-        env.add("DELAY_MS=" + String.valueOf(networkJitterConfig.get("delay_ms")));
+  /**
+   * @param nodeIndex unique per node and positive, it goes into the ids of the
+   *                  node's messages; 0 leaves the node to derive one itself
+   */
+  public String createNodeContainer(String nodeId, String programName, List<String> peerNodeIds, int nodeIndex) {
+    return createNodeContainer(nodeId, programName, peerNodeIds, nodeIndex, null);
+  }
+
+  /**
+   * @param resources limits of the node's container and the matching JVM
+   *                  flags, null for none. Nodes with limits always get a
+   *                  container of their own, a pooled one already runs a JVM
+   *                  sized without them
+   */
+  public String createNodeContainer(String nodeId, String programName, List<String> peerNodeIds, int nodeIndex,
+      ResourceProfile resources) {
+    List<String> env = nodeEnv(nodeId, programName, peerNodeIds, nodeIndex);
+    String pooled = resources == null ? idlePool.poll() : null;
+    if (pooled != null) {
+      try {
+        claimPooledContainer(pooled, nodeId, env);
+        return pooled;
+      } catch (Exception e) {
+        // the pooled container is in an unknown state, leave it out of the pool
+        System.out.println("Failed to claim pooled container for " + nodeId + ": " + e.getMessage());
+        removePooledContainer(pooled);
       }
+    }
 
-      // not running via CLI - using server mode
-      if (!isDefault) {
-        env.add("MONITOR_ENDPOINT=" + monitorEndpoint);
+    try {
+      HostConfig hostConfig = HostConfig.newHostConfig()
+          // attached to the isolated network right away, no separate connect call
+          .withNetworkMode(networkName)
+          // per-node volume so the node's storage survives a restart
+          .withBinds(new Bind(nodeVolumeName(nodeId), new Volume(nodeDataDir)));
+      if (resources != null) {
+        applyResources(hostConfig, env, resources);
       }
 
       // Create container
-      CreateContainerResponse container = dockerClient.createContainerCmd("distro/node:latest")
+      CreateContainerResponse container = dockerClient.createContainerCmd(nodeImage)
           .withName(nodeId)
           .withEnv(env)
           .withHostName(nodeId) // Important: hostname = nodeId for DNS resolution
+          .withHostConfig(hostConfig)
           .exec();
 
       String containerId = container.getId();
       containerIds.put(nodeId, containerId);
 
-      // brings this container into the isolated network system
-      dockerClient.connectToNetworkCmd()
-          .withNetworkId(networkId)
-          .withContainerId(containerId)
-          .exec();
-
       // Start container
       dockerClient.startContainerCmd(containerId).exec();
       System.out.println("Created and started container for node " + nodeId + " (ID: " + containerId + ")");
@@ -124,6 +282,270 @@ public class DockerManager {
     }
   }
 
+  private void applyResources(HostConfig hostConfig, List<String> env, ResourceProfile resources) {
+    if (resources.getMemoryBytes() != null) {
+      // the same as the memory limit means no swap
+      hostConfig.withMemory(resources.getMemoryBytes()).withMemorySwap(resources.getMemoryBytes());
+    }
+    if (resources.getCpus() != null) {
+      hostConfig.withNanoCPUs((long) (resources.getCpus() * 1_000_000_000L));
+    }
+    if (resources.getCpuset() != null) {
+      String cpuset = ResourceProfile.AUTO_CPUSET.equals(resources.getCpuset())
+          ? allocateCores(resources.coreCount())
+          : resources.getCpuset();
+      hostConfig.withCpusetCpus(cpuset);
+    }
+    env.add("NODE_JVM_OPTS=" + resources.jvmOptions());
+  }
+
+  /*
+   * Hands out blocks of consecutive cores round robin, so nodes with an auto
+   * cpuset are spread evenly over the host's cores
+   */
+  private synchronized String allocateCores(int count) {
+    if (hostCores == 0) {
+      try {
+        hostCores = dockerClient.infoCmd().exec().getNCPU();
+      } catch (Exception e) {
+        hostCores = Runtime.getRuntime().availableProcessors();
+      }
+    }
+    int cores = Math.min(count, hostCores);
+    if (nextCore + cores > hostCores) {
+      nextCore = 0;
+    }
+    String cpuset = cores == 1 ? String.valueOf(nextCore) : nextCore + "-" + (nextCore + cores - 1);
+    nextCore = (nextCore + cores) % hostCores;
+    return cpuset;
+  }
+
+  private List<String> nodeEnv(String nodeId, String programName, List<String> peerNodeIds, int nodeIndex) {
+    // Create environment variables for the container
+    List<String> env = new ArrayList<>();
+    env.add("NODE_ID=" + nodeId);
+    if (nodeIndex > 0) {
+      env.add("NODE_INDEX=" + nodeIndex);
+    }
+    env.add("PROGRAM_NAME=" + programName);
+    env.add("PEER_NODES=" + String.join(",", peerNodeIds));
+    env.add("STORAGE_DIR=" + nodeDataDir + "/storage");
+    env.add("JOURNAL_DIR=" + nodeDataDir + "/journal");
+
+    if (storageConfig.containsKey("type")) {
+      env.add("STORAGE_TYPE=" + storageConfig.get("type"));
+    }
+    if (storageConfig.containsKey("max_bytes")) {
+      env.add("STORAGE_MAX_BYTES=" + ((Number) storageConfig.get("max_bytes")).longValue());
+    }
+    if (storageConfig.containsKey("ttl_ms")) {
+      env.add("STORAGE_TTL_MS=" + ((Number) storageConfig.get("ttl_ms")).longValue());
+    }
+
+    if (networkJitterConfig.containsKey("drop_rate")) {
+      env.add("DROP_RATE=" + String.valueOf(networkJitterConfig.get("drop_rate")));
+    }
+    if (networkJitterConfig.containsKey("delay_ms")) {
+      env.add("DELAY_MS=" + String.valueOf(networkJitterConfig.get("delay_ms")));
+    }
+
+    // not running via CLI - using server mode
+    if (!isDefault) {
+      env.add("MONITOR_ENDPOINT=" + monitorEndpoint);
+      env.add("MONITOR_STREAM_PORT=" + MONITOR_STREAM_PORT);
+    }
+    return env;
+  }
+
+  /*
+   * Tops the pool of idle node containers up to size, in parallel. Pooled
+   * containers outlive the simulator process and are found again by their
+   * label; those running an outdated node image are removed. One this
+   * manager did not put back into the pool itself may still run the node of a
+   * crashed run, so it is reset before it is used. Each one runs a NodeRunner
+   * waiting for its assignment, see claimPooledContainer
+   */
+  public void ensurePool(int size) {
+    Set<String> knownIdle = new HashSet<>(idlePool);
+    idlePool.clear();
+    Map<String, Runnable> adoptions = new LinkedHashMap<>();
+    for (Container container : dockerClient.listContainersCmd()
+        .withShowAll(true)
+        .withLabelFilter(Map.of(POOL_LABEL, "true"))
+        .exec()) {
+      String name = container.getNames() != null && container.getNames().length > 0
+          ? container.getNames()[0].replaceFirst("^/", "")
+          : container.getId();
+      if (!nodeImage.equals(container.getImage()) || !"running".equals(container.getState())
+          || containerIds.containsValue(container.getId()) || idlePool.size() + adoptions.size() >= size) {
+        poolVolumes.remove(container.getId());
+        removeContainer(container.getId(), name);
+        continue;
+      }
+      poolVolumes.put(container.getId(), name);
+      if (knownIdle.contains(container.getId())) {
+        idlePool.add(container.getId());
+      } else {
+        // puts it into idlePool once wiped, or removes it
+        adoptions.put(name, () -> resetPooledContainer(name, container.getId()));
+      }
+    }
+    runAll("Reset", adoptions);
+
+    List<String> names = new ArrayList<>();
+    for (String containerId : idlePool) {
+      names.add(poolVolumes.get(containerId));
+    }
+    Map<String, Runnable> tasks = new LinkedHashMap<>();
+    for (int slot = 1; idlePool.size() + tasks.size() < size; slot++) {
+      String name = POOL_PREFIX + slot;
+      if (!names.contains(name)) {
+        tasks.put(name, () -> idlePool.add(createPooledContainer(name)));
+      }
+    }
+    runAll("Pooled", tasks);
+    System.out.println(idlePool.size() + " pooled node containers ready");
+  }
+
+  private String createPooledContainer(String name) {
+    // a slot reused after its container was lost must not find the data of an
+    // earlier simulation
+    try {
+      dockerClient.removeVolumeCmd(name).exec();
+    } catch (NotFoundException e) {
+      // the usual case
+    }
+    CreateContainerResponse container = dockerClient.createContainerCmd(nodeImage)
+        .withName(name)
+        .withLabels(Map.of(POOL_LABEL, "true"))
+        .withEnv("POOL_ASSIGNMENT=" + POOL_ASSIGNMENT_PATH)
+        .withHostConfig(HostConfig.newHostConfig()
+            .withNetworkMode(networkName)
+            .withBinds(new Bind(name, new Volume(nodeDataDir))))
+        .exec();
+    poolVolumes.put(container.getId(), name);
+    dockerClient.startContainerCmd(container.getId()).exec();
+    return container.getId();
+  }
+
+  /*
+   * Turns an idle pooled container into the given node: the node id becomes
+   * its name on the simulator network, and the assignment with the node's
+   * environment is copied in for its waiting NodeRunner to start with
+   */
+  private void claimPooledContainer(String containerId, String nodeId, List<String> env) throws IOException {
+    dockerClient.disconnectFromNetworkCmd().withNetworkId(networkId).withContainerId(containerId).exec();
+    dockerClient.connectToNetworkCmd()
+        .withNetworkId(networkId)
+        .withContainerId(containerId)
+        .withContainerNetwork(new ContainerNetwork().withAliases(nodeId))
+        .exec();
+
+    StringBuilder assignment = new StringBuilder();
+    for (String variable : env) {
+      assignment.append(variable).append('\n');
+    }
+    // lets the node tell a complete assignment from one still being copied
+    assignment.append(NodeRunner.ASSIGNMENT_END).append('\n');
+    byte[] content = assignment.toString().getBytes(StandardCharsets.UTF_8);
+
+    ByteArrayOutputStream tarBytes = new ByteArrayOutputStream();
+    try (TarArchiveOutputStream tar = new TarArchiveOutputStream(tarBytes)) {
+      TarArchiveEntry entry = new TarArchiveEntry(Paths.get(POOL_ASSIGNMENT_PATH).getFileName().toString());
+      entry.setSize(content.length);
+      tar.putArchiveEntry(entry);
+      tar.write(content);
+      tar.closeArchiveEntry();
+    }
+    dockerClient.copyArchiveToContainerCmd(containerId)
+        .withTarInputStream(new ByteArrayInputStream(tarBytes.toByteArray()))
+        .withRemotePath(Paths.get(POOL_ASSIGNMENT_PATH).getParent().toString())
+        .exec();
+
+    containerIds.put(nodeId, containerId);
+    pooledIds.add(containerId);
+    System.out.println("Assigned pooled container to node " + nodeId + " (ID: " + containerId + ")");
+  }
+
+  /*
+   * Puts a pooled container back into the pool: its assignment and data are
+   * wiped, it loses the node's name and restarts into a waiting NodeRunner.
+   * Stopped or paused nodes are brought back to running first, commands can
+   * only be run in a running container. A container that cannot be reset is
+   * removed along with its volume
+   */
+  private void resetPooledContainer(String nodeId, String containerId) {
+    try {
+      InspectContainerResponse.ContainerState state = dockerClient.inspectContainerCmd(containerId).exec()
+          .getState();
+      if (Boolean.TRUE.equals(state.getPaused())) {
+        dockerClient.unpauseContainerCmd(containerId).exec();
+      } else if (!Boolean.TRUE.equals(state.getRunning())) {
+        dockerClient.startContainerCmd(containerId).exec();
+      }
+
+      String execId = dockerClient.execCreateCmd(containerId)
+          .withCmd("rm", "-rf", POOL_ASSIGNMENT_PATH, nodeDataDir + "/storage", nodeDataDir + "/journal")
+          .exec()
+          .getId();
+      if (!dockerClient.execStartCmd(execId).exec(new ResultCallback.Adapter<>())
+          .awaitCompletion(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("wiping the container timed out");
+      }
+
+      dockerClient.disconnectFromNetworkCmd().withNetworkId(networkId).withContainerId(containerId).exec();
+      dockerClient.connectToNetworkCmd().withNetworkId(networkId).withContainerId(containerId).exec();
+      dockerClient.restartContainerCmd(containerId).withTimeout(STOP_TIMEOUT_SECONDS).exec();
+      idlePool.add(containerId);
+    } catch (Exception e) {
+      System.out.println("Error resetting pooled container of " + nodeId + ", removing it: " + e.getMessage());
+      removePooledContainer(containerId);
+    }
+  }
+
+  private void removePooledContainer(String containerId) {
+    pooledIds.remove(containerId);
+    removeContainer(containerId, poolVolumes.remove(containerId));
+  }
+
+  /*
+   * Removes every pooled container and its volume
+   */
+  public void removePool() {
+    ensurePool(0);
+  }
+
+  /*
+   * Creates and starts the containers of all nodes, up to parallelism of them
+   * at a time. Nodes get their index in the order of the map, starting at 1.
+   * Every node is attempted; if any of them failed, the exception lists them
+   * all once the others are up
+   */
+  public Map<String, String> createNodeContainers(Map<String, NodeConfig> nodes) {
+    Map<String, Runnable> tasks = new LinkedHashMap<>();
+    Map<String, String> created = new ConcurrentHashMap<>();
+    int nodeIndex = 0;
+    for (Map.Entry<String, NodeConfig> entry : nodes.entrySet()) {
+      String nodeId = entry.getKey();
+      NodeConfig config = entry.getValue();
+      int index = ++nodeIndex;
+      tasks.put(nodeId, () -> created.put(nodeId,
+          createNodeContainer(nodeId, config.getProgramName(), config.getPeerNodeIds(), index,
+              config.getResources())));
+    }
+    Map<String, Exception> failures = runAll("Started", tasks);
+    if (!failures.isEmpty()) {
+      throw new RuntimeException("Failed to start " + failures.size() + " of " + nodes.size() + " nodes: "
+          + failures.keySet(), failures.values().iterator().next());
+    }
+
+    Map<String, String> ordered = new LinkedHashMap<>();
+    for (String nodeId : nodes.keySet()) {
+      ordered.put(nodeId, created.get(nodeId));
+    }
+    return ordered;
+  }
+
   // public String createMessageMonitorServiceContainer() {
   // try {
   // CreateContainerResponse container =
@@ -182,43 +604,134 @@ public class DockerManager {
     }
   }
 
+  /*
+   * Starts a stopped node again (or restarts a running one). The container
+   * keeps its volume, so the node recovers its storage on startup
+   */
+  public void restartNode(String nodeId) {
+    String containerId = containerIds.get(nodeId);
+    if (containerId != null) {
+      dockerClient.restartContainerCmd(containerId).exec();
+      System.out.println("Restarted node: " + nodeId);
+    }
+  }
+
+  /*
+   * Stops and removes all containers and their volumes in parallel. Nodes only
+   * get STOP_TIMEOUT_SECONDS to shut down before docker kills them, instead of
+   * docker's default of 10 seconds. Pooled containers go back to the pool
+   */
   public void cleanupContainers() {
-    // Stop and remove all containers
+    Map<String, Runnable> tasks = new LinkedHashMap<>();
     for (Map.Entry<String, String> entry : containerIds.entrySet()) {
-      String nodeId = entry.getKey();
-      String containerId = entry.getValue();
+      if (pooledIds.contains(entry.getValue())) {
+        tasks.put(entry.getKey(), () -> resetPooledContainer(entry.getKey(), entry.getValue()));
+      } else {
+        tasks.put(entry.getKey(), () -> cleanupContainer(entry.getKey(), entry.getValue()));
+      }
+    }
+    runAll("Removed", tasks);
+    containerIds.clear();
+    pooledIds.clear();
+  }
 
-      try {
-        // Try to stop the container first (ignore if already stopped)
-        try {
-          dockerClient.stopContainerCmd(containerId).exec();
-          System.out.println("Stopped container for " + nodeId);
-        } catch (Exception e) {
-          System.out.println("Container " + nodeId + " already stopped or not running");
-        }
+  private void removeContainer(String containerId, String volumeName) {
+    try {
+      dockerClient.removeContainerCmd(containerId).withForce(true).exec();
+      if (volumeName != null) {
+        dockerClient.removeVolumeCmd(volumeName).exec();
+      }
+    } catch (Exception e) {
+      System.out.println("Error removing container " + containerId + ": " + e.getMessage());
+    }
+  }
 
-        // Force remove the container regardless of state
-        dockerClient.removeContainerCmd(containerId)
-            .withForce(true)
-            .exec();
-        System.out.println("Removed container for " + nodeId);
+  private void cleanupContainer(String nodeId, String containerId) {
+    try {
+      // Try to stop the container first (ignore if already stopped)
+      try {
+        dockerClient.stopContainerCmd(containerId).withTimeout(STOP_TIMEOUT_SECONDS).exec();
       } catch (Exception e) {
-        // Container might already be removed
-        System.out.println("Error cleaning up container for " + nodeId + ": " + e.getMessage());
+        System.out.println("Container " + nodeId + " already stopped or not running");
       }
+
+      // Force remove the container regardless of state
+      dockerClient.removeContainerCmd(containerId)
+          .withForce(true)
+          .exec();
+
+      dockerClient.removeVolumeCmd(nodeVolumeName(nodeId)).exec();
+    } catch (Exception e) {
+      // Container might already be removed
+      System.out.println("Error cleaning up container for " + nodeId + ": " + e.getMessage());
     }
   }
 
+  /*
+   * Runs the docker calls of each node on a pool of parallelism threads and
+   * reports progress about every tenth of the way. Returns the nodes whose
+   * calls failed
+   */
+  private Map<String, Exception> runAll(String action, Map<String, Runnable> tasks) {
+    Map<String, Exception> failures = new ConcurrentHashMap<>();
+    if (tasks.isEmpty()) {
+      return failures;
+    }
+    AtomicInteger threadCount = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), r -> {
+      Thread thread = new Thread(r, "docker-ops-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    long start = System.currentTimeMillis();
+    int total = tasks.size();
+    int reportEvery = Math.max(1, total / 10);
+    AtomicInteger done = new AtomicInteger();
+    Consumer<Integer> progress = count -> {
+      if (count % reportEvery == 0 || count == total) {
+        System.out.println(action + " " + count + "/" + total + " containers ("
+            + (System.currentTimeMillis() - start) + " ms)");
+      }
+    };
+
+    try {
+      List<CompletableFuture<Void>> futures = new ArrayList<>();
+      for (Map.Entry<String, Runnable> task : tasks.entrySet()) {
+        futures.add(CompletableFuture.runAsync(() -> {
+          try {
+            task.getValue().run();
+          } catch (Exception e) {
+            System.out.println("Error on node " + task.getKey() + ": " + e.getMessage());
+            failures.put(task.getKey(), e);
+          }
+          progress.accept(done.incrementAndGet());
+        }, executor));
+      }
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    } finally {
+      executor.shutdown();
+    }
+    return failures;
+  }
+
   /*
    * Take note I think there's a flaw in how the Docker Java Library consumes the
    * response message from the dameon before it actully closes the connection
    * But the docker command will still get executed correctly and the image will
    * get removed
+   *
+   * Only called when asked for, the node image is reused across runs
    */
   public void cleanupImages() {
     // remove all the images that was created
     try {
-      dockerClient.removeImageCmd("distro/node:latest")
+      if (!nodeImage.equals(NodeImage.LATEST)) {
+        dockerClient.removeImageCmd(nodeImage)
+            .withForce(true)
+            .exec();
+      }
+      dockerClient.removeImageCmd(NodeImage.LATEST)
           .withForce(true)
           .exec();
       System.out.println("Removed node image");
@@ -237,6 +750,42 @@ public class DockerManager {
     }
   }
 
+  /*
+   * Copies every node's event journal out of its container into the given
+   * directory as <node-id>.journal. Works on stopped containers too, as long
+   * as they have not been removed yet
+   */
+  public Map<String, Path> collectJournals(Path outputDir) throws IOException {
+    Files.createDirectories(outputDir);
+    Map<String, Path> journals = new HashMap<>();
+    String journalPath = nodeDataDir + "/journal/" + EventJournal.FILE_NAME;
+
+    for (Map.Entry<String, String> entry : containerIds.entrySet()) {
+      String nodeId = entry.getKey();
+      Path target = outputDir.resolve(nodeId + ".journal");
+
+      // the docker API hands files out as a tar archive
+      try (InputStream archive = dockerClient.copyArchiveFromContainerCmd(entry.getValue(), journalPath).exec();
+          TarArchiveInputStream tar = new TarArchiveInputStream(archive)) {
+        TarArchiveEntry file = tar.getNextEntry();
+        if (file == null) {
+          System.out.println("No event journal found for " + nodeId);
+          continue;
+        }
+        Files.copy(tar, target, StandardCopyOption.REPLACE_EXISTING);
+        journals.put(nodeId, target);
+        System.out.println("Collected event journal for " + nodeId + " (" + file.getSize() + " bytes)");
+      } catch (Exception e) {
+        System.out.println("Error collecting event journal for " + nodeId + ": " + e.getMessage());
+      }
+    }
+    return journals;
+  }
+
+  private static String nodeVolumeName(String nodeId) {
+    return "distro-storage-" + nodeId;
+  }
+
   public String getNodeIpAddress(String nodeId) {
     String containerId = containerIds.get(nodeId);
     if (containerId != null) {
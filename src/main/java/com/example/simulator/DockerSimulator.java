@@ -1,59 +1,356 @@
 package com.example.simulator;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.example.model.NodeConfig;
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 public class DockerSimulator {
 
   private TopologyManager topologyManager;
   private DockerManager dockerManager;
   private Map<String, String> nodeContainerIds = new HashMap<>();
+  private boolean cleanupImages = false;
+  private int poolSize = 0;
+  private NodeControlClient nodeControl;
+  // paused or stopped through this simulator, fault commands skip them
+  private final Set<String> unavailableNodes = ConcurrentHashMap.newKeySet();
+  // node -> kind of fault -> the commands that set it, replayed on resume and restart
+  private final Map<String, Map<String, List<String>>> nodeFaults = new ConcurrentHashMap<>();
+  private static final long RESTART_CONTROL_WAIT_MS = 10_000;
+  private static final long CONTROL_RETRY_MS = 100;
 
   public DockerSimulator(String yamlPath, Boolean isDefault) throws Exception {
     topologyManager = new TopologyManager(yamlPath);
-    dockerManager = new DockerManager(topologyManager.getNetworkJitterConfig(), isDefault);
+    dockerManager = new DockerManager(topologyManager.getNetworkJitterConfig(), topologyManager.getStorageConfig(),
+        isDefault);
+    // faults go straight to the nodes' control listeners, see NodeControl
+    nodeControl = new NodeControlClient(dockerManager::getNodeIpAddress, NodeControl.DEFAULT_PORT);
 
     System.out.println("Initialised simulator with topology from: " + yamlPath);
   }
 
-  public void startSimulation() {
-    Map<String, NodeConfig> nodes = topologyManager.getNodes();
-
-    System.out.println("Starting simulation with " + nodes.size() + " nodes");
+  DockerSimulator(TopologyManager topologyManager, DockerManager dockerManager, NodeControlClient nodeControl) {
+    this.topologyManager = topologyManager;
+    this.dockerManager = dockerManager;
+    this.nodeControl = nodeControl;
+  }
 
-    // create docker containers for each of these nodes
-    for (Map.Entry<String, NodeConfig> entry : nodes.entrySet()) {
-      String nodeId = entry.getKey();
-      NodeConfig config = entry.getValue();
+  /*
+   * Removes the node image on shutdown, by default it is kept for the next run
+   */
+  public void setCleanupImages(boolean cleanupImages) {
+    this.cleanupImages = cleanupImages;
+  }
 
-      String programName = config.getProgramName();
+  /*
+   * Keeps up to poolSize idle node containers running between simulations,
+   * which later simulations claim instead of creating containers
+   */
+  public void setPoolSize(int poolSize) {
+    this.poolSize = Math.max(0, poolSize);
+  }
 
-      String containerId = dockerManager.createNodeContainer(nodeId, programName, config.getPeerNodeIds());
+  public void startSimulation() throws IOException {
+    Map<String, NodeConfig> nodes = topologyManager.getNodes();
 
-      nodeContainerIds.put(nodeId, containerId);
+    // only builds the image when the node runner changed since the last run
+    dockerManager.ensureNodeImage(NodeImage.DEFAULT_JAR, NodeImage.DEFAULT_DOCKERFILE);
+    if (poolSize > 0) {
+      dockerManager.ensurePool(poolSize);
     }
 
+    System.out.println("Starting simulation with " + nodes.size() + " nodes");
+
+    // create docker containers for each of these nodes, a few at a time
+    nodeContainerIds.putAll(dockerManager.createNodeContainers(nodes));
+
     System.out.println("Simulation started successfully");
   }
 
+  public Set<String> getNodeIds() {
+    return topologyManager.getNodes().keySet();
+  }
+
   public void pauseNode(String nodeId) {
     dockerManager.pauseNode(nodeId);
+    unavailableNodes.add(nodeId);
   }
 
   public void resumeNode(String nodeId) {
     dockerManager.resumeNode(nodeId);
+    unavailableNodes.remove(nodeId);
+    replayFaults(nodeId, 0);
   }
 
   public void stopNode(String nodeId) {
     dockerManager.stopNode(nodeId);
+    unavailableNodes.add(nodeId);
+  }
+
+  public void restartNode(String nodeId) {
+    dockerManager.restartNode(nodeId);
+    unavailableNodes.remove(nodeId);
+    // the new JVM starts without faults and takes a moment to listen
+    replayFaults(nodeId, RESTART_CONTROL_WAIT_MS);
+  }
+
+  /*
+   * Splits the nodes into groups whose messages to each other are lost, nodes
+   * in none of the groups form one more group. Replaces an earlier partition
+   */
+  public FaultResult partition(List<Set<String>> groups) {
+    Set<String> nodeIds = getNodeIds();
+    List<Set<String>> sides = new ArrayList<>();
+    Set<String> rest = new HashSet<>(nodeIds);
+    for (Set<String> group : groups) {
+      for (String nodeId : group) {
+        requireNode(nodeId);
+        if (!rest.remove(nodeId)) {
+          throw new IllegalArgumentException("Node is in more than one group: " + nodeId);
+        }
+      }
+      sides.add(group);
+    }
+    if (!rest.isEmpty()) {
+      sides.add(rest);
+    }
+
+    Map<String, List<String>> commands = new LinkedHashMap<>();
+    for (Set<String> side : sides) {
+      Set<String> others = new TreeSet<>(nodeIds);
+      others.removeAll(side);
+      for (String nodeId : side) {
+        List<String> lines = new ArrayList<>();
+        lines.add("unblock *");
+        if (!others.isEmpty()) {
+          lines.add("block " + String.join(",", others));
+        }
+        commands.put(nodeId, lines);
+      }
+    }
+    return sendControl("partition", "block", commands);
+  }
+
+  public FaultResult heal() {
+    return sendControl("heal", "block", toAllNodes("unblock *"));
+  }
+
+  /*
+   * Drop rate of a node's messages, or only of those to and from peer when it
+   * is not null
+   */
+  public FaultResult setDropRate(String nodeId, double dropRate, String peer) {
+    requireNode(nodeId);
+    if (dropRate < 0 || dropRate > 1) {
+      throw new IllegalArgumentException("Drop rate should be between 0 and 1");
+    }
+    String command = "drop " + dropRate;
+    if (peer != null) {
+      requireNode(peer);
+      command += " " + peer;
+    }
+    return sendControl("set drop rate", peer == null ? "drop" : "drop " + peer, Map.of(nodeId, List.of(command)));
+  }
+
+  public FaultResult setDelay(String nodeId, long delayMs) {
+    requireNode(nodeId);
+    if (delayMs < 0) {
+      throw new IllegalArgumentException("Delay should not be negative");
+    }
+    return sendControl("set delay", "delay", Map.of(nodeId, List.of("delay " + delayMs)));
+  }
+
+  /*
+   * Unlike pauseNode the node keeps running, only the messages it receives
+   * wait until releaseDelivery
+   */
+  public FaultResult holdDelivery(String nodeId) {
+    requireNode(nodeId);
+    return sendControl("hold delivery", "hold", Map.of(nodeId, List.of("hold")));
+  }
+
+  public FaultResult releaseDelivery(String nodeId) {
+    requireNode(nodeId);
+    return sendControl("release delivery", "hold", Map.of(nodeId, List.of("release")));
+  }
+
+  public FaultResult resetFaults() {
+    return sendControl("reset faults", null, toAllNodes("reset"));
+  }
+
+  private Map<String, List<String>> toAllNodes(String command) {
+    Map<String, List<String>> commands = new LinkedHashMap<>();
+    for (String nodeId : getNodeIds()) {
+      commands.put(nodeId, List.of(command));
+    }
+    return commands;
+  }
+
+  private void requireNode(String nodeId) {
+    if (!getNodeIds().contains(nodeId)) {
+      throw new NoSuchElementException("Unknown node: " + nodeId);
+    }
+  }
+
+  /*
+   * Remembers the commands as the node's faults of that kind (a null kind
+   * forgets them all), then sends them to the nodes that are running. Paused
+   * and stopped nodes get their faults when they are back, see replayFaults.
+   * Only throws when no node applied them
+   */
+  private FaultResult sendControl(String action, String kind, Map<String, List<String>> commands) {
+    long start = System.nanoTime();
+    Map<String, List<String>> reachable = new LinkedHashMap<>();
+    Set<String> skipped = new TreeSet<>();
+    for (Map.Entry<String, List<String>> entry : commands.entrySet()) {
+      String nodeId = entry.getKey();
+      if (kind == null) {
+        nodeFaults.remove(nodeId);
+      } else {
+        nodeFaults.computeIfAbsent(nodeId, id -> new LinkedHashMap<>()).put(kind, entry.getValue());
+      }
+      if (unavailableNodes.contains(nodeId)) {
+        skipped.add(nodeId);
+      } else {
+        reachable.put(nodeId, entry.getValue());
+      }
+    }
+
+    FaultResult result = new FaultResult(action, reachable.size(), skipped, nodeControl.send(reachable));
+    System.out.println(result + " in " + (System.nanoTime() - start) / 1000 + "us");
+    if (result.getApplied() == 0 && !result.failed.isEmpty()) {
+      throw new RuntimeException("Failed to " + action + ": " + result.failed);
+    }
+    return result;
+  }
+
+  /*
+   * Brings a node that was paused or restarted up to date with the faults it
+   * missed, retrying for up to waitMs while its control listener comes up
+   */
+  private void replayFaults(String nodeId, long waitMs) {
+    Map<String, List<String>> faults = nodeFaults.get(nodeId);
+    if (faults == null || faults.isEmpty()) {
+      return;
+    }
+    List<String> lines = new ArrayList<>();
+    lines.add("reset");
+    for (List<String> kind : faults.values()) {
+      lines.addAll(kind);
+    }
+
+    long deadline = System.currentTimeMillis() + waitMs;
+    while (true) {
+      String error = nodeControl.send(Map.of(nodeId, lines)).get(nodeId);
+      if (error == null) {
+        System.out.println("Reapplied the faults of " + nodeId);
+        return;
+      }
+      if (System.currentTimeMillis() >= deadline) {
+        System.out.println("Failed to reapply the faults of " + nodeId + ": " + error);
+        return;
+      }
+      try {
+        Thread.sleep(CONTROL_RETRY_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Outcome of a fault command: how many nodes applied it, which were skipped
+   * for being paused or stopped, and the error of each node that failed.
+   */
+  public static class FaultResult {
+    public final String action;
+    public final int sent;
+    public final Set<String> skipped;
+    public final Map<String, String> failed;
+
+    public FaultResult(String action, int sent, Set<String> skipped, Map<String, String> failed) {
+      this.action = action;
+      this.sent = sent;
+      this.skipped = skipped;
+      this.failed = failed;
+    }
+
+    public int getApplied() {
+      return sent - failed.size();
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder summary = new StringBuilder(action).append(": applied on ").append(getApplied()).append(" nodes");
+      if (!skipped.isEmpty()) {
+        summary.append(", skipped paused or stopped ").append(String.join(",", skipped));
+      }
+      if (!failed.isEmpty()) {
+        summary.append(", failed on ").append(failed);
+      }
+      return summary.toString();
+    }
+  }
+
+  /*
+   * Pulls the event journals of all nodes into outputDir and merges them into
+   * a single events.ndjson ordered by timestamp
+   */
+  public void collectJournals(Path outputDir) throws IOException {
+    Map<String, Path> journals = dockerManager.collectJournals(outputDir);
+
+    List<MessageEvent> events = new ArrayList<>();
+    for (Map.Entry<String, Path> entry : journals.entrySet()) {
+      try (EventJournal.Reader reader = EventJournal.Reader.open(entry.getValue())) {
+        reader.read(1, events::add);
+        if (reader.getSkipped() > 0) {
+          System.out.println("Journal of " + entry.getKey() + " wrapped around, " + reader.getSkipped()
+              + " older events were overwritten");
+        }
+      }
+    }
+    events.sort(Comparator.comparingLong(event -> event.timestamp));
+
+    ObjectMapper objectMapper = new ObjectMapper();
+    Path merged = outputDir.resolve("events.ndjson");
+    try (BufferedWriter writer = Files.newBufferedWriter(merged)) {
+      for (MessageEvent event : events) {
+        writer.write(objectMapper.writeValueAsString(event));
+        writer.newLine();
+      }
+    }
+    System.out.println("Wrote " + events.size() + " events from " + journals.size() + " nodes to " + merged);
   }
 
   public void shutdown() {
     System.out.println("Shutting down simulation...");
+    nodeControl.close();
     dockerManager.cleanupContainers();
-    dockerManager.cleanupImages();
+    if (cleanupImages) {
+      dockerManager.removePool();
+      dockerManager.cleanupImages();
+    } else if (poolSize > 0) {
+      // refill now so the next simulation does not wait for it
+      dockerManager.ensurePool(poolSize);
+    }
+    dockerManager.close();
     System.out.println("Simulation shutdown complete");
   }
 
@@ -0,0 +1,184 @@
+package com.example.simulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Folds the event stream into per-edge and per-node counters over tumbling
+ * windows, for frontends that cannot keep up with every single event.
+ *
+ * Events only bump primitive counters; at the end of each window the counters
+ * are written out as one AGGREGATE JSON message and a fresh window starts.
+ * Windows without any events are not emitted.
+ */
+public class EventAggregator {
+  public static final long DEFAULT_WINDOW_MS = 250;
+
+  // slots of the per-edge and per-node counter arrays
+  private static final int SENT = 0;
+  private static final int RECEIVED = 1;
+  private static final int DROPPED = 2;
+  private static final int BYTES = 3;
+
+  private static final Logger logger = LoggerFactory.getLogger(EventAggregator.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final long windowMs;
+  private final Consumer<String> sink;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "event-aggregator");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // from node -> to node -> counters, nested so counting an event needs no key object
+  private Map<String, Map<String, long[]>> edges = new HashMap<>();
+  private Map<String, long[]> nodes = new HashMap<>();
+  private long windowStart = System.currentTimeMillis();
+  private long windowEvents;
+
+  public EventAggregator(long windowMs, Consumer<String> sink) {
+    if (windowMs <= 0) {
+      throw new IllegalArgumentException("Window must be positive: " + windowMs);
+    }
+    this.windowMs = windowMs;
+    this.sink = sink;
+  }
+
+  public void start() {
+    executor.scheduleAtFixedRate(this::closeWindow, windowMs, windowMs, TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    executor.shutdown();
+  }
+
+  public long getWindowMs() {
+    return windowMs;
+  }
+
+  public synchronized void add(MessageEvent event) {
+    int slot;
+    String node;
+    if ("SENT".equals(event.type)) {
+      slot = SENT;
+      node = event.fromNode;
+    } else if ("RECEIVED".equals(event.type)) {
+      slot = RECEIVED;
+      node = event.toNode;
+    } else if ("DROPPED".equals(event.type)) {
+      // counted against the sender, whichever side the jitter dropped it on
+      slot = DROPPED;
+      node = event.fromNode;
+    } else {
+      return;
+    }
+    if (event.fromNode == null || event.toNode == null) {
+      return;
+    }
+
+    long[] edge = edges.computeIfAbsent(event.fromNode, from -> new HashMap<>())
+        .computeIfAbsent(event.toNode, to -> new long[4]);
+    edge[slot]++;
+    if (slot == SENT && event.message != null) {
+      edge[BYTES] += utf8Length(event.message);
+    }
+    nodes.computeIfAbsent(node, id -> new long[3])[slot]++;
+    windowEvents++;
+  }
+
+  /**
+   * Emits the current window (if it saw any events) and starts the next one.
+   */
+  public void closeWindow() {
+    Map<String, Map<String, long[]>> closedEdges;
+    Map<String, long[]> closedNodes;
+    long start;
+    long events;
+    long end = System.currentTimeMillis();
+    synchronized (this) {
+      closedEdges = edges;
+      closedNodes = nodes;
+      start = windowStart;
+      events = windowEvents;
+      edges = new HashMap<>();
+      nodes = new HashMap<>();
+      windowStart = end;
+      windowEvents = 0;
+    }
+
+    if (events == 0) {
+      return;
+    }
+    try {
+      sink.accept(toJson(start, end, events, closedEdges, closedNodes));
+    } catch (Exception e) {
+      logger.error("Failed to publish aggregate window: {}", e.getMessage());
+    }
+  }
+
+  private static String toJson(long start, long end, long events, Map<String, Map<String, long[]>> edges,
+      Map<String, long[]> nodes) throws JsonProcessingException {
+    ObjectNode window = objectMapper.createObjectNode();
+    window.put("type", "AGGREGATE");
+    window.put("windowStart", start);
+    window.put("windowMs", end - start);
+    window.put("events", events);
+
+    ArrayNode edgeArray = window.putArray("edges");
+    for (Map.Entry<String, Map<String, long[]>> from : edges.entrySet()) {
+      for (Map.Entry<String, long[]> to : from.getValue().entrySet()) {
+        long[] counts = to.getValue();
+        edgeArray.addObject()
+            .put("from", from.getKey())
+            .put("to", to.getKey())
+            .put("sent", counts[SENT])
+            .put("received", counts[RECEIVED])
+            .put("dropped", counts[DROPPED])
+            .put("bytes", counts[BYTES]);
+      }
+    }
+
+    ArrayNode nodeArray = window.putArray("nodes");
+    for (Map.Entry<String, long[]> node : nodes.entrySet()) {
+      long[] counts = node.getValue();
+      nodeArray.addObject()
+          .put("node", node.getKey())
+          .put("sent", counts[SENT])
+          .put("received", counts[RECEIVED])
+          .put("dropped", counts[DROPPED]);
+    }
+    return objectMapper.writeValueAsString(window);
+  }
+
+  private static int utf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+}
@@ -0,0 +1,331 @@
+package com.example.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+/**
+ * Node-local record of every message the node sent or received, kept in a
+ * memory-mapped ring file of fixed-size records.
+ *
+ * Recording an event is just a few writes into the mapping, the file outlives
+ * both the node process and any monitor outage, and can be tailed while the
+ * node is running or collected after the run (see Reader).
+ *
+ * The file is a 32 byte header followed by capacity records of recordSize
+ * bytes each, record n living in slot n % capacity:
+ *
+ * <pre>
+ * header  0  int   magic
+ *         4  int   version
+ *         8  int   recordSize
+ *        12  int   capacity
+ *        16  long  nextSeq
+ *
+ * record  0  long  seq, 0 while the record is being written
+ *         8  long  timestamp
+ *        16  long  hlc
+ *        24  byte  type
+ *        25  byte  fromLen
+ *        26  byte  toLen
+ *        28  int   payloadLength
+ *        32  short storedLength
+ *        34  long  messageId
+ *        42        from, to, then the first storedLength payload bytes
+ * </pre>
+ *
+ * The slot's seq is cleared before and written after the rest of the record,
+ * so a reader can tell a complete record from one being overwritten. Payloads
+ * that do not fit the record are truncated.
+ */
+public class EventJournal implements AutoCloseable {
+  public static final String FILE_NAME = "events.journal";
+  public static final int DEFAULT_CAPACITY = 16384;
+  public static final int DEFAULT_RECORD_SIZE = 256;
+
+  public static final byte TYPE_SENT = 1;
+  public static final byte TYPE_RECEIVED = 2;
+  public static final byte TYPE_DROPPED = 3;
+  private static final String[] TYPE_NAMES = { null, "SENT", "RECEIVED", "DROPPED" };
+
+  private static final int MAGIC = 0x444a524e;
+  private static final int VERSION = 3;
+  private static final int HEADER_BYTES = 32;
+  private static final int NEXT_SEQ_OFFSET = 16;
+  private static final int RECORD_HEADER_BYTES = 42;
+  private static final int MAX_ID_BYTES = 36;
+  private static final int MIN_RECORD_SIZE = RECORD_HEADER_BYTES + 2 * MAX_ID_BYTES + 8;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int recordSize;
+  private final int capacity;
+  private final byte[] nodeId;
+  // node ids are few, encode each one once instead of on every event
+  private final Map<String, byte[]> encodedIds = new HashMap<>();
+  private long nextSeq;
+
+  public EventJournal(Path file, String nodeId) throws IOException {
+    this(file, nodeId, DEFAULT_CAPACITY, DEFAULT_RECORD_SIZE);
+  }
+
+  /**
+   * Opens the journal at the given path, continuing after the last record if
+   * the file was written by an earlier run of the node with the same layout.
+   */
+  public EventJournal(Path file, String nodeId, int capacity, int recordSize) throws IOException {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    if (recordSize < MIN_RECORD_SIZE) {
+      throw new IllegalArgumentException("Record size must be at least " + MIN_RECORD_SIZE + ": " + recordSize);
+    }
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+
+    this.capacity = capacity;
+    this.recordSize = recordSize;
+    this.nodeId = encodeId(nodeId);
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * recordSize);
+
+    if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(8) == recordSize
+        && buffer.getInt(12) == capacity) {
+      nextSeq = buffer.getLong(NEXT_SEQ_OFFSET);
+    } else {
+      // new file or a different layout, start over
+      for (int i = 0; i < capacity; i++) {
+        buffer.putLong(HEADER_BYTES + i * recordSize, 0);
+      }
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+      buffer.putInt(8, recordSize);
+      buffer.putInt(12, capacity);
+      nextSeq = 1;
+      buffer.putLong(NEXT_SEQ_OFFSET, nextSeq);
+    }
+  }
+
+  public void recordSent(String toNode, byte[] payload, long timestamp, long hlc) {
+    recordSent(toNode, payload, timestamp, hlc, 0);
+  }
+
+  public void recordSent(String toNode, byte[] payload, long timestamp, long hlc, long messageId) {
+    record(TYPE_SENT, nodeId, idBytes(toNode), payload, timestamp, hlc, messageId);
+  }
+
+  public void recordReceived(String fromNode, byte[] payload, long timestamp, long hlc) {
+    recordReceived(fromNode, payload, timestamp, hlc, 0);
+  }
+
+  public void recordReceived(String fromNode, byte[] payload, long timestamp, long hlc, long messageId) {
+    record(TYPE_RECEIVED, idBytes(fromNode), nodeId, payload, timestamp, hlc, messageId);
+  }
+
+  public void recordDropped(String fromNode, String toNode, byte[] payload, long timestamp, long hlc,
+      long messageId) {
+    record(TYPE_DROPPED, idBytes(fromNode), idBytes(toNode), payload, timestamp, hlc, messageId);
+  }
+
+  /**
+   * Sequence number the next record will get, records start at 1.
+   */
+  public synchronized long getNextSeq() {
+    return nextSeq;
+  }
+
+  public void force() {
+    buffer.force();
+  }
+
+  @Override
+  public void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+  private synchronized void record(byte type, byte[] from, byte[] to, byte[] payload, long timestamp, long hlc,
+      long messageId) {
+    int offset = HEADER_BYTES + (int) ((nextSeq - 1) % capacity) * recordSize;
+    int payloadLength = payload != null ? payload.length : -1;
+    int stored = Math.min(Math.max(payloadLength, 0), recordSize - RECORD_HEADER_BYTES - from.length - to.length);
+
+    // invalidate the slot while it is being rewritten
+    buffer.putLong(offset, 0);
+    buffer.putLong(offset + 8, timestamp);
+    buffer.putLong(offset + 16, hlc);
+    buffer.put(offset + 24, type);
+    buffer.put(offset + 25, (byte) from.length);
+    buffer.put(offset + 26, (byte) to.length);
+    buffer.putInt(offset + 28, payloadLength);
+    buffer.putShort(offset + 32, (short) stored);
+    buffer.putLong(offset + 34, messageId);
+    buffer.put(offset + RECORD_HEADER_BYTES, from);
+    buffer.put(offset + RECORD_HEADER_BYTES + from.length, to);
+    if (stored > 0) {
+      buffer.put(offset + RECORD_HEADER_BYTES + from.length + to.length, payload, 0, stored);
+    }
+    buffer.putLong(offset, nextSeq);
+
+    nextSeq++;
+    buffer.putLong(NEXT_SEQ_OFFSET, nextSeq);
+  }
+
+  private byte[] idBytes(String id) {
+    synchronized (encodedIds) {
+      return encodedIds.computeIfAbsent(id, EventJournal::encodeId);
+    }
+  }
+
+  private static byte[] encodeId(String id) {
+    if (id == null) {
+      return new byte[0];
+    }
+    byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+    return bytes.length <= MAX_ID_BYTES ? bytes : Arrays.copyOf(bytes, MAX_ID_BYTES);
+  }
+
+  /**
+   * Reads records back out of a journal, either a live file that is still
+   * being written or a copy collected from a node.
+   */
+  public static class Reader implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int recordSize;
+    private final int capacity;
+    private long skipped;
+
+    public Reader(ByteBuffer buffer) throws IOException {
+      this(null, buffer);
+    }
+
+    private Reader(FileChannel channel, ByteBuffer buffer) throws IOException {
+      this.channel = channel;
+      this.buffer = buffer;
+      if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+        throw new IOException("Not an event journal");
+      }
+      if (buffer.getInt(4) != VERSION) {
+        throw new IOException("Unsupported event journal version " + buffer.getInt(4));
+      }
+      this.recordSize = buffer.getInt(8);
+      this.capacity = buffer.getInt(12);
+      if (buffer.capacity() < HEADER_BYTES + (long) capacity * recordSize) {
+        throw new IOException("Event journal is truncated");
+      }
+    }
+
+    public static Reader open(Path file) throws IOException {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+      try {
+        return new Reader(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Sequence number the writer will use for its next record.
+     */
+    public long getNextSeq() {
+      return buffer.getLong(NEXT_SEQ_OFFSET);
+    }
+
+    /**
+     * Records that were overwritten (or being overwritten) before they could
+     * be read.
+     */
+    public long getSkipped() {
+      return skipped;
+    }
+
+    /**
+     * Hands every complete record from fromSeq onwards to the consumer.
+     *
+     * @return the sequence to continue from when tailing the journal
+     */
+    public long read(long fromSeq, Consumer<MessageEvent> consumer) {
+      long nextSeq = getNextSeq();
+      long oldest = Math.max(1, nextSeq - capacity);
+      if (fromSeq < oldest) {
+        skipped += oldest - fromSeq;
+        fromSeq = oldest;
+      }
+
+      for (long seq = fromSeq; seq < nextSeq; seq++) {
+        MessageEvent event = readRecord(seq);
+        if (event == null) {
+          skipped++;
+        } else {
+          consumer.accept(event);
+        }
+      }
+      return nextSeq;
+    }
+
+    public List<MessageEvent> readAll() {
+      List<MessageEvent> events = new ArrayList<>();
+      read(1, events::add);
+      return events;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (channel != null) {
+        channel.close();
+      }
+    }
+
+    private MessageEvent readRecord(long seq) {
+      int offset = HEADER_BYTES + (int) ((seq - 1) % capacity) * recordSize;
+      if (buffer.getLong(offset) != seq) {
+        return null;
+      }
+
+      byte type = buffer.get(offset + 24);
+      int fromLength = buffer.get(offset + 25) & 0xff;
+      int toLength = buffer.get(offset + 26) & 0xff;
+      int payloadLength = buffer.getInt(offset + 28);
+      int stored = buffer.getShort(offset + 32) & 0xffff;
+      if (RECORD_HEADER_BYTES + fromLength + toLength + stored > recordSize) {
+        return null;
+      }
+
+      MessageEvent event = new MessageEvent();
+      event.type = type > 0 && type < TYPE_NAMES.length ? TYPE_NAMES[type] : "UNKNOWN";
+      event.timestamp = buffer.getLong(offset + 8);
+      event.hlc = buffer.getLong(offset + 16);
+      event.messageId = buffer.getLong(offset + 34);
+      event.fromNode = readString(offset + RECORD_HEADER_BYTES, fromLength);
+      event.toNode = readString(offset + RECORD_HEADER_BYTES + fromLength, toLength);
+      event.message = payloadLength < 0 ? null
+          : readString(offset + RECORD_HEADER_BYTES + fromLength + toLength, stored);
+
+      // the writer moved on to this slot while we were reading it
+      return buffer.getLong(offset) == seq ? event : null;
+    }
+
+    private String readString(int offset, int length) {
+      byte[] bytes = new byte[length];
+      buffer.get(offset, bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+}
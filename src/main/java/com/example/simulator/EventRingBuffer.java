@@ -0,0 +1,107 @@
+package com.example.simulator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+/**
+ * Fixed-capacity queue between the node's hot path and the reporter's flusher.
+ *
+ * When the monitor cannot keep up the buffer sheds events according to its
+ * overflow policy instead of growing, so reporting never costs the node more
+ * than capacity events worth of memory.
+ */
+public class EventRingBuffer {
+  public enum OverflowPolicy {
+    /** overwrite the oldest queued event */
+    DROP_OLDEST,
+    /** reject the incoming event */
+    DROP_NEWEST,
+    /**
+     * once the buffer is half full only keep 1 in N events of each type,
+     * rejecting the incoming event when completely full
+     */
+    SAMPLE;
+
+    public static OverflowPolicy parse(String value) {
+      return OverflowPolicy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+  }
+
+  private final MessageEvent[] slots;
+  private final OverflowPolicy policy;
+  private final int sampleRate;
+  private final Map<String, long[]> sampleCounters = new HashMap<>();
+  private int head;
+  private int size;
+  private long shed;
+
+  public EventRingBuffer(int capacity, OverflowPolicy policy, int sampleRate) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    if (sampleRate <= 0) {
+      throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+    }
+    this.slots = new MessageEvent[capacity];
+    this.policy = policy;
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * @return false if the event was shed instead of queued
+   */
+  public synchronized boolean offer(MessageEvent event) {
+    if (policy == OverflowPolicy.SAMPLE && size >= slots.length / 2) {
+      long[] counter = sampleCounters.computeIfAbsent(event.type, type -> new long[1]);
+      if (counter[0]++ % sampleRate != 0) {
+        shed++;
+        return false;
+      }
+    }
+
+    if (size == slots.length) {
+      shed++;
+      if (policy != OverflowPolicy.DROP_OLDEST) {
+        return false;
+      }
+      slots[head] = null;
+      head = (head + 1) % slots.length;
+      size--;
+    }
+
+    slots[(head + size) % slots.length] = event;
+    size++;
+    return true;
+  }
+
+  /**
+   * Moves up to max queued events, oldest first, into the given list.
+   *
+   * @return the number of events moved
+   */
+  public synchronized int drainTo(List<MessageEvent> out, int max) {
+    int count = Math.min(max, size);
+    for (int i = 0; i < count; i++) {
+      out.add(slots[head]);
+      slots[head] = null;
+      head = (head + 1) % slots.length;
+    }
+    size -= count;
+    return count;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+
+  public synchronized long getShed() {
+    return shed;
+  }
+}
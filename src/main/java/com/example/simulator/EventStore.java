@@ -0,0 +1,406 @@
+package com.example.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable log of every event that reached the monitor, so a run can be
+ * queried and replayed after the fact.
+ *
+ * Events are appended to segment files of roughly segmentBytes each, named
+ * after their first sequence number. Each record is [int length][long seq]
+ * [long time][event, see EventStreamCodec.writeEvent], where time is the
+ * physical part of the event's clock stamp. Only a sparse index is kept in
+ * memory: one entry per block of records with the block's position, the
+ * highest time seen so far and the nodes involved in the block. Queries use it
+ * to skip to the first block that can match and over blocks without the
+ * requested node, then read the segments through read-only memory mappings.
+ *
+ * Events are expected to arrive roughly in time order (the monitor appends
+ * them as they leave the CausalOrderBuffer); a query stops scanning once it
+ * sees events more than LATE_TOLERANCE_MS past its range.
+ */
+public class EventStore implements AutoCloseable {
+  public static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+  public static final int DEFAULT_MAX_SEGMENTS = 64;
+  public static final long LATE_TOLERANCE_MS = 1000;
+
+  private static final String SEGMENT_PREFIX = "events-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final int RECORD_HEADER_BYTES = 4 + 8 + 8;
+  private static final int BLOCK_RECORDS = 256;
+  private static final Logger logger = LoggerFactory.getLogger(EventStore.class);
+
+  private final Path dir;
+  private final long segmentBytes;
+  private final int maxSegments;
+  private final List<Segment> segments = new ArrayList<>();
+  private final List<IndexEntry> index = new ArrayList<>();
+  private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(512);
+  private final DataOutputStream record = new DataOutputStream(recordBuffer);
+  private long nextSeq = 1;
+  private long maxTime = Long.MIN_VALUE;
+  private int blockRecords = BLOCK_RECORDS;
+
+  public EventStore(Path dir) throws IOException {
+    this(dir, DEFAULT_SEGMENT_BYTES, DEFAULT_MAX_SEGMENTS);
+  }
+
+  /**
+   * Opens the store, rebuilding the index from any segments left by an
+   * earlier run.
+   *
+   * @param maxSegments oldest segments are deleted beyond this many
+   */
+  public EventStore(Path dir, long segmentBytes, int maxSegments) throws IOException {
+    if (segmentBytes <= RECORD_HEADER_BYTES) {
+      throw new IllegalArgumentException("Segment size too small: " + segmentBytes);
+    }
+    if (maxSegments <= 0) {
+      throw new IllegalArgumentException("Max segments must be positive: " + maxSegments);
+    }
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.maxSegments = maxSegments;
+    Files.createDirectories(dir);
+
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      stream.forEach(files::add);
+    }
+    files.sort(null);
+    for (Path file : files) {
+      recover(file);
+    }
+  }
+
+  public synchronized long append(MessageEvent event) throws IOException {
+    long time = timeOf(event);
+    recordBuffer.reset();
+    record.writeInt(0);
+    record.writeLong(nextSeq);
+    record.writeLong(time);
+    EventStreamCodec.writeEvent(record, event);
+    record.flush();
+    byte[] bytes = recordBuffer.toByteArray();
+    ByteBuffer.wrap(bytes).putInt(0, bytes.length);
+
+    Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+    if (segment == null || segment.size + bytes.length > segmentBytes) {
+      segment = roll();
+    }
+    long offset = segment.size;
+    segment.channel.write(ByteBuffer.wrap(bytes), offset);
+    segment.size += bytes.length;
+    indexRecord(segment, offset, nextSeq, time, event);
+    return nextSeq++;
+  }
+
+  /**
+   * Events with fromTime <= time < toTime involving the given node (null for
+   * all nodes), oldest first.
+   *
+   * @param afterSeq cursor from a previous page, 0 to start at the beginning
+   */
+  public Page query(long fromTime, long toTime, String node, long afterSeq, int limit) throws IOException {
+    List<MessageEvent> events = new ArrayList<>();
+    long[] lastSeq = { afterSeq };
+    boolean more = scan(fromTime, toTime, node, afterSeq, (seq, event) -> {
+      if (events.size() == limit) {
+        return false;
+      }
+      events.add(event);
+      lastSeq[0] = seq;
+      return true;
+    });
+    return new Page(events, lastSeq[0], more);
+  }
+
+  /**
+   * Plays the events of a range back to the consumer, keeping their original
+   * spacing divided by speed. Blocks until done or interrupted.
+   */
+  public long replay(long fromTime, long toTime, String node, double speed, Consumer<MessageEvent> consumer)
+      throws IOException, InterruptedException {
+    if (speed <= 0) {
+      throw new IllegalArgumentException("Speed must be positive: " + speed);
+    }
+    long start = System.nanoTime();
+    long[] firstTime = { Long.MIN_VALUE };
+    long[] played = { 0 };
+    try {
+      scan(fromTime, toTime, node, 0, (seq, event) -> {
+        long time = timeOf(event);
+        if (firstTime[0] == Long.MIN_VALUE) {
+          firstTime[0] = time;
+        }
+        long dueNanos = (long) ((time - firstTime[0]) * 1_000_000 / speed);
+        long waitNanos = dueNanos - (System.nanoTime() - start);
+        if (waitNanos > 0) {
+          try {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+          } catch (InterruptedException e) {
+            throw new ReplayInterrupted(e);
+          }
+        }
+        consumer.accept(event);
+        played[0]++;
+        return true;
+      });
+    } catch (ReplayInterrupted e) {
+      throw (InterruptedException) e.getCause();
+    }
+    return played[0];
+  }
+
+  public synchronized long getNextSeq() {
+    return nextSeq;
+  }
+
+  public synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (Segment segment : segments) {
+      segment.close();
+    }
+    segments.clear();
+    index.clear();
+  }
+
+  /*
+   * Visits matching records in order until the visitor returns false.
+   * Returns true if it stopped early, meaning there may be more matches
+   */
+  private boolean scan(long fromTime, long toTime, String node, long afterSeq, RecordVisitor visitor)
+      throws IOException {
+    List<IndexEntry> blocks;
+    synchronized (this) {
+      // work on a copy, blocks of segments deleted meanwhile are skipped below
+      blocks = new ArrayList<>(index);
+    }
+
+    long stopTime = toTime > Long.MAX_VALUE - LATE_TOLERANCE_MS ? Long.MAX_VALUE : toTime + LATE_TOLERANCE_MS;
+    int first = firstBlock(blocks, fromTime, afterSeq);
+    for (int i = first; i < blocks.size(); i++) {
+      IndexEntry block = blocks.get(i);
+      if (block.minTime > stopTime) {
+        return false;
+      }
+      if (node != null && !block.nodes.contains(node)) {
+        continue;
+      }
+
+      ByteBuffer data = block.segment.map();
+      if (data == null) {
+        // the segment was deleted by retention while we were scanning
+        continue;
+      }
+      long endOffset = i + 1 < blocks.size() && blocks.get(i + 1).segment == block.segment
+          ? blocks.get(i + 1).offset
+          : data.limit();
+      int offset = (int) block.offset;
+      while (offset + RECORD_HEADER_BYTES <= endOffset) {
+        int length = data.getInt(offset);
+        long seq = data.getLong(offset + 4);
+        long time = data.getLong(offset + 12);
+        if (length < RECORD_HEADER_BYTES || offset + length > data.limit()) {
+          break;
+        }
+        if (seq > afterSeq && time >= fromTime && time < toTime) {
+          MessageEvent event = decode(data, offset, length);
+          if ((node == null || node.equals(event.fromNode) || node.equals(event.toNode))
+              && !visitor.visit(seq, event)) {
+            return true;
+          }
+        }
+        offset += length;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * The first block that may hold records at or after fromTime and past
+   * afterSeq: every record before a block whose running max time is below
+   * fromTime is itself older than fromTime
+   */
+  private static int firstBlock(List<IndexEntry> blocks, long fromTime, long afterSeq) {
+    int low = 0;
+    int high = blocks.size() - 1;
+    int first = 0;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      IndexEntry block = blocks.get(mid);
+      if (block.maxTimeBefore < fromTime && block.firstSeq <= afterSeq + 1) {
+        first = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return first;
+  }
+
+  private static MessageEvent decode(ByteBuffer data, int offset, int length) throws IOException {
+    byte[] bytes = new byte[length - RECORD_HEADER_BYTES];
+    data.get(offset + RECORD_HEADER_BYTES, bytes);
+    return EventStreamCodec.readEvent(new DataInputStream(new ByteArrayInputStream(bytes)));
+  }
+
+  private static long timeOf(MessageEvent event) {
+    return event.hlc != 0 ? HybridLogicalClock.physicalMillis(event.hlc) : event.timestamp;
+  }
+
+  private void indexRecord(Segment segment, long offset, long seq, long time, MessageEvent event) {
+    IndexEntry block = index.isEmpty() ? null : index.get(index.size() - 1);
+    if (block == null || block.segment != segment || blockRecords >= BLOCK_RECORDS) {
+      block = new IndexEntry(segment, offset, seq, maxTime);
+      index.add(block);
+      blockRecords = 0;
+    }
+    blockRecords++;
+    block.minTime = Math.min(block.minTime, time);
+    if (event.fromNode != null) {
+      block.nodes.add(event.fromNode);
+    }
+    if (event.toNode != null) {
+      block.nodes.add(event.toNode);
+    }
+    maxTime = Math.max(maxTime, time);
+  }
+
+  private Segment roll() throws IOException {
+    Segment segment = new Segment(dir.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSeq, SEGMENT_SUFFIX)));
+    segments.add(segment);
+
+    while (segments.size() > maxSegments) {
+      Segment oldest = segments.remove(0);
+      index.removeIf(entry -> entry.segment == oldest);
+      oldest.close();
+      Files.deleteIfExists(oldest.file);
+      logger.info("Deleted event store segment {}", oldest.file.getFileName());
+    }
+    return segment;
+  }
+
+  private void recover(Path file) throws IOException {
+    Segment segment = new Segment(file);
+    segments.add(segment);
+
+    ByteBuffer data = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, segment.channel.size());
+    int offset = 0;
+    while (offset + RECORD_HEADER_BYTES <= data.limit()) {
+      int length = data.getInt(offset);
+      if (length < RECORD_HEADER_BYTES || offset + length > data.limit()) {
+        break;
+      }
+      long seq = data.getLong(offset + 4);
+      long time = data.getLong(offset + 12);
+      indexRecord(segment, offset, seq, time, decode(data, offset, length));
+      nextSeq = seq + 1;
+      offset += length;
+    }
+    // drop a record torn by a crash so the next append starts cleanly
+    segment.size = offset;
+    segment.channel.truncate(offset);
+  }
+
+  public static class Page {
+    public final List<MessageEvent> events;
+    // pass back as afterSeq to get the next page
+    public final long cursor;
+    public final boolean hasMore;
+
+    public Page(List<MessageEvent> events, long cursor, boolean hasMore) {
+      this.events = events;
+      this.cursor = cursor;
+      this.hasMore = hasMore;
+    }
+  }
+
+  private interface RecordVisitor {
+    boolean visit(long seq, MessageEvent event) throws IOException;
+  }
+
+  private static class ReplayInterrupted extends RuntimeException {
+    ReplayInterrupted(InterruptedException cause) {
+      super(cause);
+    }
+  }
+
+  private static class IndexEntry {
+    final Segment segment;
+    final long offset;
+    final long firstSeq;
+    // highest time of any record before this block
+    final long maxTimeBefore;
+    volatile long minTime = Long.MAX_VALUE;
+    final Set<String> nodes = ConcurrentHashMap.newKeySet();
+
+    IndexEntry(Segment segment, long offset, long firstSeq, long maxTimeBefore) {
+      this.segment = segment;
+      this.offset = offset;
+      this.firstSeq = firstSeq;
+      this.maxTimeBefore = maxTimeBefore;
+    }
+  }
+
+  private static class Segment {
+    final Path file;
+    final FileChannel channel;
+    volatile long size;
+    private MappedByteBuffer mapped;
+    private boolean closed;
+
+    Segment(Path file) throws IOException {
+      this.file = file;
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE);
+      this.size = channel.size();
+    }
+
+    /**
+     * Read-only mapping covering at least everything appended so far, a
+     * segment still being written is remapped when it has grown.
+     */
+    synchronized ByteBuffer map() throws IOException {
+      if (closed) {
+        return null;
+      }
+      long current = size;
+      if (mapped == null || mapped.capacity() < current) {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, current);
+      }
+      return mapped.duplicate().limit((int) current);
+    }
+
+    synchronized void close() throws IOException {
+      closed = true;
+      mapped = null;
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package com.example.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node side of the persistent event stream to the monitor.
+ *
+ * Events are kept in a resend buffer until the monitor acknowledges them. If
+ * the connection breaks, the client reconnects with a backoff and replays the
+ * unacknowledged events; the monitor drops anything it has already seen.
+ *
+ * send() is expected to be called from a single thread (the reporter's
+ * flusher), acknowledgements are read on a separate daemon thread.
+ */
+public class EventStreamClient {
+  private static final Logger logger = LoggerFactory.getLogger(EventStreamClient.class);
+
+  private static final int CONNECT_TIMEOUT_MS = 2000;
+  private static final long MIN_BACKOFF_MS = 100;
+  private static final long MAX_BACKOFF_MS = 5000;
+  private static final int MAX_EVENTS_PER_FRAME = 1024;
+
+  private final String nodeId;
+  private final String host;
+  private final int port;
+  private final int maxBufferedEvents;
+  private final long sessionId = ThreadLocalRandom.current().nextLong();
+
+  // unacknowledged events, the first one has sequence firstUnackedSeq
+  private final ArrayDeque<MessageEvent> unacked = new ArrayDeque<>();
+  private long firstUnackedSeq = 1;
+  private long droppedEvents;
+
+  private Socket socket;
+  private DataOutputStream out;
+  private final ByteArrayOutputStream frameBuffer = new ByteArrayOutputStream(64 * 1024);
+  private final DataOutputStream frame = new DataOutputStream(frameBuffer);
+  private long nextConnectAttempt;
+  private long backoffMs = MIN_BACKOFF_MS;
+
+  public EventStreamClient(String nodeId, String host, int port, int maxBufferedEvents) {
+    this.nodeId = nodeId;
+    this.host = host;
+    this.port = port;
+    this.maxBufferedEvents = maxBufferedEvents;
+  }
+
+  public void send(List<MessageEvent> batch) {
+    long firstSeq;
+    synchronized (unacked) {
+      firstSeq = firstUnackedSeq + unacked.size();
+      unacked.addAll(batch);
+      // keep the resend buffer bounded, the oldest events are the least useful
+      while (unacked.size() > maxBufferedEvents) {
+        unacked.pollFirst();
+        firstUnackedSeq++;
+        droppedEvents++;
+      }
+    }
+
+    if (out == null) {
+      // a fresh connection replays the whole resend buffer, this batch included
+      connect();
+      return;
+    }
+
+    try {
+      writeEvents(firstSeq, batch);
+      out.flush();
+    } catch (IOException e) {
+      logger.error("Node: {} lost event stream to {}:{}: {}", nodeId, host, port, e.getMessage());
+      disconnect();
+    }
+  }
+
+  public long getDroppedEvents() {
+    synchronized (unacked) {
+      return droppedEvents;
+    }
+  }
+
+  public void close() {
+    disconnect();
+  }
+
+  private boolean connect() {
+    long now = System.currentTimeMillis();
+    if (now < nextConnectAttempt) {
+      return false;
+    }
+
+    try {
+      Socket newSocket = new Socket();
+      newSocket.setTcpNoDelay(true);
+      newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+      socket = newSocket;
+      out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream(), 64 * 1024));
+      EventStreamCodec.writeHello(out, nodeId, sessionId);
+
+      Thread ackReader = new Thread(() -> readAcks(newSocket), "event-stream-acks");
+      ackReader.setDaemon(true);
+      ackReader.start();
+
+      // resend everything the monitor has not confirmed yet
+      List<MessageEvent> pending;
+      long seq;
+      synchronized (unacked) {
+        pending = new ArrayList<>(unacked);
+        seq = firstUnackedSeq;
+      }
+      writeEvents(seq, pending);
+      out.flush();
+
+      logger.info("Node: {} connected event stream to {}:{} ({} events replayed)", nodeId, host, port,
+          pending.size());
+      backoffMs = MIN_BACKOFF_MS;
+      return true;
+    } catch (IOException e) {
+      logger.error("Node: {} failed to connect event stream to {}:{}: {}", nodeId, host, port, e.getMessage());
+      disconnect();
+      nextConnectAttempt = now + backoffMs;
+      backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+      return false;
+    }
+  }
+
+  private void writeEvents(long firstSeq, List<MessageEvent> events) throws IOException {
+    for (int start = 0; start < events.size(); start += MAX_EVENTS_PER_FRAME) {
+      int end = Math.min(events.size(), start + MAX_EVENTS_PER_FRAME);
+
+      frameBuffer.reset();
+      frame.writeByte(EventStreamCodec.FRAME_EVENTS);
+      frame.writeLong(firstSeq + start);
+      frame.writeInt(end - start);
+      for (int i = start; i < end; i++) {
+        EventStreamCodec.writeEvent(frame, events.get(i));
+      }
+      frame.flush();
+
+      out.writeInt(frameBuffer.size());
+      frameBuffer.writeTo(out);
+    }
+  }
+
+  private void readAcks(Socket ackSocket) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(ackSocket.getInputStream()))) {
+      while (true) {
+        long ackedSeq = in.readLong();
+        synchronized (unacked) {
+          while (firstUnackedSeq <= ackedSeq && !unacked.isEmpty()) {
+            unacked.pollFirst();
+            firstUnackedSeq++;
+          }
+        }
+      }
+    } catch (IOException e) {
+      // the connection is gone, the sender notices on its next write
+    }
+  }
+
+  private void disconnect() {
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // already closed
+      }
+    }
+    socket = null;
+    out = null;
+  }
+}
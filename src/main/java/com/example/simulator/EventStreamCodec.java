@@ -0,0 +1,94 @@
+package com.example.simulator;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+/**
+ * Wire format of the event stream between a node's MessageReporter and the
+ * monitor.
+ *
+ * Every frame is length-prefixed: [int length][byte kind][body]. A node opens
+ * the stream with a HELLO frame carrying its id and session, then sends
+ * EVENTS frames numbered by the sequence of their first event. The monitor
+ * answers every EVENTS frame with the sequence of the last event it has
+ * processed (a plain 8 byte long), which lets the node drop events from its
+ * resend buffer.
+ */
+public final class EventStreamCodec {
+  public static final byte FRAME_HELLO = 1;
+  public static final byte FRAME_EVENTS = 2;
+  public static final int PROTOCOL_VERSION = 3;
+
+  // generous upper bound so a corrupt length never makes us allocate gigabytes
+  public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+  private EventStreamCodec() {
+  }
+
+  /**
+   * @param sessionId identifies one run of the reporter, so that sequence
+   *                  numbers restarting from 1 after a node restart are not
+   *                  mistaken for replays
+   */
+  public static void writeHello(DataOutputStream out, String nodeId, long sessionId) throws IOException {
+    byte[] id = nodeId.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(1 + 4 + 8 + 2 + id.length);
+    out.writeByte(FRAME_HELLO);
+    out.writeInt(PROTOCOL_VERSION);
+    out.writeLong(sessionId);
+    out.writeShort(id.length);
+    out.write(id);
+  }
+
+  /**
+   * Encodes one event into a frame body; the caller is responsible for the
+   * frame header.
+   */
+  public static void writeEvent(DataOutputStream out, MessageEvent event) throws IOException {
+    out.writeUTF(event.type);
+    writeNullableUTF(out, event.fromNode);
+    writeNullableUTF(out, event.toNode);
+    out.writeLong(event.timestamp);
+    out.writeLong(event.hlc);
+    out.writeLong(event.messageId);
+    if (event.message == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] message = event.message.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(message.length);
+      out.write(message);
+    }
+  }
+
+  public static MessageEvent readEvent(DataInputStream in) throws IOException {
+    MessageEvent event = new MessageEvent();
+    event.type = in.readUTF();
+    event.fromNode = readNullableUTF(in);
+    event.toNode = readNullableUTF(in);
+    event.timestamp = in.readLong();
+    event.hlc = in.readLong();
+    event.messageId = in.readLong();
+    int length = in.readInt();
+    if (length >= 0) {
+      byte[] message = new byte[length];
+      in.readFully(message);
+      event.message = new String(message, StandardCharsets.UTF_8);
+    }
+    return event;
+  }
+
+  private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullableUTF(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -0,0 +1,166 @@
+package com.example.simulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Monitor side of the persistent event stream (see EventStreamCodec).
+ *
+ * Each node connection is served by its own thread which decodes frames
+ * straight off a buffered stream and hands every event to the handler. The
+ * last sequence seen per node session is remembered across reconnects so
+ * events replayed by a node are only delivered once. A node that opens a new
+ * session, after a restart, has its earlier sessions forgotten.
+ */
+public class EventStreamServer {
+  private static final Logger logger = LoggerFactory.getLogger(EventStreamServer.class);
+
+  private final int port;
+  private final Consumer<MessageEvent> handler;
+  // keyed by node and reporter session, a restarted node starts counting again
+  private final Map<String, Long> lastSeqByNode = new ConcurrentHashMap<>();
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+  private ServerSocket serverSocket;
+  private volatile boolean isRunning;
+
+  public EventStreamServer(int port, Consumer<MessageEvent> handler) {
+    this.port = port;
+    this.handler = handler;
+  }
+
+  public void start() throws IOException {
+    serverSocket = new ServerSocket(port);
+    isRunning = true;
+
+    Thread acceptor = new Thread(this::acceptConnections, "event-stream-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    logger.info("Event stream listening on port {}", getPort());
+  }
+
+  public void stop() throws IOException {
+    isRunning = false;
+    if (serverSocket != null) {
+      serverSocket.close();
+    }
+    for (Socket socket : connections) {
+      socket.close();
+    }
+  }
+
+  /**
+   * Forgets the sequences of every node session, for a new simulation.
+   */
+  public void clear() {
+    lastSeqByNode.clear();
+  }
+
+  int getSessionCount() {
+    return lastSeqByNode.size();
+  }
+
+  public int getPort() {
+    return serverSocket != null ? serverSocket.getLocalPort() : port;
+  }
+
+  private void acceptConnections() {
+    while (isRunning) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        connections.add(socket);
+
+        Thread reader = new Thread(() -> handleConnection(socket), "event-stream-" + socket.getPort());
+        reader.setDaemon(true);
+        reader.start();
+      } catch (IOException e) {
+        if (isRunning) {
+          logger.error("Error accepting event stream connection: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void handleConnection(Socket socket) {
+    String nodeId = null;
+    String streamKey = null;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 64 * 1024));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+      while (isRunning) {
+        int length = in.readInt();
+        if (length <= 0 || length > EventStreamCodec.MAX_FRAME_BYTES) {
+          throw new IOException("Invalid frame length " + length);
+        }
+
+        byte kind = in.readByte();
+        if (kind == EventStreamCodec.FRAME_HELLO) {
+          int version = in.readInt();
+          if (version != EventStreamCodec.PROTOCOL_VERSION) {
+            throw new IOException("Unsupported event stream version " + version);
+          }
+          long sessionId = in.readLong();
+          byte[] id = new byte[in.readUnsignedShort()];
+          in.readFully(id);
+          nodeId = new String(id, StandardCharsets.UTF_8);
+          streamKey = nodeId + "/" + sessionId;
+          // a new session replaces the node's earlier ones, they never come back
+          String nodePrefix = nodeId + "/";
+          String current = streamKey;
+          lastSeqByNode.keySet().removeIf(key -> key.startsWith(nodePrefix) && !key.equals(current));
+          logger.info("Node: {} opened event stream", nodeId);
+        } else if (kind == EventStreamCodec.FRAME_EVENTS) {
+          if (nodeId == null) {
+            throw new IOException("Events received before HELLO");
+          }
+          long seq = in.readLong();
+          int count = in.readInt();
+          long lastSeq = lastSeqByNode.getOrDefault(streamKey, 0L);
+
+          for (int i = 0; i < count; i++, seq++) {
+            MessageEvent event = EventStreamCodec.readEvent(in);
+            // replayed after a reconnect, already delivered
+            if (seq <= lastSeq) {
+              continue;
+            }
+            try {
+              handler.accept(event);
+            } catch (Exception e) {
+              logger.error("Failed to handle event from {}: {}", nodeId, e.getMessage());
+            }
+          }
+
+          long acked = Math.max(lastSeq, seq - 1);
+          lastSeqByNode.put(streamKey, acked);
+          out.writeLong(acked);
+          out.flush();
+        } else {
+          throw new IOException("Unknown frame kind " + kind);
+        }
+      }
+    } catch (EOFException e) {
+      logger.info("Node: {} closed event stream", nodeId);
+    } catch (IOException e) {
+      if (isRunning) {
+        logger.error("Event stream from {} failed: {}", nodeId, e.getMessage());
+      }
+    } finally {
+      connections.remove(socket);
+    }
+  }
+}
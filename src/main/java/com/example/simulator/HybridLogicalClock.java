@@ -0,0 +1,65 @@
+package com.example.simulator;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Hybrid logical clock (physical time plus a logical counter) used to stamp
+ * every message a node sends and receives.
+ *
+ * A timestamp is a single long: the upper 48 bits hold wall clock
+ * milliseconds and the lower 16 bits a counter that breaks ties within the
+ * same millisecond. Because a receive always advances the clock past the
+ * sender's stamp, ordering events by their stamp respects causality even when
+ * the containers' clocks disagree, while staying close to real time.
+ */
+public class HybridLogicalClock {
+  private static final int LOGICAL_BITS = 16;
+  private static final long LOGICAL_MASK = (1L << LOGICAL_BITS) - 1;
+
+  private final LongSupplier physicalClock;
+  private long last;
+
+  public HybridLogicalClock() {
+    this(System::currentTimeMillis);
+  }
+
+  public HybridLogicalClock(LongSupplier physicalClock) {
+    this.physicalClock = physicalClock;
+  }
+
+  /**
+   * Stamps a local or send event.
+   */
+  public synchronized long tick() {
+    long physical = fromMillis(physicalClock.getAsLong());
+    last = physical > last ? physical : last + 1;
+    return last;
+  }
+
+  /**
+   * Stamps the receipt of a message carrying the sender's timestamp, moving
+   * this clock past it.
+   */
+  public synchronized long update(long remote) {
+    long physical = fromMillis(physicalClock.getAsLong());
+    long latest = Math.max(last, remote);
+    last = physical > latest ? physical : latest + 1;
+    return last;
+  }
+
+  public synchronized long current() {
+    return last;
+  }
+
+  public static long fromMillis(long millis) {
+    return millis << LOGICAL_BITS;
+  }
+
+  public static long physicalMillis(long timestamp) {
+    return timestamp >>> LOGICAL_BITS;
+  }
+
+  public static int logical(long timestamp) {
+    return (int) (timestamp & LOGICAL_MASK);
+  }
+}
@@ -0,0 +1,115 @@
+package com.example.simulator;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands request bodies from the ingestion servlet over to a single dispatcher
+ * thread.
+ *
+ * Offering never blocks or takes a lock, so the Jetty thread that read the
+ * body is free again right away. The queue is bounded by counters of both
+ * its entries and their bytes rather than by the queue itself, as a few
+ * large batches weigh as much as many single messages; bodies offered while
+ * it is full are rejected so the servlet can ask the node to retry.
+ */
+public class IngestDispatcher {
+  public static final int DEFAULT_CAPACITY = 65536;
+  public static final long DEFAULT_MAX_QUEUED_BYTES = 64L * 1024 * 1024;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+  private static final Logger logger = LoggerFactory.getLogger(IngestDispatcher.class);
+
+  private final int capacity;
+  private final long maxQueuedBytes;
+  private final Consumer<byte[]> handler;
+  private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong queuedBytes = new AtomicLong();
+  private final Thread dispatcher;
+  private volatile boolean running;
+
+  public IngestDispatcher(int capacity, Consumer<byte[]> handler) {
+    this(capacity, DEFAULT_MAX_QUEUED_BYTES, handler);
+  }
+
+  public IngestDispatcher(int capacity, long maxQueuedBytes, Consumer<byte[]> handler) {
+    if (capacity <= 0 || maxQueuedBytes <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity + " bodies, "
+          + maxQueuedBytes + " bytes");
+    }
+    this.capacity = capacity;
+    this.maxQueuedBytes = maxQueuedBytes;
+    this.handler = handler;
+    this.dispatcher = new Thread(this::dispatch, "ingest-dispatcher");
+    this.dispatcher.setDaemon(true);
+  }
+
+  public void start() {
+    running = true;
+    dispatcher.start();
+  }
+
+  /**
+   * Stops the dispatcher after it has handled everything already queued.
+   */
+  public void stop() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(dispatcher);
+    dispatcher.join();
+  }
+
+  /**
+   * @return false if the queue is full and the body was not taken
+   */
+  public boolean offer(byte[] body) {
+    if (size.incrementAndGet() > capacity) {
+      size.decrementAndGet();
+      return false;
+    }
+    // a body larger than the whole budget still goes through an empty queue
+    long queued = queuedBytes.addAndGet(body.length);
+    if (queued > maxQueuedBytes && queued > body.length) {
+      queuedBytes.addAndGet(-body.length);
+      size.decrementAndGet();
+      return false;
+    }
+    queue.offer(body);
+    LockSupport.unpark(dispatcher);
+    return true;
+  }
+
+  public int size() {
+    return size.get();
+  }
+
+  public long queuedBytes() {
+    return queuedBytes.get();
+  }
+
+  private void dispatch() {
+    while (true) {
+      byte[] body = queue.poll();
+      if (body == null) {
+        if (!running) {
+          return;
+        }
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        continue;
+      }
+      size.decrementAndGet();
+      queuedBytes.addAndGet(-body.length);
+      try {
+        handler.accept(body);
+      } catch (Exception e) {
+        logger.error("Failed to dispatch ingested message: {}", e.getMessage());
+      }
+    }
+  }
+}
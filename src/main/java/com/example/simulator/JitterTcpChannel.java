@@ -15,23 +15,36 @@ import org.slf4j.LoggerFactory;
 
 public class JitterTcpChannel {
   private static final int TCP_PORT = 8888;
+  private static final int RECONNECT_TIMEOUT_MS = 1000;
   private static final Logger logger = LoggerFactory.getLogger(JitterTcpChannel.class);
 
   private final String nodeId;
-  private final double dropRate;
-  private final long delayMs;
+  private final LinkFaults faults;
   private final ServerSocket serverSocket;
   private final Map<String, Socket> connections = new ConcurrentHashMap<>();
   private final NodeProgram nodeProgram;
+  private final HybridLogicalClock clock;
+  private final NodeMetrics metrics;
+  private volatile DropListener dropListener;
   private volatile boolean isRunning = true;
 
-  public JitterTcpChannel(String nodeId, double dropRate, long delayMs, NodeProgram nodeProgram)
-      throws IOException {
+  /**
+   * Notified of every message the jitter simulation drops, on either end.
+   */
+  public interface DropListener {
+    void onDrop(String fromNode, String toNode, byte[] message, long hlc, long messageId);
+  }
+
+  public JitterTcpChannel(String nodeId, double dropRate, long delayMs, NodeProgram nodeProgram,
+      HybridLogicalClock clock) throws IOException {
     this.nodeId = nodeId;
-    this.dropRate = dropRate; // 0.0 to 1.0 (0% to 100% drop rate)
-    this.delayMs = delayMs; // artificial delay in milliseconds
+    // drop rate from 0.0 to 1.0 and artificial delay in milliseconds, both
+    // can be changed while running
+    this.faults = new LinkFaults(dropRate, delayMs);
     this.serverSocket = new ServerSocket(TCP_PORT);
     this.nodeProgram = nodeProgram;
+    this.clock = clock;
+    this.metrics = new NodeMetrics(nodeId, incomingMessages::size);
 
     // Start accepting connections in background
     Thread acceptorThread = new Thread(this::acceptConnections);
@@ -39,13 +52,34 @@ public class JitterTcpChannel {
     acceptorThread.start();
   }
 
-  public synchronized void sendMessage(byte[] message, String recipientNodeId) {
+  public void setDropListener(DropListener dropListener) {
+    this.dropListener = dropListener;
+  }
+
+  public NodeMetrics getMetrics() {
+    return metrics;
+  }
+
+  public LinkFaults getFaults() {
+    return faults;
+  }
+
+  /**
+   * @param messageId travels with the message so the receiver can report the
+   *                  same id
+   * @return the clock stamp the message was sent with, also when the jitter
+   *         simulation dropped it
+   */
+  public synchronized long sendMessage(byte[] message, String recipientNodeId, long messageId) {
+    long hlc = clock.tick();
     try {
       // Simulate message dropping
-      if (shouldDropMessage()) {
+      if (faults.shouldDrop(recipientNodeId)) {
         logger.info(
             nodeId + ": [JITTER] " + AnsiColor.colorize("DROPPING", AnsiColor.RED) + " message to " + recipientNodeId);
-        return;
+        metrics.droppedOnSend.increment();
+        notifyDrop(nodeId, recipientNodeId, message, hlc, messageId);
+        return hlc;
       }
 
       // // Simulate network delay
@@ -55,12 +89,18 @@ public class JitterTcpChannel {
 
       Socket socket = getOrCreateConnection(recipientNodeId);
       if (socket != null && !socket.isClosed()) {
+        long start = System.nanoTime();
         DataOutputStream out = new DataOutputStream(socket.getOutputStream());
 
-        // Send message length first, then message content
+        // Send message length first, then the sender's clock, the message id and content
         out.writeInt(message.length);
+        out.writeLong(hlc);
+        out.writeLong(messageId);
         out.write(message);
         out.flush();
+        metrics.sendMicros.record((System.nanoTime() - start) / 1000);
+        metrics.messagesSent.increment();
+        metrics.bytesSent.add(message.length);
 
         String formattedMessage = nodeProgram.decodeMessage(message);
         logger.info(nodeId + ": [TCP] " + AnsiColor.colorize("SENT", AnsiColor.YELLOW) + " to " + recipientNodeId + ": "
@@ -68,9 +108,11 @@ public class JitterTcpChannel {
       }
     } catch (Exception e) {
       logger.error(nodeId + ": Error sending message to " + recipientNodeId + ": " + e.getMessage());
+      metrics.sendErrors.increment();
       // Remove failed connection
       connections.remove(recipientNodeId);
     }
+    return hlc;
   }
 
   public MessageData receiveMessage() throws InterruptedException {
@@ -80,23 +122,33 @@ public class JitterTcpChannel {
   }
 
   private Socket getOrCreateConnection(String recipientNodeId) {
-    return connections.get(recipientNodeId);
+    Socket socket = connections.get(recipientNodeId);
+    if (socket != null) {
+      return socket;
+    }
+
+    // The connection was dropped (e.g. the peer got restarted), try to
+    // reconnect once instead of giving up on the peer for good
+    try {
+      socket = new Socket();
+      socket.connect(new InetSocketAddress(recipientNodeId, TCP_PORT), RECONNECT_TIMEOUT_MS);
+      introduce(socket);
+      connections.put(recipientNodeId, socket);
+      logger.info(nodeId + ": [TCP] Reconnected to " + recipientNodeId);
+      return socket;
+    } catch (IOException e) {
+      logger.error(nodeId + ": Failed to reconnect to " + recipientNodeId + ": " + e.getMessage());
+      return null;
+    }
   }
 
   private void acceptConnections() {
     while (isRunning) {
       try {
         Socket clientSocket = serverSocket.accept();
-        String rawHost = clientSocket.getInetAddress().getHostName();
-        int dotIndex = rawHost.indexOf('.');
-        if (dotIndex != -1) {
-          rawHost = rawHost.substring(0, dotIndex);
-        }
-
-        final String clientHost = rawHost;
 
         // Handle each client connection in a separate thread - Async would be better
-        Thread clientHandler = new Thread(() -> handleClient(clientSocket, clientHost));
+        Thread clientHandler = new Thread(() -> handleClient(clientSocket));
         clientHandler.setDaemon(true);
         clientHandler.start();
 
@@ -108,32 +160,57 @@ public class JitterTcpChannel {
     }
   }
 
-  private void handleClient(Socket clientSocket, String clientHost) {
+  /*
+   * The first thing on every connection is the sender's node id. Its host name
+   * is not good enough, a pooled container's is not its node id
+   */
+  private void introduce(Socket socket) throws IOException {
+    DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+    out.writeUTF(nodeId);
+    out.flush();
+  }
+
+  private void handleClient(Socket clientSocket) {
+    String clientHost = clientSocket.getInetAddress().getHostAddress();
     try (DataInputStream in = new DataInputStream(clientSocket.getInputStream())) {
+      clientHost = in.readUTF();
       while (!clientSocket.isClosed() && isRunning) {
         // Read message length first
         int messageLength = in.readInt();
+        long hlc = in.readLong();
+        long messageId = in.readLong();
 
         // Read the actual message
         byte[] buffer = new byte[messageLength];
         in.readFully(buffer);
+        metrics.messagesReceived.increment();
+        metrics.bytesReceived.add(messageLength);
 
         // Simulate message dropping on receive
-        if (shouldDropMessage()) {
+        if (faults.shouldDrop(clientHost)) {
           logger.info(nodeId + ": [JITTER] Dropping received message from " + clientHost);
+          metrics.droppedOnReceive.increment();
+          notifyDrop(clientHost, nodeId, buffer, hlc, messageId);
           continue;
         }
 
         // Queue the message for the receiver (implement a message queue)
-        queueIncomingMessage(new MessageData(buffer, clientHost));
+        queueIncomingMessage(new MessageData(buffer, clientHost, hlc, messageId));
       }
     } catch (Exception e) {
       logger.error(nodeId + ": Error handling client " + clientHost + ": " + e.getMessage());
     }
   }
 
-  private boolean shouldDropMessage() {
-    return ThreadLocalRandom.current().nextDouble() < dropRate;
+  private void notifyDrop(String fromNode, String toNode, byte[] message, long hlc, long messageId) {
+    DropListener listener = dropListener;
+    if (listener != null) {
+      try {
+        listener.onDrop(fromNode, toNode, message, hlc, messageId);
+      } catch (Exception e) {
+        logger.error(nodeId + ": Error reporting dropped message: " + e.getMessage());
+      }
+    }
   }
 
   /**
@@ -142,7 +219,7 @@ public class JitterTcpChannel {
    *
    * @return delay in milliseconds
    */
-  private long generateRandomDelay() {
+  private long generateRandomDelay(long delayMs) {
     // Standard deviation of 250ms (covers roughly 95% of values within ±500ms)
     double stdDev = 250.0;
     double randomValue = ThreadLocalRandom.current().nextGaussian(delayMs, stdDev);
@@ -163,10 +240,15 @@ public class JitterTcpChannel {
 
   public MessageData getNextMessage() throws InterruptedException {
     MessageData messageData = incomingMessages.take(); // Blocks until a message is available
+    // and while delivery is held, see NodeControl
+    faults.awaitDelivery();
 
     // Simulate network delay
+    long delayMs = faults.getDelayMs();
     if (delayMs > 0) {
-      Thread.sleep(generateRandomDelay());
+      long delay = generateRandomDelay(delayMs);
+      metrics.delayMillis.record(delay);
+      Thread.sleep(delay);
     }
 
     String formattedMessage = nodeProgram.decodeMessage(messageData.getData());
@@ -191,6 +273,7 @@ public class JitterTcpChannel {
         try {
           InetAddress address = InetAddress.getByName(peerNodeId);
           Socket socket = new Socket(address, TCP_PORT);
+          introduce(socket);
           connections.put(peerNodeId, socket);
           logger.info(nodeId + ": [TCP] Connected to " + peerNodeId + " (attempt " + attempt + ")");
           break;
@@ -233,10 +316,14 @@ public class JitterTcpChannel {
   public static class MessageData {
     private final byte[] data;
     private final String senderHostname;
+    private final long hlc;
+    private final long messageId;
 
-    public MessageData(byte[] data, String senderHostname) {
+    public MessageData(byte[] data, String senderHostname, long hlc, long messageId) {
       this.data = data;
       this.senderHostname = senderHostname;
+      this.hlc = hlc;
+      this.messageId = messageId;
     }
 
     public byte[] getData() {
@@ -246,5 +333,19 @@ public class JitterTcpChannel {
     public String getSenderHostname() {
       return senderHostname;
     }
+
+    /**
+     * Clock stamp the sender attached to the message.
+     */
+    public long getHlc() {
+      return hlc;
+    }
+
+    /**
+     * Id the sender gave the message, see NodeRunner.
+     */
+    public long getMessageId() {
+      return messageId;
+    }
   }
 }
@@ -0,0 +1,212 @@
+package com.example.simulator;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Pairs the SENT and RECEIVED events of each message by its message id and
+ * keeps per-edge delivery latency histograms and loss counts.
+ *
+ * A SENT event waits for its RECEIVED (or DROPPED) event for up to lostAfterMs;
+ * after that the message is counted as lost and remembered among the most
+ * recently lost ones. A RECEIVED or DROPPED event can arrive ahead of its
+ * SENT (a node reports a drop on send before the send itself), it waits for
+ * its SENT the same way. Pending messages are kept in arrival order, so
+ * expiring them only looks at the oldest ones. Events without a message id, from nodes
+ * that predate them, are ignored.
+ */
+public class LatencyTracker {
+  public static final long DEFAULT_LOST_AFTER_MS = 30_000;
+  public static final int DEFAULT_MAX_PENDING = 200_000;
+  private static final int RECENT_LOST = 100;
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final long lostAfterMs;
+  private final int maxPending;
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "latency-tracker");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // message id -> the event seen first, SENT or (when reported earlier) RECEIVED or DROPPED
+  private final LinkedHashMap<Long, Pending> pending = new LinkedHashMap<>();
+  // from node -> to node -> edge, sorted for stable output
+  private final Map<String, Map<String, Edge>> edges = new TreeMap<>();
+  private final ArrayDeque<Pending> recentlyLost = new ArrayDeque<>();
+
+  public LatencyTracker(long lostAfterMs, int maxPending) {
+    this.lostAfterMs = lostAfterMs;
+    this.maxPending = maxPending;
+  }
+
+  public void start() {
+    long interval = Math.max(100, lostAfterMs / 10);
+    executor.scheduleWithFixedDelay(() -> expire(System.currentTimeMillis()), interval, interval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  public void stop() {
+    executor.shutdown();
+  }
+
+  public synchronized void add(MessageEvent event) {
+    if (event.messageId == 0 || event.fromNode == null || event.toNode == null) {
+      return;
+    }
+    boolean sent = "SENT".equals(event.type);
+    boolean received = "RECEIVED".equals(event.type);
+    boolean dropped = "DROPPED".equals(event.type);
+    if (!sent && !received && !dropped) {
+      return;
+    }
+
+    Edge edge = edge(event.fromNode, event.toNode);
+    if (sent) {
+      edge.sent++;
+    }
+    Pending first = pending.remove(event.messageId);
+    if (first == null) {
+      if (dropped) {
+        // counted now, kept so its SENT is not taken for a lost message
+        edge.dropped++;
+      }
+      if (pending.size() >= maxPending) {
+        // keep the memory bounded, the oldest message goes unmatched
+        Iterator<Pending> oldest = pending.values().iterator();
+        lose(oldest.next());
+        oldest.remove();
+      }
+      pending.put(event.messageId, new Pending(event, sent, dropped));
+      return;
+    }
+
+    if (dropped) {
+      edge.dropped++;
+    } else if (first.dropped) {
+      // the SENT of a message dropped on send, already counted
+    } else if (first.sent != sent) {
+      long sentAt = sent ? event.timestamp : first.timestamp;
+      long receivedAt = sent ? first.timestamp : event.timestamp;
+      edge.delivered++;
+      edge.latency.record(Math.max(0, receivedAt - sentAt));
+    }
+  }
+
+  /**
+   * Counts messages sent before now - lostAfterMs and still unanswered as lost.
+   */
+  public synchronized void expire(long now) {
+    Iterator<Pending> iterator = pending.values().iterator();
+    while (iterator.hasNext()) {
+      Pending next = iterator.next();
+      if (next.arrivedAt > now - lostAfterMs) {
+        break;
+      }
+      iterator.remove();
+      lose(next);
+    }
+  }
+
+  public synchronized void clear() {
+    pending.clear();
+    edges.clear();
+    recentlyLost.clear();
+  }
+
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  public synchronized String toJson() throws JsonProcessingException {
+    ObjectNode root = objectMapper.createObjectNode();
+    root.put("type", "LATENCY");
+    root.put("pending", pending.size());
+
+    ArrayNode edgeArray = root.putArray("edges");
+    for (Map.Entry<String, Map<String, Edge>> from : edges.entrySet()) {
+      for (Map.Entry<String, Edge> to : from.getValue().entrySet()) {
+        Edge edge = to.getValue();
+        ObjectNode entry = edgeArray.addObject()
+            .put("from", from.getKey())
+            .put("to", to.getKey())
+            .put("sent", edge.sent)
+            .put("delivered", edge.delivered)
+            .put("dropped", edge.dropped)
+            .put("lost", edge.lost);
+        ObjectNode latency = entry.putObject("latencyMs");
+        for (double quantile : QUANTILES) {
+          latency.put("p" + Math.round(quantile * 100), edge.latency.getValueAtQuantile(quantile));
+        }
+        latency.put("max", edge.latency.getValueAtQuantile(1.0));
+      }
+    }
+
+    ArrayNode lostArray = root.putArray("recentlyLost");
+    for (Pending lost : recentlyLost) {
+      lostArray.addObject()
+          .put("messageId", lost.messageId)
+          .put("from", lost.fromNode)
+          .put("to", lost.toNode)
+          .put("timestamp", lost.timestamp);
+    }
+    return objectMapper.writeValueAsString(root);
+  }
+
+  private Edge edge(String from, String to) {
+    return edges.computeIfAbsent(from, id -> new TreeMap<>()).computeIfAbsent(to, id -> new Edge());
+  }
+
+  private void lose(Pending message) {
+    // a RECEIVED without its SENT is not a lost message, its SENT was lost in reporting
+    if (!message.sent) {
+      return;
+    }
+    edge(message.fromNode, message.toNode).lost++;
+    recentlyLost.addLast(message);
+    if (recentlyLost.size() > RECENT_LOST) {
+      recentlyLost.removeFirst();
+    }
+  }
+
+  private static class Pending {
+    final long messageId;
+    final String fromNode;
+    final String toNode;
+    final long timestamp;
+    final boolean sent;
+    final boolean dropped;
+    final long arrivedAt = System.currentTimeMillis();
+
+    Pending(MessageEvent event, boolean sent, boolean dropped) {
+      this.messageId = event.messageId;
+      this.fromNode = event.fromNode;
+      this.toNode = event.toNode;
+      this.timestamp = event.timestamp;
+      this.sent = sent;
+      this.dropped = dropped;
+    }
+  }
+
+  private static class Edge {
+    final Histogram latency = new Histogram();
+    long sent;
+    long delivered;
+    long dropped;
+    long lost;
+  }
+}
@@ -0,0 +1,117 @@
+package com.example.simulator;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The faults a JitterTcpChannel injects, changeable while the node runs (see
+ * NodeControl). Blocked peers lose every message in both directions, which is
+ * how partitions are made. A peer's drop rate replaces the node's drop rate
+ * for messages to and from that peer. Held delivery keeps received messages
+ * queued until it is released, the connections stay up.
+ */
+public class LinkFaults {
+  private final double initialDropRate;
+  private final long initialDelayMs;
+  private volatile double dropRate;
+  private volatile long delayMs;
+  private final Set<String> blockedPeers = ConcurrentHashMap.newKeySet();
+  private final Map<String, Double> peerDropRates = new ConcurrentHashMap<>();
+  private boolean held;
+
+  public LinkFaults(double dropRate, long delayMs) {
+    this.initialDropRate = dropRate;
+    this.initialDelayMs = delayMs;
+    this.dropRate = dropRate;
+    this.delayMs = delayMs;
+  }
+
+  public boolean isBlocked(String peer) {
+    return blockedPeers.contains(peer);
+  }
+
+  public boolean shouldDrop(String peer) {
+    if (blockedPeers.contains(peer)) {
+      return true;
+    }
+    double rate = peerDropRates.getOrDefault(peer, dropRate);
+    return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+  }
+
+  public long getDelayMs() {
+    return delayMs;
+  }
+
+  public void setDelayMs(long delayMs) {
+    if (delayMs < 0) {
+      throw new IllegalArgumentException("Delay should not be negative");
+    }
+    this.delayMs = delayMs;
+  }
+
+  public void setDropRate(double dropRate) {
+    this.dropRate = checkRate(dropRate);
+  }
+
+  public void setDropRate(String peer, double dropRate) {
+    peerDropRates.put(peer, checkRate(dropRate));
+  }
+
+  public void block(String peer) {
+    blockedPeers.add(peer);
+  }
+
+  public void unblock(String peer) {
+    blockedPeers.remove(peer);
+  }
+
+  public void unblockAll() {
+    blockedPeers.clear();
+  }
+
+  public synchronized void hold() {
+    held = true;
+  }
+
+  public synchronized void release() {
+    held = false;
+    notifyAll();
+  }
+
+  /**
+   * Blocks while delivery is held.
+   */
+  public synchronized void awaitDelivery() throws InterruptedException {
+    while (held) {
+      wait();
+    }
+  }
+
+  /**
+   * Back to the drop rate and delay the node started with, nothing blocked or
+   * held.
+   */
+  public void reset() {
+    blockedPeers.clear();
+    peerDropRates.clear();
+    dropRate = initialDropRate;
+    delayMs = initialDelayMs;
+    release();
+  }
+
+  public synchronized String describe() {
+    return "blocked=" + new TreeSet<>(blockedPeers) + " drop=" + dropRate + " peerDrop=" + new TreeMap<>(peerDropRates)
+        + " delay=" + delayMs + " held=" + held;
+  }
+
+  private static double checkRate(double rate) {
+    if (rate < 0 || rate > 1) {
+      throw new IllegalArgumentException("Drop rate should be between 0 and 1");
+    }
+    return rate;
+  }
+}
@@ -1,13 +1,41 @@
 package com.example.simulator;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.Set;
 
 public class Main {
   public static void main(String[] args) {
+    // flags can go anywhere, the rest are positional
+    List<String> positional = new ArrayList<>();
+    boolean cleanupImages = false;
+    int poolSize = 0;
+    for (String arg : args) {
+      if (arg.equals("--cleanup-images")) {
+        cleanupImages = true;
+      } else if (arg.startsWith("--pool-size=")) {
+        try {
+          poolSize = Integer.parseInt(arg.substring("--pool-size=".length()));
+        } catch (NumberFormatException e) {
+          System.err.println("Invalid pool size: " + arg);
+          System.exit(1);
+        }
+      } else {
+        positional.add(arg);
+      }
+    }
+    args = positional.toArray(new String[0]);
+
     if (args.length < 1) {
-      System.err.println("Usage: java -jar simulator.jar <topology-file> [mode]");
+      System.err.println("Usage: java -jar simulator.jar <topology-file> [mode] [--cleanup-images] [--pool-size=N]");
       System.err.println("  <topology-file> : path to your topology YAML file (required)");
       System.err.println("  [mode]          : optional, either 'default' or 'server' (default='default')");
+      System.err.println("  --cleanup-images: remove the node image on exit instead of keeping it for the next run");
+      System.err.println("  --pool-size=N   : keep N idle node containers running for the next simulations");
       System.exit(1);
     }
 
@@ -36,6 +64,8 @@ public class Main {
     try {
       // Create and start simulator
       simulator = new DockerSimulator(topologyFile, isDefault);
+      simulator.setCleanupImages(cleanupImages);
+      simulator.setPoolSize(poolSize);
       simulator.startSimulation();
 
       // Add the option to cancel by ctr-c
@@ -57,6 +87,15 @@ public class Main {
       System.out.println("  pause <node-id>  - Pause a node");
       System.out.println("  resume <node-id> - Resume a paused node");
       System.out.println("  stop <node-id>   - Stop a node");
+      System.out.println("  restart <node-id> - Restart a stopped node, recovering its storage");
+      System.out.println("  partition <a,b> <c,d> - Lose all messages between the groups of nodes");
+      System.out.println("  heal             - Undo the partition");
+      System.out.println("  drop <node-id> <rate> [peer] - Drop rate of a node, or of its link to peer");
+      System.out.println("  delay <node-id> <ms> - Delivery delay of a node");
+      System.out.println("  hold <node-id>   - Stop delivering messages to a node, it keeps running");
+      System.out.println("  release <node-id> - Deliver the held messages");
+      System.out.println("  reset            - Undo all of the faults above");
+      System.out.println("  collect <dir>    - Copy the nodes' event journals into a directory");
       System.out.println("  exit             - Exit the simulator");
 
       while (running) {
@@ -74,8 +113,28 @@ public class Main {
         } else if (command.startsWith("stop ")) {
           String nodeId = command.substring(5).trim();
           simulator.stopNode(nodeId);
+        } else if (command.startsWith("restart ")) {
+          String nodeId = command.substring(8).trim();
+          simulator.restartNode(nodeId);
+        } else if (command.startsWith("partition ") || command.equals("heal") || command.startsWith("drop ")
+            || command.startsWith("delay ") || command.startsWith("hold ") || command.startsWith("release ")
+            || command.equals("reset")) {
+          try {
+            injectFault(simulator, command.split("\\s+"));
+          } catch (Exception e) {
+            System.out.println("Failed to " + command + ": " + e.getMessage());
+          }
+        } else if (command.startsWith("collect ")) {
+          String dir = command.substring(8).trim();
+          try {
+            simulator.collectJournals(Paths.get(dir));
+          } catch (Exception e) {
+            System.out.println("Failed to collect event journals: " + e.getMessage());
+          }
         } else {
-          System.out.println("Unknown command. Try pause, resume, stop, or exit.");
+          System.out.println(
+              "Unknown command. Try pause, resume, stop, restart, partition, heal, drop, delay, hold, release, reset,"
+                  + " collect, or exit.");
         }
       }
 
@@ -85,4 +144,40 @@ public class Main {
     }
     // let the shutdown hook handle the shutting down instead
   }
+
+  /*
+   * The fault commands, which the nodes apply themselves instead of docker
+   * freezing them, see NodeControl
+   */
+  private static void injectFault(DockerSimulator simulator, String[] args) {
+    switch (args[0]) {
+      case "partition":
+        List<Set<String>> groups = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+          groups.add(new HashSet<>(Arrays.asList(args[i].split(","))));
+        }
+        simulator.partition(groups);
+        break;
+      case "heal":
+        simulator.heal();
+        break;
+      case "drop":
+        simulator.setDropRate(args[1], Double.parseDouble(args[2]), args.length > 3 ? args[3] : null);
+        break;
+      case "delay":
+        simulator.setDelay(args[1], Long.parseLong(args[2]));
+        break;
+      case "hold":
+        simulator.holdDelivery(args[1]);
+        break;
+      case "release":
+        simulator.releaseDelivery(args[1]);
+        break;
+      case "reset":
+        simulator.resetFaults();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown fault: " + args[0]);
+    }
+  }
 }
@@ -0,0 +1,89 @@
+package com.example.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The ids a node gives its messages: the node index in the top bits and a
+ * sequence number below, which never carries into the index.
+ *
+ * With a file on the node's volume the sequence continues across restarts.
+ * Ids are reserved a block at a time, and only the end of the block is
+ * written, so a restarted node starts after every id its previous process
+ * could have used. Without a file the sequence starts from the clock, in
+ * seconds, with room for BLOCK_SIZE messages a second before it runs into
+ * the ids of a later start.
+ */
+public class MessageIdSequence {
+  public static final int SEQ_BITS = 40;
+  public static final String FILE_NAME = "message.seq";
+  static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+  static final long BLOCK_SIZE = 1L << 16;
+  // 2^23 seconds, about 97 days, before the clock seed wraps, and the seed
+  // stays below 2^39 so half of the sequence is headroom
+  private static final int CLOCK_SEED_BITS = 23;
+  private static final int CLOCK_SEED_SHIFT = 16;
+
+  private static final Logger logger = LoggerFactory.getLogger(MessageIdSequence.class);
+
+  private final long base;
+  private final Path file;
+  private long next;
+  private long reservedUntil;
+
+  /**
+   * @param file where the sequence is kept, null to start from the clock
+   */
+  public MessageIdSequence(long nodeIndex, Path file) throws IOException {
+    this.base = nodeIndex << SEQ_BITS;
+    this.file = file;
+    if (file == null) {
+      next = clockSeed(System.currentTimeMillis());
+      reservedUntil = Long.MAX_VALUE;
+    } else {
+      next = readReserved(file);
+      reserve();
+    }
+  }
+
+  static long clockSeed(long nowMillis) {
+    return ((nowMillis / 1000) & ((1L << CLOCK_SEED_BITS) - 1)) << CLOCK_SEED_SHIFT;
+  }
+
+  public synchronized long next() {
+    if (next >= reservedUntil) {
+      try {
+        reserve();
+      } catch (IOException e) {
+        // ids stay unique in this process, only a restart may reuse them
+        logger.error("Failed to reserve message ids in {}: {}", file, e.getMessage());
+        reservedUntil = Long.MAX_VALUE;
+      }
+    }
+    return base | (next++ & SEQ_MASK);
+  }
+
+  private void reserve() throws IOException {
+    reservedUntil = next + BLOCK_SIZE;
+    ByteBuffer value = ByteBuffer.allocate(Long.BYTES).putLong(0, reservedUntil);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      channel.write(value, 0);
+      channel.force(false);
+    }
+  }
+
+  private static long readReserved(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    byte[] content = Files.readAllBytes(file);
+    return content.length < Long.BYTES ? 0 : ByteBuffer.wrap(content).getLong();
+  }
+}
@@ -1,17 +1,24 @@
 package com.example.simulator;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.WebSocketAdapter;
 import org.eclipse.jetty.websocket.server.config.JettyWebSocketServletContainerInitializer;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -19,19 +26,44 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class MessageMonitorService {
+  public static final int DEFAULT_SESSION_QUEUE_CAPACITY = 4096;
+  // larger request bodies are rejected with 413 instead of being buffered
+  public static final int DEFAULT_MAX_BODY_BYTES = 8 * 1024 * 1024;
+
   private final int httpPort;
   private final int wsPort;
 
   private final Server httpServer;
   private final Server wsServer;
+  private final EventStreamServer streamServer;
+  private final CausalOrderBuffer causalOrderBuffer;
+  private final EventAggregator aggregator;
+  private final LatencyTracker latencyTracker = new LatencyTracker(LatencyTracker.DEFAULT_LOST_AFTER_MS,
+      LatencyTracker.DEFAULT_MAX_PENDING);
+  private final IngestDispatcher ingestDispatcher;
+  private final IngestDispatcher batchDispatcher;
+  private volatile int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+  // new /ws sessions start from a snapshot of this, see MonitorState
+  private final MonitorState monitorState = new MonitorState();
+  // payloads binary sessions can ask for, see BinaryEventCodec
+  private final PayloadCache payloadCache = new PayloadCache(PayloadCache.DEFAULT_CAPACITY);
+  private final int sessionQueueCapacity;
+  private final SessionOutbox.SlowConsumerPolicy slowConsumerPolicy;
 
   private static final Logger logger = LoggerFactory.getLogger(MessageMonitorService.class);
-  private final Set<Session> webSocketSessions = ConcurrentHashMap.newKeySet();
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  // every frontend session gets its own outbound queue, see SessionOutbox
+  private final Map<Session, SessionOutbox> webSocketSessions = new ConcurrentHashMap<>();
+  // sessions on /ws/aggregate only get the windowed counters
+  private final Map<Session, SessionOutbox> aggregateSessions = new ConcurrentHashMap<>();
 
   public static void main(String[] args) throws Exception {
     // Start Message Monitor Service
-    MessageMonitorService monitorService = new MessageMonitorService(8090, 8091);
+    MessageMonitorService monitorService = new MessageMonitorService(8090, 8091, DockerManager.MONITOR_STREAM_PORT);
 
     try {
       monitorService.start();
@@ -52,18 +84,53 @@ public class MessageMonitorService {
     }));
   }
 
-  public MessageMonitorService(int httpPort, int wsPort) {
+  public MessageMonitorService(int httpPort, int wsPort, int streamPort) {
+    this(httpPort, wsPort, streamPort, DEFAULT_SESSION_QUEUE_CAPACITY, SessionOutbox.SlowConsumerPolicy.DROP_OLDEST);
+  }
+
+  public MessageMonitorService(int httpPort, int wsPort, int streamPort, int sessionQueueCapacity,
+      SessionOutbox.SlowConsumerPolicy slowConsumerPolicy) {
     this.httpPort = httpPort;
+    this.sessionQueueCapacity = sessionQueueCapacity;
+    this.slowConsumerPolicy = slowConsumerPolicy;
     this.wsPort = wsPort;
     this.httpServer = new Server(httpPort);
     this.wsServer = new Server(wsPort);
+    // events of all nodes are released in causal order, whichever way they came in
+    this.causalOrderBuffer = new CausalOrderBuffer(CausalOrderBuffer.DEFAULT_HOLD_MS, this::broadcastEvent);
+    this.streamServer = new EventStreamServer(streamPort, causalOrderBuffer::offer);
+    this.aggregator = new EventAggregator(EventAggregator.DEFAULT_WINDOW_MS,
+        window -> broadcast(aggregateSessions, window));
+    this.ingestDispatcher = new IngestDispatcher(IngestDispatcher.DEFAULT_CAPACITY,
+        body -> broadcastToWebSockets(new String(body, StandardCharsets.UTF_8)));
+    this.batchDispatcher = new IngestDispatcher(IngestDispatcher.DEFAULT_CAPACITY, this::offerBatch);
+  }
+
+  public void setMaxBodyBytes(int maxBodyBytes) {
+    this.maxBodyBytes = maxBodyBytes;
+  }
+
+  /**
+   * @return the port of the ingestion server, useful when started on port 0
+   */
+  public int getHttpPort() {
+    return ((ServerConnector) httpServer.getConnectors()[0]).getLocalPort();
   }
 
   public void start() throws Exception {
     // setup http server for receiving messages from containers
     ServletContextHandler httpContext = new ServletContextHandler();
     httpContext.setContextPath("/");
-    httpContext.addServlet(new ServletHolder(new MessageReceiver()), "/message");
+    ServletHolder messageReceiver = new ServletHolder(new IngestServlet(ingestDispatcher));
+    messageReceiver.setAsyncSupported(true);
+    httpContext.addServlet(messageReceiver, "/message");
+    ServletHolder batchReceiver = new ServletHolder(new IngestServlet(batchDispatcher));
+    batchReceiver.setAsyncSupported(true);
+    httpContext.addServlet(batchReceiver, "/messages");
+    httpContext.addServlet(new ServletHolder(new SessionStatsServlet()), "/sessions");
+    httpContext.addServlet(new ServletHolder(new StateServlet()), "/state");
+    httpContext.addServlet(new ServletHolder(new MetricsServlet()), "/metrics");
+    httpContext.addServlet(new ServletHolder(new LatencyServlet()), "/latency");
     httpServer.setHandler(httpContext);
 
     // setup websocket
@@ -73,72 +140,318 @@ public class MessageMonitorService {
     wsServer.setHandler(wsContext);
     JettyWebSocketServletContainerInitializer.configure(wsContext, (servletContext, wsContainer) -> {
       // Register your WebSocket endpoint
-      wsContainer.addMapping("/ws", (req, resp) -> new FrontendWebSocket());
+      wsContainer.addMapping("/ws", (req, resp) -> new FrontendWebSocket(webSocketSessions, true));
+      wsContainer.addMapping("/ws/aggregate", (req, resp) -> new FrontendWebSocket(aggregateSessions, false));
     });
 
     logger.info("MessageMonitorService HTTP Server has started...");
     logger.info("MessageMonitorService WS Server for frontend has started...");
+    ingestDispatcher.start();
+    batchDispatcher.start();
     httpServer.start();
     wsServer.start();
+    causalOrderBuffer.start();
+    aggregator.start();
+    latencyTracker.start();
+    streamServer.start();
   }
 
   public void stop() throws Exception {
+    streamServer.stop();
     httpServer.stop();
+    ingestDispatcher.stop();
+    batchDispatcher.stop();
+    causalOrderBuffer.stop();
+    aggregator.stop();
+    latencyTracker.stop();
     wsServer.stop();
   }
 
-  private void broadcastToWebSockets(String message) {
-    logger.info("Attempting to broadcast to websocket: {}", message);
-    webSocketSessions.removeIf(session -> !session.isOpen());
+  /*
+   * Sessions only get the events their subscription matches, the event is
+   * serialized once and only if at least one session wants it
+   */
+  private void broadcastEvent(MessageReporter.MessageEvent event) {
+    aggregator.add(event);
+    latencyTracker.add(event);
+    synchronized (monitorState) {
+      monitorState.apply(event);
+      fanOut(event);
+    }
+  }
 
-    for (Session session : webSocketSessions) {
-      try {
-        session.getRemote().sendString(message);
-      } catch (IOException e) {
-        logger.error("Failed to send to Websocket: {}. Error: {}", session.getRemoteAddress().toString(),
-            e.getMessage());
+  private void fanOut(MessageReporter.MessageEvent event) {
+    long id = payloadCache.put(event.message);
+    String json = null;
+    for (SessionOutbox outbox : webSocketSessions.values()) {
+      if (outbox.isClosed() || !outbox.getSubscription().matches(event)) {
+        continue;
+      }
+      if (outbox.isBinary()) {
+        // encoded once it is written, see SessionOutbox
+        outbox.offerEvent(event, id);
+        continue;
+      }
+      if (json == null) {
+        try {
+          json = objectMapper.writeValueAsString(event);
+        } catch (IOException e) {
+          logger.error("Failed to serialize event from {}: {}", event.fromNode, e.getMessage());
+          return;
+        }
       }
+      outbox.offer(json);
     }
   }
 
-  private class MessageReceiver extends HttpServlet {
+  /*
+   * Only queues the message for every session, the actual writes happen
+   * asynchronously so a slow frontend never blocks the caller
+   */
+  private void broadcastToWebSockets(String message) {
+    broadcast(webSocketSessions, message);
+  }
+
+  private void broadcast(Map<Session, SessionOutbox> sessions, String message) {
+    logger.debug("Broadcasting to {} websockets: {}", sessions.size(), message);
+    sessions.values().removeIf(SessionOutbox::isClosed);
+
+    for (SessionOutbox outbox : sessions.values()) {
+      outbox.offer(message);
+    }
+  }
+
+  public List<SessionOutbox.Stats> getSessionStats() {
+    List<SessionOutbox.Stats> stats = new ArrayList<>();
+    for (SessionOutbox outbox : webSocketSessions.values()) {
+      stats.add(outbox.getStats());
+    }
+    for (SessionOutbox outbox : aggregateSessions.values()) {
+      stats.add(outbox.getStats());
+    }
+    return stats;
+  }
+
+  /*
+   * Reads the body with non-blocking servlet I/O and hands it to an
+   * IngestDispatcher, answering 202 without waiting for it to be handled. No
+   * Jetty thread is held while a node is still sending its body, and bodies
+   * over maxBodyBytes are rejected with 413
+   */
+  private class IngestServlet extends HttpServlet {
+    private final IngestDispatcher dispatcher;
+
+    IngestServlet(IngestDispatcher dispatcher) {
+      this.dispatcher = dispatcher;
+    }
+
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-      StringBuilder sb = new StringBuilder();
-      try (BufferedReader reader = req.getReader()) {
-        String line;
-        while ((line = reader.readLine()) != null) {
-          sb.append(line);
+      if (req.getContentLengthLong() > maxBodyBytes) {
+        resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Body exceeds " + maxBodyBytes + " bytes");
+        return;
+      }
+      AsyncContext async = req.startAsync();
+      ServletInputStream input = req.getInputStream();
+      input.setReadListener(new BodyReader(async, input, dispatcher, maxBodyBytes));
+    }
+  }
+
+  private static class BodyReader implements ReadListener {
+    private final AsyncContext async;
+    private final ServletInputStream input;
+    private final IngestDispatcher dispatcher;
+    private final int maxBytes;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+    private final byte[] chunk = new byte[4096];
+    private boolean done;
+
+    BodyReader(AsyncContext async, ServletInputStream input, IngestDispatcher dispatcher, int maxBytes) {
+      this.async = async;
+      this.input = input;
+      this.dispatcher = dispatcher;
+      this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void onDataAvailable() throws IOException {
+      while (!done && input.isReady()) {
+        int read = input.read(chunk);
+        if (read < 0) {
+          return;
+        }
+        if (body.size() + read > maxBytes) {
+          // chunked bodies have no length up front
+          done = true;
+          HttpServletResponse resp = (HttpServletResponse) async.getResponse();
+          resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Body exceeds " + maxBytes + " bytes");
+          async.complete();
+          return;
         }
+        body.write(chunk, 0, read);
       }
+    }
 
-      String messageJson = sb.toString();
+    @Override
+    public void onAllDataRead() {
+      if (done) {
+        return;
+      }
+      done = true;
+      HttpServletResponse resp = (HttpServletResponse) async.getResponse();
+      if (dispatcher.offer(body.toByteArray())) {
+        resp.setStatus(HttpServletResponse.SC_ACCEPTED);
+      } else {
+        resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      }
+      async.complete();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      logger.debug("Failed to read message body: {}", t.getMessage());
+      if (!done) {
+        done = true;
+        async.complete();
+      }
+    }
+  }
+
+  /*
+   * A JSON array of events posted by a MessageReporter, parsed on the batch
+   * dispatcher thread and queued for broadcasting in causal order
+   */
+  private void offerBatch(byte[] body) {
+    try {
+      JsonNode batch = objectMapper.readTree(body);
+      if (batch == null || !batch.isArray()) {
+        logger.warn("Ignoring message batch that is not a JSON array");
+        return;
+      }
+      for (JsonNode event : batch) {
+        causalOrderBuffer.offer(objectMapper.treeToValue(event, MessageReporter.MessageEvent.class));
+      }
+    } catch (IOException e) {
+      logger.warn("Ignoring malformed message batch: {}", e.getMessage());
+    }
+  }
+
+  /*
+   * Per session counters of sent, dropped and queued messages
+   */
+  private class SessionStatsServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      resp.setContentType("application/json");
+      objectMapper.writeValue(resp.getOutputStream(), getSessionStats());
+    }
+  }
+
+  /*
+   * The compacted state of the simulation so far, the same SNAPSHOT a new /ws
+   * session starts with
+   */
+  private class StateServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      resp.setContentType("application/json");
+      resp.getWriter().write(monitorState.toSnapshot());
+    }
+  }
 
-      broadcastToWebSockets(messageJson);
-      resp.setStatus(HttpServletResponse.SC_OK);
+  /*
+   * Transport metrics of all nodes in Prometheus text format, as last sent by
+   * their reporters
+   */
+  private class MetricsServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      resp.setContentType("text/plain; version=0.0.4");
+      resp.getWriter().write(monitorState.toMetrics());
+    }
+  }
 
+  /*
+   * Per-edge delivery latency and lost messages, see LatencyTracker
+   */
+  private class LatencyServlet extends HttpServlet {
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+      resp.setContentType("application/json");
+      resp.getWriter().write(latencyTracker.toJson());
     }
   }
 
   private class FrontendWebSocket extends WebSocketAdapter {
+    private final Map<Session, SessionOutbox> sessions;
+    private final boolean sendSnapshot;
+
+    FrontendWebSocket(Map<Session, SessionOutbox> sessions, boolean sendSnapshot) {
+      this.sessions = sessions;
+      this.sendSnapshot = sendSnapshot;
+    }
+
     @Override
     public void onWebSocketConnect(Session session) {
       super.onWebSocketConnect(session);
-      webSocketSessions.add(session);
+      SessionOutbox outbox = new SessionOutbox(session, sessionQueueCapacity, slowConsumerPolicy);
+      List<String> format = session.getUpgradeRequest().getParameterMap().get("format");
+      if (format != null && format.contains("binary")) {
+        outbox.setEncoder(new BinaryEventCodec.Encoder());
+      }
+      if (!sendSnapshot) {
+        sessions.put(session, outbox);
+      } else {
+        // under the state lock no event can slip in between the snapshot and the live events
+        synchronized (monitorState) {
+          try {
+            outbox.offer(monitorState.toSnapshot());
+          } catch (IOException e) {
+            logger.error("Failed to serialize snapshot: {}", e.getMessage());
+          }
+          sessions.put(session, outbox);
+        }
+      }
 
       logger.info("Frontend: {} connected via WebSocket", session.getRemoteAddress().toString());
     }
 
+    /*
+     * Clients narrow down what they receive by sending a SUBSCRIBE message,
+     * see Subscription, binary clients fetch payloads with PAYLOAD requests
+     */
+    @Override
+    public void onWebSocketText(String message) {
+      SessionOutbox outbox = sessions.get(getSession());
+      if (outbox == null) {
+        return;
+      }
+      String payload = payloadCache.answer(message);
+      if (payload != null) {
+        outbox.offer(payload);
+        return;
+      }
+      try {
+        outbox.setSubscription(Subscription.parse(message));
+        logger.info("Frontend: {} subscribed with {}", outbox.getStats().remoteAddress, message);
+      } catch (IllegalArgumentException e) {
+        logger.warn("Frontend: {} sent an invalid subscription: {}", outbox.getStats().remoteAddress,
+            e.getMessage());
+      }
+    }
+
     @Override
     public void onWebSocketClose(int statusCode, String reason) {
+      Session session = getSession();
       super.onWebSocketClose(statusCode, reason);
-      webSocketSessions.remove(getSession());
-
-      logger.info("Frontend: {} disconnected", getSession().getRemoteAddress().toString());
+      SessionOutbox outbox = sessions.remove(session);
+      if (outbox != null) {
+        outbox.close();
+        SessionOutbox.Stats stats = outbox.getStats();
+        logger.info("Frontend: {} disconnected after {} messages sent, {} dropped", stats.remoteAddress, stats.sent,
+            stats.dropped);
+      }
     }
-
-    // @Override
-    // public
   }
 
 }
@@ -1,4 +1,3 @@
-
 package com.example.simulator;
 
 import java.net.URI;
@@ -6,8 +5,14 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.ExecutorService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -16,64 +21,235 @@ import org.slf4j.LoggerFactory;
 
 /*
  * NodeRunner would call this abstraction to forward messages to the MessageMonitor service which would forward the messages to frontend
+ *
+ * Events are queued in a bounded EventRingBuffer and flushed once a batch is
+ * full or when the flush interval elapses. Batches go either over a persistent
+ * EventStreamClient connection, or are posted as a JSON array to /messages
+ * using a single HttpClient kept for the lifetime of the node.
+ *
+ * Every few seconds a REPORTER_STATS event with the number of reported and
+ * shed events is sent along, so the monitor can show how much was lost, and a
+ * METRICS event with the node's transport metrics if any are set.
  */
 public class MessageReporter {
-  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  public static final int DEFAULT_BATCH_SIZE = 256;
+  public static final long DEFAULT_FLUSH_INTERVAL_MS = 50;
+  public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+  public static final long STATS_INTERVAL_MS = 2000;
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "message-reporter");
+    thread.setDaemon(true);
+    return thread;
+  });
   private final String nodeId;
-  private final String monitorEndpoint;
-  private final String monitorPort;
+  private final URI batchUri;
+  private final int batchSize;
+  private final HttpClient client;
+  private final EventStreamClient streamClient;
+
+  private final EventRingBuffer buffer;
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  private final AtomicLong reportedEvents = new AtomicLong();
+  private final AtomicLong failedEvents = new AtomicLong();
+  private long lastStatsAt;
+  private volatile NodeMetrics metrics;
 
   private static final ObjectMapper objectMapper = new ObjectMapper();
   private static final Logger logger = LoggerFactory.getLogger(MessageReporter.class);
 
   public MessageReporter(String nodeId, String monitorEndpoint, String monitorPort) {
+    this(nodeId, monitorEndpoint, monitorPort,
+        new EventRingBuffer(DEFAULT_QUEUE_CAPACITY, EventRingBuffer.OverflowPolicy.DROP_OLDEST, 1),
+        DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MS);
+  }
+
+  public MessageReporter(String nodeId, String monitorEndpoint, String monitorPort, EventRingBuffer buffer,
+      int batchSize, long flushIntervalMs) {
+    this.nodeId = nodeId;
+    this.batchUri = URI.create("http://" + monitorEndpoint + ":" + monitorPort + "/messages");
+    this.buffer = buffer;
+    this.batchSize = batchSize;
+    this.client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1) // plain keep-alive, the monitor does not speak h2c
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+    this.streamClient = null;
+
+    executor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  public MessageReporter(String nodeId, EventStreamClient streamClient, EventRingBuffer buffer, int batchSize,
+      long flushIntervalMs) {
     this.nodeId = nodeId;
-    this.monitorEndpoint = monitorEndpoint;
-    this.monitorPort = monitorPort;
+    this.batchUri = null;
+    this.buffer = buffer;
+    this.batchSize = batchSize;
+    this.client = null;
+    this.streamClient = streamClient;
+
+    executor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
   }
 
   public void reportMessageSent(String toNode, byte[] message, long timestamp) {
-    executor.submit(() -> {
-
-      try {
-        MessageEvent event = new MessageEvent("SENT", nodeId, toNode,
-            new String(message, StandardCharsets.UTF_8), timestamp);
-        sendToMonitor(event);
-      } catch (Exception e) {
-        logger.error("Node: {} failed to report message sent: {}", nodeId, e.getMessage());
-      }
-    });
+    reportMessageSent(toNode, message, timestamp, 0);
+  }
+
+  /**
+   * @param hlc hybrid logical clock stamp of the send, lets the monitor put
+   *            this event in causal order no matter when it is reported
+   */
+  public void reportMessageSent(String toNode, byte[] message, long timestamp, long hlc) {
+    reportMessageSent(toNode, message, timestamp, hlc, 0);
+  }
+
+  /**
+   * @param messageId id the transport gave the message, the monitor pairs it
+   *                  with the RECEIVED event carrying the same id
+   */
+  public void reportMessageSent(String toNode, byte[] message, long timestamp, long hlc, long messageId) {
+    enqueue(new MessageEvent("SENT", nodeId, toNode, new String(message, StandardCharsets.UTF_8), timestamp, hlc,
+        messageId));
   }
 
   public void reportMessageReceived(String fromNode, byte[] message, long timestamp) {
-    executor.submit(() -> {
-
-      try {
-        MessageEvent event = new MessageEvent("RECEIVED", fromNode, nodeId,
-            new String(message, StandardCharsets.UTF_8), timestamp);
-        sendToMonitor(event);
-      } catch (Exception e) {
-        logger.error("Node: {} failed to report message received: {}", nodeId, e.getMessage());
-      }
-    });
+    reportMessageReceived(fromNode, message, timestamp, 0);
+  }
+
+  public void reportMessageReceived(String fromNode, byte[] message, long timestamp, long hlc) {
+    reportMessageReceived(fromNode, message, timestamp, hlc, 0);
+  }
+
+  public void reportMessageReceived(String fromNode, byte[] message, long timestamp, long hlc, long messageId) {
+    enqueue(new MessageEvent("RECEIVED", fromNode, nodeId, new String(message, StandardCharsets.UTF_8), timestamp,
+        hlc, messageId));
+  }
+
+  /**
+   * A message lost to the jitter simulation, reported by whichever end
+   * dropped it.
+   */
+  public void reportMessageDropped(String fromNode, String toNode, byte[] message, long timestamp, long hlc,
+      long messageId) {
+    enqueue(new MessageEvent("DROPPED", fromNode, toNode, new String(message, StandardCharsets.UTF_8), timestamp,
+        hlc, messageId));
+  }
+
+  /**
+   * Sends the metrics to the monitor along with the reporter stats.
+   */
+  public void setMetrics(NodeMetrics metrics) {
+    this.metrics = metrics;
   }
 
   public void shutdown() {
     executor.shutdown();
+    try {
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // push out whatever is left before the node goes away
+    flush();
+    if (streamClient != null) {
+      streamClient.close();
+    }
   }
 
-  private void sendToMonitor(MessageEvent event) throws Exception {
-    HttpClient client = HttpClient.newHttpClient();
-    byte[] json = objectMapper.writeValueAsBytes(event);
+  /**
+   * Events handed over to the monitor transport.
+   */
+  public long getReportedEvents() {
+    return reportedEvents.get();
+  }
+
+  /**
+   * Events shed by the ring buffer, dropped from the stream's resend buffer or
+   * lost in failed HTTP requests.
+   */
+  public long getShedEvents() {
+    long dropped = streamClient != null ? streamClient.getDroppedEvents() : 0;
+    return buffer.getShed() + dropped + failedEvents.get();
+  }
+
+  private void enqueue(MessageEvent event) {
+    // never blocks, a full buffer sheds according to its policy
+    buffer.offer(event);
+    if (buffer.size() >= batchSize && flushRequested.compareAndSet(false, true) && !executor.isShutdown()) {
+      executor.execute(this::flush);
+    }
+  }
+
+  private void flush() {
+    flushRequested.set(false);
+
+    boolean sentAny = false;
+    while (true) {
+      List<MessageEvent> batch = new ArrayList<>(batchSize);
+      int drained = buffer.drainTo(batch, batchSize);
+      addStatsEvent(batch);
+      if (batch.isEmpty()) {
+        break;
+      }
+      send(batch, drained);
+      sentAny = true;
+    }
+
+    if (!sentAny && streamClient != null) {
+      // called even without new events so a broken stream gets reconnected
+      // and its unacknowledged events resent
+      streamClient.send(List.of());
+    }
+  }
+
+  // eventCount excludes the stats event that may ride along in the batch
+  private void send(List<MessageEvent> batch, int eventCount) {
+    if (streamClient != null) {
+      streamClient.send(batch);
+      reportedEvents.addAndGet(eventCount);
+      return;
+    }
+
+    try {
+      sendToMonitor(batch);
+      reportedEvents.addAndGet(eventCount);
+    } catch (Exception e) {
+      failedEvents.addAndGet(eventCount);
+      logger.error("Node: {} failed to report {} events: {}", nodeId, batch.size(), e.getMessage());
+    }
+  }
+
+  private void addStatsEvent(List<MessageEvent> batch) {
+    long now = System.currentTimeMillis();
+    if (now - lastStatsAt < STATS_INTERVAL_MS) {
+      return;
+    }
+    lastStatsAt = now;
+    String stats = "{\"reported\":" + reportedEvents.get()
+        + ",\"shed\":" + getShedEvents()
+        + ",\"queued\":" + buffer.size()
+        + ",\"capacity\":" + buffer.capacity() + "}";
+    batch.add(new MessageEvent("REPORTER_STATS", nodeId, null, stats, now));
+    NodeMetrics current = metrics;
+    if (current != null) {
+      batch.add(new MessageEvent("METRICS", nodeId, null, current.toPrometheus(), now));
+    }
+  }
+
+  private void sendToMonitor(List<MessageEvent> batch) throws Exception {
+    byte[] json = objectMapper.writeValueAsBytes(batch);
 
     HttpRequest request = HttpRequest.newBuilder()
-        .uri(URI.create("http://" + monitorEndpoint + ":" + monitorPort + "/message"))
+        .uri(batchUri)
         .header("Content-Type", "application/json")
         .POST(HttpRequest.BodyPublishers.ofByteArray(json))
         .build();
 
-    // Send request and get response
-    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+    // the monitor answers 202 once the batch is queued
+    if (response.statusCode() / 100 != 2) {
+      throw new IllegalStateException("monitor rejected batch with status " + response.statusCode());
+    }
   }
 
   public static class MessageEvent {
@@ -82,16 +258,31 @@ public class MessageReporter {
     public String toNode;
     public String message;
     public long timestamp;
+    // hybrid logical clock stamp, 0 when the event is not tied to a message
+    public long hlc;
+    // id the transport gave the message, pairs up its SENT and RECEIVED events
+    public long messageId;
 
     public MessageEvent() {
     }
 
     public MessageEvent(String type, String fromNode, String toNode, String message, long timestamp) {
+      this(type, fromNode, toNode, message, timestamp, 0);
+    }
+
+    public MessageEvent(String type, String fromNode, String toNode, String message, long timestamp, long hlc) {
+      this(type, fromNode, toNode, message, timestamp, hlc, 0);
+    }
+
+    public MessageEvent(String type, String fromNode, String toNode, String message, long timestamp, long hlc,
+        long messageId) {
       this.type = type;
       this.fromNode = fromNode;
       this.toNode = toNode;
       this.message = message;
       this.timestamp = timestamp;
+      this.hlc = hlc;
+      this.messageId = messageId;
     }
   }
 }
@@ -0,0 +1,160 @@
+package com.example.simulator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Compacted view of everything the monitor has seen so far, so a frontend
+ * that connects mid-simulation does not start from nothing.
+ *
+ * Every event updates the state in place: counters per node and per edge,
+ * the latest event of each type, overall and per node, and the status (like
+ * PAUSED) last set for each node from the controls. A new session gets
+ * it as one SNAPSHOT message and the live events after that. Callers that
+ * need the snapshot and the live events to line up exactly take the
+ * MonitorState lock around applying an event and publishing it, and around
+ * taking a snapshot and registering the session.
+ */
+public class MonitorState {
+  // slots of the counter arrays
+  private static final int SENT = 0;
+  private static final int RECEIVED = 1;
+  private static final int DROPPED = 2;
+  private static final int BYTES = 3;
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  // sorted so snapshots list nodes and edges in a stable order
+  private final Map<String, NodeState> nodes = new TreeMap<>();
+  private final Map<String, Map<String, long[]>> edges = new TreeMap<>();
+  private final Map<String, MessageEvent> latest = new HashMap<>();
+  private long events;
+
+  public synchronized void apply(MessageEvent event) {
+    events++;
+    latest.put(event.type, event);
+
+    int slot = slotOf(event.type);
+    String node = "RECEIVED".equals(event.type) || event.fromNode == null ? event.toNode : event.fromNode;
+    if (node != null) {
+      NodeState state = nodes.computeIfAbsent(node, id -> new NodeState());
+      state.lastEvent = event;
+      state.latest.put(event.type, event);
+      if (slot >= 0) {
+        state.counts[slot]++;
+      }
+    }
+
+    if (slot >= 0 && event.fromNode != null && event.toNode != null) {
+      long[] edge = edges.computeIfAbsent(event.fromNode, from -> new TreeMap<>())
+          .computeIfAbsent(event.toNode, to -> new long[4]);
+      edge[slot]++;
+      if (slot == SENT && event.message != null) {
+        edge[BYTES] += event.message.length();
+      }
+    }
+  }
+
+  public synchronized void setNodeStatus(String node, String status) {
+    nodes.computeIfAbsent(node, id -> new NodeState()).status = status;
+  }
+
+  /**
+   * The latest METRICS of every node merged into one Prometheus exposition,
+   * each metric's HELP and TYPE lines only kept once.
+   */
+  public synchronized String toMetrics() {
+    StringBuilder out = new StringBuilder();
+    Set<String> seenComments = new HashSet<>();
+    for (NodeState state : nodes.values()) {
+      MessageEvent metrics = state.latest.get("METRICS");
+      if (metrics == null || metrics.message == null) {
+        continue;
+      }
+      for (String line : metrics.message.split("\n")) {
+        if (line.isEmpty() || (line.startsWith("#") && !seenComments.add(line))) {
+          continue;
+        }
+        out.append(line).append('\n');
+      }
+    }
+    return out.toString();
+  }
+
+  public synchronized long getEventCount() {
+    return events;
+  }
+
+  public synchronized void clear() {
+    nodes.clear();
+    edges.clear();
+    latest.clear();
+    events = 0;
+  }
+
+  /**
+   * The state as a SNAPSHOT message, edge bytes are counted in chars.
+   */
+  public synchronized String toSnapshot() throws JsonProcessingException {
+    ObjectNode snapshot = objectMapper.createObjectNode();
+    snapshot.put("type", "SNAPSHOT");
+    snapshot.put("timestamp", System.currentTimeMillis());
+    snapshot.put("events", events);
+
+    ObjectNode nodeObject = snapshot.putObject("nodes");
+    for (Map.Entry<String, NodeState> node : nodes.entrySet()) {
+      NodeState state = node.getValue();
+      ObjectNode entry = nodeObject.putObject(node.getKey());
+      entry.put("status", state.status);
+      entry.put("sent", state.counts[SENT]);
+      entry.put("received", state.counts[RECEIVED]);
+      entry.put("dropped", state.counts[DROPPED]);
+      entry.set("lastEvent", objectMapper.valueToTree(state.lastEvent));
+      entry.set("latest", objectMapper.valueToTree(state.latest));
+    }
+
+    ArrayNode edgeArray = snapshot.putArray("edges");
+    for (Map.Entry<String, Map<String, long[]>> from : edges.entrySet()) {
+      for (Map.Entry<String, long[]> to : from.getValue().entrySet()) {
+        long[] counts = to.getValue();
+        edgeArray.addObject()
+            .put("from", from.getKey())
+            .put("to", to.getKey())
+            .put("sent", counts[SENT])
+            .put("received", counts[RECEIVED])
+            .put("dropped", counts[DROPPED])
+            .put("bytes", counts[BYTES]);
+      }
+    }
+
+    snapshot.set("latest", objectMapper.valueToTree(latest));
+    return objectMapper.writeValueAsString(snapshot);
+  }
+
+  private static int slotOf(String type) {
+    if ("SENT".equals(type)) {
+      return SENT;
+    } else if ("RECEIVED".equals(type)) {
+      return RECEIVED;
+    } else if ("DROPPED".equals(type)) {
+      return DROPPED;
+    }
+    return -1;
+  }
+
+  private static class NodeState {
+    final long[] counts = new long[3];
+    final Map<String, MessageEvent> latest = new TreeMap<>();
+    MessageEvent lastEvent;
+    String status = "RUNNING";
+  }
+}
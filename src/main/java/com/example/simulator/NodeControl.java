@@ -0,0 +1,197 @@
+package com.example.simulator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Control listener of a node, changes its LinkFaults without going through
+ * docker. Commands are lines of text and every command gets a line back, OK
+ * or ERR with the reason:
+ *
+ * block a,b        lose all messages to and from the peers
+ * unblock a,b      or unblock * for all of them
+ * drop 0.2         drop rate of all messages
+ * drop 0.2 a,b     drop rate of the messages to and from the peers
+ * delay 100        delivery delay in ms
+ * hold             stop delivering received messages
+ * release          deliver them again
+ * reset            undo everything above
+ * status           the current faults
+ *
+ * Clients can send many commands before reading the replies, replies are
+ * flushed once there is no more buffered input (see NodeControlClient).
+ */
+public class NodeControl {
+  public static final int DEFAULT_PORT = 7070;
+  private static final Logger logger = LoggerFactory.getLogger(NodeControl.class);
+
+  private final String nodeId;
+  private final LinkFaults faults;
+  private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+  private ServerSocket serverSocket;
+  private Thread acceptor;
+  private volatile boolean running;
+
+  public NodeControl(String nodeId, LinkFaults faults) {
+    this.nodeId = nodeId;
+    this.faults = faults;
+  }
+
+  public synchronized void start(int port) throws IOException {
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress(port));
+    running = true;
+    acceptor = new Thread(this::acceptConnections, "node-control");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /**
+   * @return the port the listener is bound to, useful when started on port 0
+   */
+  public synchronized int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public synchronized void stop() {
+    running = false;
+    try {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+      for (Socket client : clients) {
+        client.close();
+      }
+      // the port is only released once the acceptor is out of accept
+      if (acceptor != null) {
+        acceptor.join(1000);
+      }
+    } catch (IOException e) {
+      logger.error(nodeId + ": Error closing control listener: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void acceptConnections() {
+    while (running) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        clients.add(socket);
+        Thread handler = new Thread(() -> handle(socket), "node-control-client");
+        handler.setDaemon(true);
+        handler.start();
+      } catch (IOException e) {
+        if (running) {
+          logger.error(nodeId + ": Error accepting control connection: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void handle(Socket socket) {
+    try (socket;
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(
+            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        out.write(execute(line));
+        out.newLine();
+        // answer a whole batch at once
+        if (!in.ready()) {
+          out.flush();
+        }
+      }
+    } catch (IOException e) {
+      if (running) {
+        logger.error(nodeId + ": Error on control connection: " + e.getMessage());
+      }
+    } finally {
+      clients.remove(socket);
+    }
+  }
+
+  /**
+   * Applies one command to the faults.
+   *
+   * @return the reply line
+   */
+  public String execute(String command) {
+    String[] parts = command.trim().split("\\s+");
+    try {
+      switch (parts[0]) {
+        case "block":
+          for (String peer : peers(parts, 1)) {
+            faults.block(peer);
+          }
+          break;
+        case "unblock":
+          if (parts.length == 2 && parts[1].equals("*")) {
+            faults.unblockAll();
+          } else {
+            for (String peer : peers(parts, 1)) {
+              faults.unblock(peer);
+            }
+          }
+          break;
+        case "drop":
+          double rate = Double.parseDouble(argument(parts, 1));
+          if (parts.length > 2) {
+            for (String peer : peers(parts, 2)) {
+              faults.setDropRate(peer, rate);
+            }
+          } else {
+            faults.setDropRate(rate);
+          }
+          break;
+        case "delay":
+          faults.setDelayMs(Long.parseLong(argument(parts, 1)));
+          break;
+        case "hold":
+          faults.hold();
+          break;
+        case "release":
+          faults.release();
+          break;
+        case "reset":
+          faults.reset();
+          break;
+        case "status":
+          return "OK " + faults.describe();
+        default:
+          return "ERR unknown command: " + parts[0];
+      }
+    } catch (IllegalArgumentException e) {
+      // also the NumberFormatExceptions
+      return "ERR " + e.getMessage();
+    }
+    logger.info(nodeId + ": [CONTROL] " + command.trim());
+    return "OK";
+  }
+
+  private static String argument(String[] parts, int index) {
+    if (parts.length <= index) {
+      throw new IllegalArgumentException("missing argument to " + parts[0]);
+    }
+    return parts[index];
+  }
+
+  private static String[] peers(String[] parts, int index) {
+    return argument(parts, index).split(",");
+  }
+}
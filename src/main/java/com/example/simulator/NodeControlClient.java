@@ -0,0 +1,172 @@
+package com.example.simulator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Sends NodeControl commands to the nodes. The connections stay open between
+ * batches, and a batch is written to every node before any reply is read, so
+ * the nodes apply it at about the same time instead of one round trip after
+ * the other. All commands can be repeated, which is how a connection that
+ * broke (e.g. the node was restarted) is retried.
+ */
+public class NodeControlClient implements AutoCloseable {
+  private static final int CONNECT_TIMEOUT_MS = 1000;
+  private static final int REPLY_TIMEOUT_MS = 5000;
+
+  private final Function<String, String> addressOf;
+  private final int port;
+  private final Map<String, Connection> connections = new HashMap<>();
+
+  /**
+   * @param addressOf the host of a node, e.g. its container's IP address
+   */
+  public NodeControlClient(Function<String, String> addressOf, int port) {
+    this.addressOf = addressOf;
+    this.port = port;
+  }
+
+  /**
+   * Sends each node its commands.
+   *
+   * @return the first error of every node that did not accept its commands
+   */
+  public synchronized Map<String, String> send(Map<String, List<String>> commands) {
+    Map<String, String> failures = new LinkedHashMap<>();
+    Map<String, Connection> sent = new LinkedHashMap<>();
+
+    for (Map.Entry<String, List<String>> entry : commands.entrySet()) {
+      String nodeId = entry.getKey();
+      try {
+        Connection connection = connect(nodeId);
+        connection.write(entry.getValue());
+        sent.put(nodeId, connection);
+      } catch (IOException e) {
+        retry(nodeId, entry.getValue(), failures);
+      }
+    }
+
+    for (Map.Entry<String, Connection> entry : sent.entrySet()) {
+      String nodeId = entry.getKey();
+      List<String> lines = commands.get(nodeId);
+      try {
+        String error = entry.getValue().readReplies(lines.size());
+        if (error != null) {
+          failures.put(nodeId, error);
+        }
+      } catch (SocketTimeoutException e) {
+        // the node is up but not answering, a retry would only wait as long again
+        close(nodeId);
+        failures.put(nodeId, "No reply within " + REPLY_TIMEOUT_MS + "ms");
+      } catch (IOException e) {
+        retry(nodeId, lines, failures);
+      }
+    }
+    return failures;
+  }
+
+  private void retry(String nodeId, List<String> lines, Map<String, String> failures) {
+    close(nodeId);
+    try {
+      Connection connection = connect(nodeId);
+      connection.write(lines);
+      String error = connection.readReplies(lines.size());
+      if (error != null) {
+        failures.put(nodeId, error);
+      }
+    } catch (IOException e) {
+      close(nodeId);
+      failures.put(nodeId, e.getMessage());
+    }
+  }
+
+  private Connection connect(String nodeId) throws IOException {
+    Connection connection = connections.get(nodeId);
+    if (connection != null) {
+      return connection;
+    }
+    String host = addressOf.apply(nodeId);
+    if (host == null) {
+      throw new IOException("No address for node " + nodeId);
+    }
+    Socket socket = new Socket();
+    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+    socket.setSoTimeout(REPLY_TIMEOUT_MS);
+    socket.setTcpNoDelay(true);
+    connection = new Connection(socket);
+    connections.put(nodeId, connection);
+    return connection;
+  }
+
+  private void close(String nodeId) {
+    Connection connection = connections.remove(nodeId);
+    if (connection != null) {
+      connection.close();
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    for (Connection connection : connections.values()) {
+      connection.close();
+    }
+    connections.clear();
+  }
+
+  private static class Connection {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final BufferedWriter out;
+
+    Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    void write(List<String> lines) throws IOException {
+      for (String line : lines) {
+        out.write(line);
+        out.newLine();
+      }
+      out.flush();
+    }
+
+    /*
+     * Returns the first ERR reply, or null when all were OK
+     */
+    String readReplies(int count) throws IOException {
+      String error = null;
+      for (int i = 0; i < count; i++) {
+        String reply = in.readLine();
+        if (reply == null) {
+          throw new IOException("Control connection closed");
+        }
+        if (error == null && !reply.startsWith("OK")) {
+          error = reply;
+        }
+      }
+      return error;
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // nothing left to do with it
+      }
+    }
+  }
+}
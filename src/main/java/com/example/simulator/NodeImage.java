@@ -0,0 +1,60 @@
+package com.example.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Names the node image after its content: the tag is a hash of the
+ * node-runner jar and the Dockerfile, so an image with that tag never has to
+ * be built again and a changed jar always gets a new one.
+ */
+public class NodeImage {
+  public static final String REPOSITORY = "distro/node";
+  public static final String LATEST = REPOSITORY + ":latest";
+  public static final Path DEFAULT_JAR = Paths.get("target", "node-runner.jar");
+  public static final Path DEFAULT_DOCKERFILE = Paths.get("docker", "Dockerfile.node");
+  private static final int TAG_HEX_CHARS = 16;
+
+  private NodeImage() {
+  }
+
+  /**
+   * @return the image name with the content tag, e.g. distro/node:3f2a9c01d4e5b6a7
+   */
+  public static String tagFor(Path jar, Path dockerfile) throws IOException {
+    return REPOSITORY + ":" + contentHash(jar, dockerfile);
+  }
+
+  static String contentHash(Path... files) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+
+    byte[] buffer = new byte[64 * 1024];
+    for (Path file : files) {
+      // the length keeps the boundary between the files part of the hash
+      digest.update(ByteBuffer.allocate(Long.BYTES).putLong(Files.size(file)).array());
+      try (InputStream in = Files.newInputStream(file)) {
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          digest.update(buffer, 0, read);
+        }
+      }
+    }
+
+    StringBuilder hex = new StringBuilder();
+    for (byte b : digest.digest()) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.substring(0, TAG_HEX_CHARS);
+  }
+}
@@ -0,0 +1,111 @@
+package com.example.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Transport metrics of one node, updated by the JitterTcpChannel.
+ *
+ * Counters are LongAdders and the histograms are lock-free, so recording
+ * never contends with the message path. The metrics are rendered in the
+ * Prometheus text exposition format, served on the node's /metrics endpoint
+ * and sent along to the monitor as METRICS events.
+ */
+public class NodeMetrics {
+  public static final int DEFAULT_PORT = 9404;
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  public final LongAdder messagesSent = new LongAdder();
+  public final LongAdder messagesReceived = new LongAdder();
+  public final LongAdder bytesSent = new LongAdder();
+  public final LongAdder bytesReceived = new LongAdder();
+  public final LongAdder droppedOnSend = new LongAdder();
+  public final LongAdder droppedOnReceive = new LongAdder();
+  public final LongAdder sendErrors = new LongAdder();
+  // time spent writing a message to the socket
+  public final Histogram sendMicros = new Histogram();
+  // artificial delay applied to delivered messages
+  public final Histogram delayMillis = new Histogram();
+
+  private final String nodeId;
+  private final IntSupplier inboxDepth;
+  private HttpServer server;
+
+  public NodeMetrics(String nodeId, IntSupplier inboxDepth) {
+    this.nodeId = nodeId;
+    this.inboxDepth = inboxDepth;
+  }
+
+  /**
+   * Serves the metrics on http://host:port/metrics until stop is called.
+   */
+  public synchronized void start(int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.createContext("/metrics", exchange -> {
+      byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+  }
+
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  public String toPrometheus() {
+    StringBuilder out = new StringBuilder(2048);
+    counter(out, "distro_messages_sent_total", "Messages written to a peer connection", messagesSent.sum());
+    counter(out, "distro_messages_received_total", "Messages read from a peer connection", messagesReceived.sum());
+    counter(out, "distro_bytes_sent_total", "Payload bytes written to peer connections", bytesSent.sum());
+    counter(out, "distro_bytes_received_total", "Payload bytes read from peer connections", bytesReceived.sum());
+    counter(out, "distro_messages_dropped_total", "Messages dropped by the jitter simulation",
+        droppedOnSend.sum(), "side", "send");
+    sample(out, "distro_messages_dropped_total", droppedOnReceive.sum(), "side", "receive");
+    counter(out, "distro_send_errors_total", "Sends that failed on the socket", sendErrors.sum());
+
+    out.append("# HELP distro_inbox_depth Received messages waiting for the program\n");
+    out.append("# TYPE distro_inbox_depth gauge\n");
+    sample(out, "distro_inbox_depth", inboxDepth.getAsInt());
+
+    summary(out, "distro_send_duration_microseconds", "Time to write a message to the socket", sendMicros);
+    summary(out, "distro_applied_delay_milliseconds", "Artificial delay applied before delivery", delayMillis);
+    return out.toString();
+  }
+
+  private void counter(StringBuilder out, String name, String help, long value, String... labels) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(" counter\n");
+    sample(out, name, value, labels);
+  }
+
+  private void summary(StringBuilder out, String name, String help, Histogram histogram) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(" summary\n");
+    for (double quantile : QUANTILES) {
+      sample(out, name, histogram.getValueAtQuantile(quantile), "quantile", Double.toString(quantile));
+    }
+    sample(out, name + "_sum", histogram.getSum());
+    sample(out, name + "_count", histogram.getCount());
+  }
+
+  private void sample(StringBuilder out, String name, long value, String... labels) {
+    out.append(name).append("{node=\"").append(nodeId).append('"');
+    for (int i = 0; i + 1 < labels.length; i += 2) {
+      out.append(',').append(labels[i]).append("=\"").append(labels[i + 1]).append('"');
+    }
+    out.append("} ").append(value).append('\n');
+  }
+}
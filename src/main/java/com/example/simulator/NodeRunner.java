@@ -1,16 +1,24 @@
 package com.example.simulator;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import com.example.api.MessageReceiver;
 import com.example.api.MessageSender;
 import com.example.api.NodeProgram;
 import com.example.api.Storage;
 import com.example.util.InMemoryStorage;
+import com.example.util.OffHeapStorage;
 import com.example.util.Pair;
+import com.example.util.PersistentStorage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,20 +26,40 @@ public class NodeRunner {
   private static final String ALGORITHM_PACKAGE = "com.example.programs";
   private static final double DEFAULT_DROP_RATE = 0; // 10% message drop rate
   private static final long DEFAULT_DELAY_MS = 5000; // 50ms network delay
+  private static final long DEFAULT_STORAGE_MAX_BYTES = 16L * 1024 * 1024;
+  private static final long DEFAULT_REPORT_MAX_BUFFERED = 100_000;
   private static String nodeId;
+  private static MessageIdSequence messageIds;
 
   private static final Logger logger = LoggerFactory.getLogger(NodeRunner.class);
   private static MessageReporter reporter;
+  private static EventJournal journal;
+  private static final HybridLogicalClock clock = new HybridLogicalClock();
+  // last line of a complete assignment, see DockerManager.claimPooledContainer
+  public static final String ASSIGNMENT_END = "ASSIGNMENT_END=1";
+  private static final long ASSIGNMENT_POLL_MS = 20;
+  // the environment, or the assignment of a pooled container
+  private static Map<String, String> config = System.getenv();
 
   public static void main(String[] args) throws Exception {
+    // Pooled containers start without a node and wait for the DockerManager to
+    // assign them one, its variables take precedence over the environment
+    String assignmentPath = System.getenv("POOL_ASSIGNMENT");
+    if (assignmentPath != null) {
+      config = awaitAssignment(Paths.get(assignmentPath));
+    }
+
     // Get configuration from environment variables, these would have been set from
     // the docker containers
-    nodeId = System.getenv("NODE_ID");
-    String programName = System.getenv("PROGRAM_NAME");
-    String peerNodesStr = System.getenv("PEER_NODES");
-    String monitorEndpoint = System.getenv("MONITOR_ENDPOINT");
+    nodeId = getConfig("NODE_ID");
+    String programName = getConfig("PROGRAM_NAME");
+    String peerNodesStr = getConfig("PEER_NODES");
+    String monitorEndpoint = getConfig("MONITOR_ENDPOINT");
 
     List<String> peerNodeIds = Arrays.asList(peerNodesStr.split(","));
+    // without an index from the DockerManager fall back to a hash, which may collide
+    long nodeIndex = parseLongFromEnv("NODE_INDEX", (nodeId.hashCode() & 0x7fffff) + 1);
+    messageIds = createMessageIds(nodeIndex, getConfig("JOURNAL_DIR"));
 
     logger.info("Starting node " + nodeId + " with program " + programName);
     logger.info("Peer nodes: " + peerNodesStr);
@@ -44,30 +72,105 @@ public class NodeRunner {
 
     NodeProgram program = loadProgram(programName);
 
-    Storage storage = new InMemoryStorage();
+    Storage storage = createStorage(getConfig("STORAGE_TYPE"), getConfig("STORAGE_DIR"));
+    journal = createJournal(getConfig("JOURNAL_DIR"));
 
     // Initialise Message Reporter
     if (monitorEndpoint != null) {
       logger.info("MonitorEndpoint: {}", monitorEndpoint);
-      reporter = new MessageReporter(nodeId, monitorEndpoint, "8080");
+      int batchSize = (int) parseLongFromEnv("REPORT_BATCH_SIZE", MessageReporter.DEFAULT_BATCH_SIZE);
+      long flushIntervalMs = parseLongFromEnv("REPORT_FLUSH_MS", MessageReporter.DEFAULT_FLUSH_INTERVAL_MS);
+      EventRingBuffer buffer = createReportBuffer();
+      long streamPort = parseLongFromEnv("MONITOR_STREAM_PORT", -1);
+      if (streamPort > 0) {
+        int maxBuffered = (int) parseLongFromEnv("REPORT_MAX_BUFFERED", DEFAULT_REPORT_MAX_BUFFERED);
+        EventStreamClient streamClient = new EventStreamClient(nodeId, monitorEndpoint, (int) streamPort,
+            maxBuffered);
+        reporter = new MessageReporter(nodeId, streamClient, buffer, batchSize, flushIntervalMs);
+      } else {
+        reporter = new MessageReporter(nodeId, monitorEndpoint, "8080", buffer, batchSize, flushIntervalMs);
+      }
     }
 
     // Create TCP channel with jitter simulation
-    JitterTcpChannel tcpChannel = new JitterTcpChannel(nodeId, dropRate, delayMs, program);
+    JitterTcpChannel tcpChannel = new JitterTcpChannel(nodeId, dropRate, delayMs, program, clock);
     MessageSender sender = createMessageSender(tcpChannel);
     MessageReceiver receiver = createMessageReceiver(tcpChannel);
+    NodeMetrics metrics = tcpChannel.getMetrics();
+    int metricsPort = (int) parseLongFromEnv("METRICS_PORT", NodeMetrics.DEFAULT_PORT);
+    try {
+      metrics.start(metricsPort);
+      logger.info("Serving metrics on port {}", metricsPort);
+    } catch (Exception e) {
+      logger.error("Failed to serve metrics on port " + metricsPort + ": " + e.getMessage());
+    }
+    if (reporter != null) {
+      reporter.setMetrics(metrics);
+    }
+    // lets the simulator partition the node or change its jitter while it runs
+    NodeControl control = new NodeControl(nodeId, tcpChannel.getFaults());
+    int controlPort = (int) parseLongFromEnv("CONTROL_PORT", NodeControl.DEFAULT_PORT);
+    try {
+      control.start(controlPort);
+      logger.info("Accepting control commands on port {}", controlPort);
+    } catch (Exception e) {
+      logger.error("Failed to accept control commands on port " + controlPort + ": " + e.getMessage());
+    }
+    tcpChannel.setDropListener((fromNode, toNode, message, hlc, messageId) -> {
+      long timestamp = System.currentTimeMillis();
+      if (journal != null) {
+        journal.recordDropped(fromNode, toNode, message, timestamp, hlc, messageId);
+      }
+      if (reporter != null) {
+        reporter.reportMessageDropped(fromNode, toNode, message, timestamp, hlc, messageId);
+      }
+    });
 
     // Establish all "transmitting" connections before starting the algorithm
     tcpChannel.establishConnections(peerNodeIds);
 
-    program.execute(peerNodeIds, nodeId, sender, receiver, storage);
-
-    // Add shutdown Hook
+    // Add shutdown Hook, before execute since programs usually never return
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       if (reporter != null) {
         reporter.shutdown();
       }
+      metrics.stop();
+      control.stop();
+      if (journal != null) {
+        try {
+          journal.close();
+        } catch (Exception e) {
+          logger.error("Failed to close event journal: " + e.getMessage());
+        }
+      }
     }));
+
+    program.execute(peerNodeIds, nodeId, sender, receiver, storage);
+  }
+
+  private static Map<String, String> awaitAssignment(Path path) throws IOException, InterruptedException {
+    logger.info("Waiting for a node assignment at {}", path);
+    while (true) {
+      if (Files.exists(path)) {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        // the file may still be being copied in
+        if (lines.contains(ASSIGNMENT_END)) {
+          Map<String, String> assigned = new HashMap<>(System.getenv());
+          for (String line : lines) {
+            int equals = line.indexOf('=');
+            if (equals > 0) {
+              assigned.put(line.substring(0, equals), line.substring(equals + 1));
+            }
+          }
+          return assigned;
+        }
+      }
+      Thread.sleep(ASSIGNMENT_POLL_MS);
+    }
+  }
+
+  private static String getConfig(String name) {
+    return config.get(name);
   }
 
   private static NodeProgram loadProgram(String programName) {
@@ -85,16 +188,112 @@ public class NodeRunner {
     }
   }
 
+  /*
+   * Nodes started by the DockerManager get a per-node volume, so by default
+   * their storage outlives the container being stopped and restarted
+   */
+  private static Storage createStorage(String storageType, String storageDir) {
+    if (storageType == null) {
+      storageType = storageDir != null ? "persistent" : "memory";
+    }
+
+    switch (storageType) {
+      case "offheap":
+        long maxBytes = parseLongFromEnv("STORAGE_MAX_BYTES", DEFAULT_STORAGE_MAX_BYTES);
+        long ttlMs = parseLongFromEnv("STORAGE_TTL_MS", 0);
+        logger.info("Using off-heap storage - budget: {} bytes, ttl: {}ms", maxBytes, ttlMs);
+        return new OffHeapStorage(maxBytes, ttlMs);
+      case "persistent":
+        if (storageDir == null) {
+          logger.error("Persistent storage requested but STORAGE_DIR is not set, using in-memory storage");
+          return new InMemoryStorage();
+        }
+        try {
+          long start = System.nanoTime();
+          PersistentStorage storage = new PersistentStorage(Paths.get(storageDir));
+          logger.info("Recovered {} storage entries from {} in {}ms", storage.size(), storageDir,
+              (System.nanoTime() - start) / 1_000_000);
+          return storage;
+        } catch (Exception e) {
+          logger.error("Failed to open persistent storage at " + storageDir + ", falling back to in-memory storage", e);
+          return new InMemoryStorage();
+        }
+      case "memory":
+        return new InMemoryStorage();
+      default:
+        logger.error("Unknown STORAGE_TYPE: " + storageType + ", using in-memory storage");
+        return new InMemoryStorage();
+    }
+  }
+
+  /*
+   * A restarted node continues after the message ids it used before, kept next
+   * to its journal on the volume
+   */
+  private static MessageIdSequence createMessageIds(long nodeIndex, String journalDir) throws IOException {
+    if (journalDir != null) {
+      try {
+        Files.createDirectories(Paths.get(journalDir));
+        return new MessageIdSequence(nodeIndex, Paths.get(journalDir, MessageIdSequence.FILE_NAME));
+      } catch (IOException e) {
+        logger.error("Failed to keep message ids in " + journalDir + ", starting them from the clock", e);
+      }
+    }
+    return new MessageIdSequence(nodeIndex, null);
+  }
+
+  /*
+   * The journal keeps the node's own history of sent and received messages on
+   * its volume, independent of whether a monitor is listening
+   */
+  private static EventJournal createJournal(String journalDir) {
+    if (journalDir == null) {
+      return null;
+    }
+    int capacity = (int) parseLongFromEnv("JOURNAL_CAPACITY", EventJournal.DEFAULT_CAPACITY);
+    int recordSize = (int) parseLongFromEnv("JOURNAL_RECORD_SIZE", EventJournal.DEFAULT_RECORD_SIZE);
+    try {
+      EventJournal journal = new EventJournal(Paths.get(journalDir, EventJournal.FILE_NAME), nodeId, capacity,
+          recordSize);
+      logger.info("Event journal at {} - capacity: {} records of {} bytes, next seq: {}", journalDir, capacity,
+          recordSize, journal.getNextSeq());
+      return journal;
+    } catch (Exception e) {
+      logger.error("Failed to open event journal at " + journalDir + ", journaling disabled", e);
+      return null;
+    }
+  }
+
+  private static EventRingBuffer createReportBuffer() {
+    int capacity = (int) parseLongFromEnv("REPORT_QUEUE_CAPACITY", MessageReporter.DEFAULT_QUEUE_CAPACITY);
+    int sampleRate = (int) parseLongFromEnv("REPORT_SAMPLE_RATE", 10);
+    EventRingBuffer.OverflowPolicy policy = EventRingBuffer.OverflowPolicy.DROP_OLDEST;
+    String policyName = getConfig("REPORT_OVERFLOW_POLICY");
+    if (policyName != null) {
+      try {
+        policy = EventRingBuffer.OverflowPolicy.parse(policyName);
+      } catch (IllegalArgumentException e) {
+        logger.error("Invalid REPORT_OVERFLOW_POLICY value: " + policyName + ", using default: " + policy);
+      }
+    }
+    logger.info("Report queue - capacity: {}, overflow policy: {}", capacity, policy);
+    return new EventRingBuffer(capacity, policy, sampleRate);
+  }
+
   private static MessageSender createMessageSender(JitterTcpChannel tcpChannel) {
     return (message, recipientNid) -> {
       // Doesn't matter if the message is dropped, from this node's perspective, the
-      // message has left
-      // I put this before sending message because it's important that the monitor
-      // process this message before the other container process the receiving message
+      // message has left. The clock stamp orders this before the matching receive
+      // at the monitor, so reporting can happen after the message is on its way
+      long messageId = messageIds.next();
+      long hlc = tcpChannel.sendMessage(message, recipientNid, messageId);
+      long timestamp = HybridLogicalClock.physicalMillis(hlc);
+      if (journal != null) {
+        journal.recordSent(recipientNid, message, timestamp, hlc, messageId);
+      }
       if (reporter != null) {
-        reporter.reportMessageSent(recipientNid, message, System.currentTimeMillis());
+        reporter.reportMessageSent(recipientNid, message, timestamp, hlc, messageId);
       }
-      tcpChannel.sendMessage(message, recipientNid);
     };
   }
 
@@ -102,9 +301,15 @@ public class NodeRunner {
     return () -> {
       try {
         JitterTcpChannel.MessageData messageData = tcpChannel.getNextMessage();
+        long hlc = clock.update(messageData.getHlc());
+        long timestamp = System.currentTimeMillis();
+        if (journal != null) {
+          journal.recordReceived(messageData.getSenderHostname(), messageData.getData(), timestamp, hlc,
+              messageData.getMessageId());
+        }
         if (reporter != null) {
-          reporter.reportMessageReceived(messageData.getSenderHostname(), messageData.getData(),
-              System.currentTimeMillis());
+          reporter.reportMessageReceived(messageData.getSenderHostname(), messageData.getData(), timestamp, hlc,
+              messageData.getMessageId());
         }
         return new Pair<byte[], String>(messageData.getData(), messageData.getSenderHostname());
       } catch (Exception e) {
@@ -115,7 +320,7 @@ public class NodeRunner {
   }
 
   private static double parseDoubleFromEnv(String envVar, double defaultValue) {
-    String value = System.getenv(envVar);
+    String value = getConfig(envVar);
     if (value != null) {
       try {
         return Double.parseDouble(value);
@@ -127,7 +332,7 @@ public class NodeRunner {
   }
 
   private static long parseLongFromEnv(String envVar, long defaultValue) {
-    String value = System.getenv(envVar);
+    String value = getConfig(envVar);
     if (value != null) {
       try {
         return Long.parseLong(value);
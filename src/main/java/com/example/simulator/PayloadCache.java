@@ -0,0 +1,71 @@
+package com.example.simulator;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Keeps the payloads of the most recent events by id, so binary WebSocket
+ * clients can fetch one on demand instead of receiving all of them. Older
+ * payloads are overwritten once capacity newer ones have been added.
+ */
+public class PayloadCache {
+  public static final int DEFAULT_CAPACITY = 65536;
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final long[] ids;
+  private final String[] payloads;
+  private long nextId = 1;
+
+  public PayloadCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    this.ids = new long[capacity];
+    this.payloads = new String[capacity];
+  }
+
+  /**
+   * @return the id the payload can be fetched with
+   */
+  public synchronized long put(String payload) {
+    long id = nextId++;
+    int slot = (int) (id % ids.length);
+    ids[slot] = id;
+    payloads[slot] = payload;
+    return id;
+  }
+
+  /**
+   * @return the payload, or null if it was null or has been evicted
+   */
+  public synchronized String get(long id) {
+    int slot = (int) (id % ids.length);
+    return ids[slot] == id ? payloads[slot] : null;
+  }
+
+  /**
+   * Answers a {"type":"PAYLOAD","id":n} request from a client.
+   *
+   * @return the JSON reply, or null if the message is not a payload request
+   */
+  public String answer(String request) {
+    JsonNode root;
+    try {
+      root = objectMapper.readTree(request);
+    } catch (IOException e) {
+      return null;
+    }
+    if (root == null || !"PAYLOAD".equals(root.path("type").asText()) || !root.has("id")) {
+      return null;
+    }
+    long id = root.get("id").asLong();
+    ObjectNode reply = objectMapper.createObjectNode();
+    reply.put("type", "PAYLOAD");
+    reply.put("id", id);
+    reply.put("message", get(id));
+    return reply.toString();
+  }
+}
@@ -0,0 +1,246 @@
+package com.example.simulator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+/**
+ * Bounded outbound queue of one frontend WebSocket session.
+ *
+ * Broadcasting only appends to the queue, the messages are written with
+ * Jetty's asynchronous sendString, one at a time, each completed write
+ * starting the next. A session that falls behind by more than capacity
+ * messages is handled according to the SlowConsumerPolicy, so it never holds
+ * up ingestion or the other sessions. Events of binary sessions are queued
+ * as they are and only encoded when they are written, so a dropped event
+ * never leaves a gap in the encoder's state.
+ */
+public class SessionOutbox {
+  public enum SlowConsumerPolicy {
+    /** discard the oldest queued message to make room */
+    DROP_OLDEST,
+    /** close the session, the frontend is expected to reconnect */
+    DISCONNECT;
+
+    public static SlowConsumerPolicy parse(String value) {
+      return SlowConsumerPolicy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+  }
+
+  private static final Logger logger = LoggerFactory.getLogger(SessionOutbox.class);
+
+  private final Session session;
+  private final String remoteAddress;
+  private final int capacity;
+  private final SlowConsumerPolicy policy;
+  // Strings go out as text frames, BinaryEvents as binary frames
+  private final ArrayDeque<Object> queue = new ArrayDeque<>();
+  private final WriteCallback onWritten = new WriteCallback() {
+    @Override
+    public void writeSuccess() {
+      written();
+    }
+
+    @Override
+    public void writeFailed(Throwable cause) {
+      failed(cause);
+    }
+  };
+
+  private volatile Subscription subscription = Subscription.ALL;
+  // set for sessions that asked for the binary protocol
+  private BinaryEventCodec.Encoder encoder;
+  private boolean writing;
+  private boolean closed;
+  private long sent;
+  private long dropped;
+  private long failedWrites;
+  private int highWater;
+
+  public SessionOutbox(Session session, int capacity, SlowConsumerPolicy policy) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    this.session = session;
+    this.remoteAddress = String.valueOf(session.getRemoteAddress());
+    this.capacity = capacity;
+    this.policy = policy;
+  }
+
+  /**
+   * Queues a message for the session without blocking.
+   *
+   * @return false if the message or an older one had to be dropped
+   */
+  public boolean offer(String message) {
+    return enqueue(message);
+  }
+
+  /**
+   * Queues an event for a binary session, see BinaryEventCodec.
+   *
+   * @param id the PayloadCache id of the event's message
+   */
+  public boolean offerEvent(MessageEvent event, long id) {
+    return enqueue(new BinaryEvent(event, id));
+  }
+
+  private boolean enqueue(Object message) {
+    boolean disconnect = false;
+    boolean accepted = true;
+    synchronized (this) {
+      if (closed) {
+        return false;
+      }
+      if (queue.size() >= capacity) {
+        dropped++;
+        accepted = false;
+        if (policy == SlowConsumerPolicy.DISCONNECT) {
+          closed = true;
+          dropped += queue.size();
+          queue.clear();
+          disconnect = true;
+        } else {
+          queue.pollFirst();
+        }
+      }
+      if (!closed) {
+        queue.addLast(message);
+        highWater = Math.max(highWater, queue.size());
+      }
+    }
+
+    if (disconnect) {
+      logger.warn("Frontend: {} fell {} messages behind, disconnecting", remoteAddress, capacity);
+      session.close(StatusCode.POLICY_VIOLATION, "Too slow to keep up with the simulation");
+      return false;
+    }
+    writeNext();
+    return accepted;
+  }
+
+  public Subscription getSubscription() {
+    return subscription;
+  }
+
+  public void setSubscription(Subscription subscription) {
+    this.subscription = subscription;
+  }
+
+  public synchronized void setEncoder(BinaryEventCodec.Encoder encoder) {
+    this.encoder = encoder;
+  }
+
+  public synchronized boolean isBinary() {
+    return encoder != null;
+  }
+
+  public synchronized void close() {
+    closed = true;
+    queue.clear();
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  public synchronized Stats getStats() {
+    return new Stats(remoteAddress, sent, dropped, failedWrites, queue.size(), highWater, capacity);
+  }
+
+  private void writeNext() {
+    Object next;
+    synchronized (this) {
+      if (writing || closed || queue.isEmpty()) {
+        return;
+      }
+      next = queue.pollFirst();
+      if (next instanceof BinaryEvent) {
+        // the events queued behind it go out in the same frame
+        BinaryEvent event = (BinaryEvent) next;
+        encoder.encode(event.event, event.id);
+        while (queue.peekFirst() instanceof BinaryEvent) {
+          event = (BinaryEvent) queue.pollFirst();
+          encoder.encode(event.event, event.id);
+        }
+        next = encoder.drain();
+      }
+      writing = true;
+    }
+    if (next instanceof String) {
+      session.getRemote().sendString((String) next, onWritten);
+    } else {
+      session.getRemote().sendBytes(ByteBuffer.wrap((byte[]) next), onWritten);
+    }
+  }
+
+  private void written() {
+    synchronized (this) {
+      writing = false;
+      sent++;
+    }
+    writeNext();
+  }
+
+  private void failed(Throwable cause) {
+    synchronized (this) {
+      writing = false;
+      failedWrites++;
+      if (encoder != null) {
+        // the client may have missed dictionary records, a new encoder
+        // starts its next frame with a RESET
+        encoder = new BinaryEventCodec.Encoder();
+      }
+      if (!session.isOpen()) {
+        closed = true;
+        dropped += queue.size();
+        queue.clear();
+      }
+    }
+    logger.debug("Failed to send to Websocket: {}. Error: {}", remoteAddress, cause.getMessage());
+    writeNext();
+  }
+
+  private static class BinaryEvent {
+    final MessageEvent event;
+    final long id;
+
+    BinaryEvent(MessageEvent event, long id) {
+      this.event = event;
+      this.id = id;
+    }
+  }
+
+  /**
+   * Snapshot of a session's counters, serialized as is by the /sessions
+   * endpoint.
+   */
+  public static class Stats {
+    public final String remoteAddress;
+    public final long sent;
+    public final long dropped;
+    public final long failedWrites;
+    public final int queued;
+    public final int highWater;
+    public final int capacity;
+
+    public Stats(String remoteAddress, long sent, long dropped, long failedWrites, int queued, int highWater,
+        int capacity) {
+      this.remoteAddress = remoteAddress;
+      this.sent = sent;
+      this.dropped = dropped;
+      this.failedWrites = failedWrites;
+      this.queued = queued;
+      this.highWater = highWater;
+      this.capacity = capacity;
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package com.example.simulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.example.api.Storage;
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.example.util.InMemoryStorage;
+import com.example.util.OffHeapStorage;
+import com.example.util.PersistentStorage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Training run for the node image's AppCDS archive, see docker/Dockerfile.node.
+ * It goes through what a starting node loads - logging, Jackson, the clock,
+ * the journal, the stream codec, storage, metrics and the node programs - so
+ * the JVM can dump those classes into the archive when it exits. Nodes then
+ * map them from the archive instead of loading and verifying them again.
+ */
+public class StartupTraining {
+  private static final Logger logger = LoggerFactory.getLogger(StartupTraining.class);
+  private static final String PROGRAM_PACKAGE = "com/example/programs/";
+
+  public static void main(String[] args) throws Exception {
+    long start = System.nanoTime();
+    Path dir = Files.createTempDirectory("startup-training");
+
+    // deleted again so none of it ends up in the image layer
+    try {
+      HybridLogicalClock clock = new HybridLogicalClock();
+      long hlc = clock.update(clock.tick());
+      byte[] payload = "training".getBytes(StandardCharsets.UTF_8);
+      MessageEvent event = new MessageEvent("SENT", "node1", "node2", "training", System.currentTimeMillis(), hlc,
+          1);
+
+      // what the reporter sends, in both encodings
+      ObjectMapper objectMapper = new ObjectMapper();
+      objectMapper.readValue(objectMapper.writeValueAsString(List.of(event)), MessageEvent[].class);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      EventStreamCodec.writeEvent(out, event);
+      EventStreamCodec.readEvent(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+      EventStreamCodec.writeHello(out, "node1", 1);
+      EventRingBuffer buffer = new EventRingBuffer(16, EventRingBuffer.OverflowPolicy.DROP_OLDEST, 10);
+      buffer.offer(event);
+      buffer.drainTo(new ArrayList<>(), 16);
+
+      new MessageIdSequence(1, dir.resolve(MessageIdSequence.FILE_NAME)).next();
+      try (EventJournal journal = new EventJournal(dir.resolve(EventJournal.FILE_NAME), "node1", 16,
+          EventJournal.DEFAULT_RECORD_SIZE)) {
+        journal.recordSent("node2", payload, event.timestamp, hlc, 1);
+        journal.recordReceived("node2", payload, event.timestamp, hlc, 2);
+      }
+      try (EventJournal.Reader reader = EventJournal.Reader.open(dir.resolve(EventJournal.FILE_NAME))) {
+        reader.readAll();
+      }
+
+      List<Storage> storages = new ArrayList<>();
+      storages.add(new InMemoryStorage());
+      storages.add(new OffHeapStorage(64 * 1024, 0));
+      PersistentStorage persistent = new PersistentStorage(dir.resolve("storage"));
+      storages.add(persistent);
+      for (Storage storage : storages) {
+        storage.put("key", "value");
+        storage.get("key");
+      }
+      persistent.close();
+
+      NodeMetrics metrics = new NodeMetrics("node1", () -> 0);
+      metrics.sendMicros.record(10);
+      metrics.start(0);
+      metrics.toPrometheus();
+      metrics.stop();
+    } finally {
+      deleteRecursively(dir);
+    }
+
+    int programs = loadPrograms();
+    logger.info("Startup training loaded {} programs in {}ms", programs, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  private static void deleteRecursively(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  private static int loadPrograms() throws Exception {
+    File jar;
+    try {
+      jar = new File(StartupTraining.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    } catch (URISyntaxException e) {
+      return 0;
+    }
+    if (!jar.isFile()) {
+      return 0;
+    }
+
+    int loaded = 0;
+    try (JarFile jarFile = new JarFile(jar)) {
+      Enumeration<JarEntry> entries = jarFile.entries();
+      while (entries.hasMoreElements()) {
+        String name = entries.nextElement().getName();
+        if (name.startsWith(PROGRAM_PACKAGE) && name.endsWith(".class")) {
+          Class.forName(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+          loaded++;
+        }
+      }
+    }
+    return loaded;
+  }
+}
@@ -0,0 +1,115 @@
+package com.example.simulator;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * What a frontend WebSocket client wants to see, sent by the client as
+ *
+ * <pre>
+ * {"type":"SUBSCRIBE","nodes":["node-1"],"edges":[{"from":"node-2","to":"node-3"}],
+ *  "types":["SENT","DROPPED"],"sampleRate":0.1}
+ * </pre>
+ *
+ * Every field is optional. An event passes if it involves one of the nodes or
+ * is on one of the edges (when either is given), has one of the types (when
+ * given), and then survives sampling. Events without nodes, like
+ * REPORTER_STATS, are only filtered by type. The lists are compiled into hash
+ * sets once so matching an event allocates nothing.
+ */
+public class Subscription {
+  public static final Subscription ALL = new Subscription(Collections.emptySet(),
+      Collections.emptyMap(), Collections.emptySet(), 1.0);
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final Set<String> nodes;
+  // from node -> to nodes
+  private final Map<String, Set<String>> edges;
+  private final Set<String> types;
+  private final double sampleRate;
+  private final AtomicLong matched = new AtomicLong();
+
+  public Subscription(Set<String> nodes, Map<String, Set<String>> edges, Set<String> types, double sampleRate) {
+    if (sampleRate <= 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + sampleRate);
+    }
+    this.nodes = nodes;
+    this.edges = edges;
+    this.types = types;
+    this.sampleRate = sampleRate;
+  }
+
+  /**
+   * Compiles a SUBSCRIBE message from a client.
+   *
+   * @throws IllegalArgumentException if the message is not a valid
+   *                                  subscription
+   */
+  public static Subscription parse(String json) {
+    JsonNode root;
+    try {
+      root = objectMapper.readTree(json);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Malformed subscription: " + e.getMessage());
+    }
+    if (root == null || !root.isObject() || !"SUBSCRIBE".equals(root.path("type").asText())) {
+      throw new IllegalArgumentException("Expected a SUBSCRIBE message");
+    }
+
+    Set<String> nodes = new HashSet<>();
+    for (JsonNode node : root.path("nodes")) {
+      nodes.add(node.asText());
+    }
+    Map<String, Set<String>> edges = new HashMap<>();
+    for (JsonNode edge : root.path("edges")) {
+      if (!edge.hasNonNull("from") || !edge.hasNonNull("to")) {
+        throw new IllegalArgumentException("Edges need a from and a to node: " + edge);
+      }
+      edges.computeIfAbsent(edge.get("from").asText(), from -> new HashSet<>()).add(edge.get("to").asText());
+    }
+    Set<String> types = new HashSet<>();
+    for (JsonNode type : root.path("types")) {
+      types.add(type.asText());
+    }
+    return new Subscription(nodes, edges, types, root.path("sampleRate").asDouble(1.0));
+  }
+
+  public boolean matches(MessageEvent event) {
+    if (!types.isEmpty() && !types.contains(event.type)) {
+      return false;
+    }
+    if ((!nodes.isEmpty() || !edges.isEmpty()) && (event.fromNode != null || event.toNode != null)
+        && !involvesNode(event) && !onEdge(event)) {
+      return false;
+    }
+    if (sampleRate >= 1.0) {
+      return true;
+    }
+    // keeps an evenly spaced sampleRate share of the matching events
+    long n = matched.incrementAndGet();
+    return (long) (n * sampleRate) != (long) ((n - 1) * sampleRate);
+  }
+
+  private boolean involvesNode(MessageEvent event) {
+    return (event.fromNode != null && nodes.contains(event.fromNode))
+        || (event.toNode != null && nodes.contains(event.toNode));
+  }
+
+  private boolean onEdge(MessageEvent event) {
+    if (event.fromNode == null || event.toNode == null) {
+      return false;
+    }
+    Set<String> to = edges.get(event.fromNode);
+    return to != null && to.contains(event.toNode);
+  }
+}
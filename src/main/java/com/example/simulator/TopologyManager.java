@@ -11,13 +11,17 @@ import java.util.Set;
 import org.yaml.snakeyaml.Yaml;
 
 import com.example.model.NodeConfig;
+import com.example.model.ResourceProfile;
 import com.example.model.Connection;
 
 public class TopologyManager {
   private Map<String, Double> networkJitterConfig = new HashMap<>();
+  private Map<String, Object> storageConfig = new HashMap<>();
   private Map<String, NodeConfig> nodes = new HashMap<>();
   private Set<Connection> connections = new HashSet<>();
   private Map<String, Integer> idTracker = new HashMap<>();
+  // applies to every node, groups and nodes override its fields
+  private ResourceProfile defaultResources;
 
   public TopologyManager(String yamlPath) throws Exception {
     loadTopologyFromYaml(yamlPath);
@@ -32,6 +36,10 @@ public class TopologyManager {
       config = yaml.load(fileInputStream);
     }
 
+    if (config.containsKey("resources")) {
+      defaultResources = loadResources(config.get("resources"));
+    }
+
     if (config.containsKey("topologies")) {
       loadTopologies(config);
     }
@@ -44,6 +52,14 @@ public class TopologyManager {
       loadNetworkJitter(config);
     }
 
+    if (config.containsKey("storage_config")) {
+      loadStorageConfig(config);
+    }
+
+    if (config.containsKey("node_resources")) {
+      loadNodeResources(config);
+    }
+
     establishConnections();
   }
 
@@ -56,12 +72,14 @@ public class TopologyManager {
       int numberOfNodes = ((Number) topology.get("number_of_nodes")).intValue();
       String programName = (String) topology.get("program");
       String nidPrefix = (String) topology.get("nid_prefix");
+      ResourceProfile resources = mergeResources(defaultResources, loadResources(topology.get("resources")));
 
-      createTopology(type, numberOfNodes, programName, nidPrefix);
+      createTopology(type, numberOfNodes, programName, nidPrefix, resources);
     }
   }
 
-  private void createTopology(String type, int numberOfNodes, String programName, String nidPrefix) {
+  private void createTopology(String type, int numberOfNodes, String programName, String nidPrefix,
+      ResourceProfile resources) {
     List<String> nodeIds = new ArrayList<>();
 
     // Create nodes
@@ -69,7 +87,7 @@ public class TopologyManager {
       int int_id = idTracker.getOrDefault(nidPrefix, 0) + i;
       String nodeId = nidPrefix + int_id;
       nodeIds.add(nodeId);
-      nodes.put(nodeId, new NodeConfig(nodeId, programName, new ArrayList<>()));
+      nodes.put(nodeId, new NodeConfig(nodeId, programName, new ArrayList<>(), resources));
     }
 
     idTracker.put(nidPrefix, idTracker.getOrDefault(nidPrefix, 0) + numberOfNodes);
@@ -127,9 +145,10 @@ public class TopologyManager {
       String nid = (String) nodeConfig.get("nid");
       String programName = (String) nodeConfig.get("program");
       List<String> nodeConnections = (List<String>) nodeConfig.get("connections");
+      ResourceProfile resources = mergeResources(defaultResources, loadResources(nodeConfig.get("resources")));
 
       // Create the node with empty peer list (we'll populate it later)
-      nodes.put(nid, new NodeConfig(nid, programName, new ArrayList<>()));
+      nodes.put(nid, new NodeConfig(nid, programName, new ArrayList<>(), resources));
 
       // Add connections
       if (nodeConnections != null) {
@@ -154,6 +173,68 @@ public class TopologyManager {
     }
   }
 
+  @SuppressWarnings("unchecked")
+  private void loadStorageConfig(Map<String, Object> config) {
+    Map<String, Object> storage = (Map<String, Object>) config.get("storage_config");
+    for (Map.Entry<String, Object> entry : storage.entrySet()) {
+      String key = entry.getKey();
+      Object value = entry.getValue();
+
+      switch (key) {
+        case "type":
+          if (!"memory".equals(value) && !"persistent".equals(value) && !"offheap".equals(value)) {
+            throw new IllegalArgumentException(
+                "YAML config - storage_config type should be one of memory, persistent or offheap");
+          }
+          break;
+        case "max_bytes":
+        case "ttl_ms":
+          if (!(value instanceof Number)) {
+            throw new IllegalArgumentException("YAML config - storage_config " + key + " should be a number");
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("YAML config - unknown storage_config field: " + key);
+      }
+      storageConfig.put(key, value);
+    }
+  }
+
+  /*
+   * Overrides for single nodes of a topology group, by node id:
+   * node_resources:
+   *   ring-node-0:
+   *     memory: "512m"
+   */
+  @SuppressWarnings("unchecked")
+  private void loadNodeResources(Map<String, Object> config) {
+    Map<String, Object> nodeResources = (Map<String, Object>) config.get("node_resources");
+    for (Map.Entry<String, Object> entry : nodeResources.entrySet()) {
+      NodeConfig node = nodes.get(entry.getKey());
+      if (node == null) {
+        throw new IllegalArgumentException("YAML config - node_resources for unknown node: " + entry.getKey());
+      }
+      ResourceProfile resources = mergeResources(node.getResources(), loadResources(entry.getValue()));
+      nodes.put(node.getNodeId(), new NodeConfig(node.getNodeId(), node.getProgramName(), node.getPeerNodeIds(),
+          resources));
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ResourceProfile loadResources(Object resources) {
+    if (resources == null) {
+      return null;
+    }
+    if (!(resources instanceof Map)) {
+      throw new IllegalArgumentException("YAML config - resources should be a map of limits");
+    }
+    return ResourceProfile.fromMap((Map<String, Object>) resources);
+  }
+
+  private static ResourceProfile mergeResources(ResourceProfile base, ResourceProfile override) {
+    return base == null ? override : base.merge(override);
+  }
+
   /**
    * This method defines each peer nodes within each NodeConfig object
    */
@@ -184,7 +265,7 @@ public class TopologyManager {
 
       // Create a new NodeConfig with updated peer list
       NodeConfig oldConfig = nodes.get(nodeId);
-      nodes.put(nodeId, new NodeConfig(nodeId, oldConfig.getProgramName(), peers));
+      nodes.put(nodeId, new NodeConfig(nodeId, oldConfig.getProgramName(), peers, oldConfig.getResources()));
     }
   }
 
@@ -200,6 +281,10 @@ public class TopologyManager {
     return networkJitterConfig;
   }
 
+  public Map<String, Object> getStorageConfig() {
+    return storageConfig;
+  }
+
 }
 
 /*
@@ -224,5 +309,20 @@ public class TopologyManager {
  * connections:
  * - "ring-node-0"
  * - "fc-node-0"
+ *
+ * storage_config:
+ * type: "offheap" # memory, persistent (default) or offheap
+ * max_bytes: 1048576
+ * ttl_ms: 60000
+ *
+ * resources: # default for all nodes, topologies and individual_nodes entries
+ * memory: "256m" # can have their own resources section too
+ * cpus: 0.5
+ * cpuset: "auto"
+ * gc: "serial"
+ *
+ * node_resources:
+ * ring-node-0:
+ * memory: "512m"
  * 
  */
@@ -3,6 +3,7 @@ package com.example.util;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 import com.example.api.Storage;
 
@@ -43,4 +44,9 @@ public class InMemoryStorage implements Storage {
     public Map<String, Object> getAll() {
         return new HashMap<>(store);
     }
+
+    @Override
+    public void forEach(BiConsumer<String, Object> action) {
+        store.forEach(action);
+    }
 }
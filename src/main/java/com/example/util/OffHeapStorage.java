@@ -0,0 +1,361 @@
+package com.example.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import com.example.api.Storage;
+
+/**
+ * Storage that keeps its values in a fixed-size direct buffer instead of on
+ * the java heap.
+ *
+ * The buffer is split into equally sized blocks; a value occupies a chain of
+ * blocks, each starting with the index of the next one. When the byte budget
+ * is used up the least recently used entries are evicted, and entries older
+ * than the configured TTL are treated as absent. Since every entry holds at
+ * least one block, the on-heap index is bounded by the budget as well.
+ */
+public class OffHeapStorage implements Storage {
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    private static final int NO_BLOCK = -1;
+    private static final int NEXT_POINTER_SIZE = 4;
+
+    private final ByteBuffer arena;
+    private final int blockSize;
+    private final int payloadPerBlock;
+    private final int blockCount;
+    private final int[] freeBlocks;
+    private int freeCount;
+    private final long ttlMs;
+    private long evictions;
+
+    // access ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param maxBytes byte budget for values (rounded down to whole blocks)
+     * @param ttlMs    time an entry stays readable after its last write, 0 to
+     *                 keep entries until they are evicted
+     */
+    public OffHeapStorage(long maxBytes, long ttlMs) {
+        this(maxBytes, ttlMs, DEFAULT_BLOCK_SIZE);
+    }
+
+    public OffHeapStorage(long maxBytes, long ttlMs, int blockSize) {
+        if (blockSize <= NEXT_POINTER_SIZE + 8) {
+            throw new IllegalArgumentException("Block size too small: " + blockSize);
+        }
+        long blocks = maxBytes / blockSize;
+        if (blocks < 1 || blocks * blockSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported storage budget: " + maxBytes + " bytes");
+        }
+        this.blockSize = blockSize;
+        this.payloadPerBlock = blockSize - NEXT_POINTER_SIZE;
+        this.blockCount = (int) blocks;
+        this.arena = ByteBuffer.allocateDirect(blockCount * blockSize);
+        this.freeBlocks = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            freeBlocks[i] = blockCount - 1 - i;
+        }
+        this.freeCount = blockCount;
+        this.ttlMs = ttlMs;
+    }
+
+    @Override
+    public synchronized void put(String key, Object value) {
+        byte[] encoded = StorageCodec.encode(value);
+        Entry entry = allocate(key, encoded.length);
+        int block = entry.firstBlock;
+        int offset = 0;
+        while (offset < encoded.length) {
+            int chunk = Math.min(payloadPerBlock, encoded.length - offset);
+            int base = payloadOffset(block);
+            for (int i = 0; i < chunk; i++) {
+                arena.put(base + i, encoded[offset + i]);
+            }
+            offset += chunk;
+            block = arena.getInt(block * blockSize);
+        }
+    }
+
+    @Override
+    public synchronized Object get(String key) {
+        Entry entry = lookup(key);
+        if (entry == null) {
+            return null;
+        }
+        return StorageCodec.decode(read(entry));
+    }
+
+    @Override
+    public synchronized boolean containsKey(String key) {
+        return lookup(key) != null;
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        Entry entry = index.remove(key);
+        if (entry != null) {
+            release(entry);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Entry entry : index.values()) {
+            release(entry);
+        }
+        index.clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        purgeExpired();
+        return index.size();
+    }
+
+    @Override
+    public synchronized Map<String, Object> getAll() {
+        Map<String, Object> all = new HashMap<>();
+        forEach(all::put);
+        return all;
+    }
+
+    @Override
+    public synchronized void forEach(BiConsumer<String, Object> action) {
+        purgeExpired();
+        // the action may read or write this storage, which reorders the index,
+        // so it walks a copy of the keys. Values are still decoded one at a
+        // time straight from the arena. Looking every key up in order leaves
+        // the least recently used order as it was
+        for (String key : new ArrayList<>(index.keySet())) {
+            Entry entry = lookup(key);
+            if (entry != null) {
+                action.accept(key, StorageCodec.decode(read(entry)));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void putLong(String key, long value) {
+        int base = payloadOffset(allocate(key, 9).firstBlock);
+        arena.put(base, StorageCodec.LONG);
+        arena.putLong(base + 1, value);
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defaultValue) {
+        Entry entry = lookup(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        int base = payloadOffset(entry.firstBlock);
+        switch (arena.get(base)) {
+            case StorageCodec.LONG:
+                return arena.getLong(base + 1);
+            case StorageCodec.INT:
+                return arena.getInt(base + 1);
+            case StorageCodec.DOUBLE:
+                return (long) arena.getDouble(base + 1);
+            default:
+                return defaultValue;
+        }
+    }
+
+    @Override
+    public synchronized void putInt(String key, int value) {
+        int base = payloadOffset(allocate(key, 5).firstBlock);
+        arena.put(base, StorageCodec.INT);
+        arena.putInt(base + 1, value);
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defaultValue) {
+        Entry entry = lookup(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        int base = payloadOffset(entry.firstBlock);
+        switch (arena.get(base)) {
+            case StorageCodec.INT:
+                return arena.getInt(base + 1);
+            case StorageCodec.LONG:
+                return (int) arena.getLong(base + 1);
+            case StorageCodec.DOUBLE:
+                return (int) arena.getDouble(base + 1);
+            default:
+                return defaultValue;
+        }
+    }
+
+    @Override
+    public synchronized void putDouble(String key, double value) {
+        int base = payloadOffset(allocate(key, 9).firstBlock);
+        arena.put(base, StorageCodec.DOUBLE);
+        arena.putDouble(base + 1, value);
+    }
+
+    @Override
+    public synchronized double getDouble(String key, double defaultValue) {
+        Entry entry = lookup(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        int base = payloadOffset(entry.firstBlock);
+        switch (arena.get(base)) {
+            case StorageCodec.DOUBLE:
+                return arena.getDouble(base + 1);
+            case StorageCodec.LONG:
+                return arena.getLong(base + 1);
+            case StorageCodec.INT:
+                return arena.getInt(base + 1);
+            default:
+                return defaultValue;
+        }
+    }
+
+    @Override
+    public synchronized void putBoolean(String key, boolean value) {
+        int base = payloadOffset(allocate(key, 2).firstBlock);
+        arena.put(base, StorageCodec.BOOLEAN);
+        arena.put(base + 1, (byte) (value ? 1 : 0));
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defaultValue) {
+        Entry entry = lookup(key);
+        if (entry == null) {
+            return defaultValue;
+        }
+        int base = payloadOffset(entry.firstBlock);
+        return arena.get(base) == StorageCodec.BOOLEAN ? arena.get(base + 1) != 0 : defaultValue;
+    }
+
+    /**
+     * Number of entries evicted so far to stay within the byte budget.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public long getCapacityBytes() {
+        return (long) blockCount * blockSize;
+    }
+
+    public synchronized long getUsedBytes() {
+        return (long) (blockCount - freeCount) * blockSize;
+    }
+
+    private Entry lookup(String key) {
+        Entry entry = index.get(key);
+        if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+            index.remove(key);
+            release(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /*
+     * Replaces whatever is stored under key with a fresh chain of blocks big
+     * enough for length bytes, evicting the least recently used entries if
+     * needed
+     */
+    private Entry allocate(String key, int length) {
+        int needed = Math.max(1, (length + payloadPerBlock - 1) / payloadPerBlock);
+        if (needed > blockCount) {
+            throw new IllegalArgumentException(
+                    "Value of " + length + " bytes for key " + key + " exceeds the storage budget");
+        }
+
+        Entry previous = index.remove(key);
+        if (previous != null) {
+            release(previous);
+        }
+
+        if (freeCount < needed) {
+            purgeExpired();
+        }
+        Iterator<Entry> eldest = index.values().iterator();
+        while (freeCount < needed) {
+            release(eldest.next());
+            eldest.remove();
+            evictions++;
+        }
+
+        int first = NO_BLOCK;
+        for (int i = 0; i < needed; i++) {
+            int block = freeBlocks[--freeCount];
+            arena.putInt(block * blockSize, first);
+            first = block;
+        }
+
+        Entry entry = new Entry(first, length, ttlMs > 0 ? System.currentTimeMillis() + ttlMs : Long.MAX_VALUE);
+        index.put(key, entry);
+        return entry;
+    }
+
+    private void release(Entry entry) {
+        int block = entry.firstBlock;
+        while (block != NO_BLOCK) {
+            freeBlocks[freeCount++] = block;
+            block = arena.getInt(block * blockSize);
+        }
+    }
+
+    private ByteBuffer read(Entry entry) {
+        byte[] bytes = new byte[entry.length];
+        int block = entry.firstBlock;
+        int offset = 0;
+        while (offset < entry.length) {
+            int chunk = Math.min(payloadPerBlock, entry.length - offset);
+            ByteBuffer view = arena.duplicate();
+            view.position(payloadOffset(block));
+            view.get(bytes, offset, chunk);
+            offset += chunk;
+            block = arena.getInt(block * blockSize);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private void purgeExpired() {
+        if (ttlMs <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Iterator<Entry> entries = index.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (isExpired(entry, now)) {
+                release(entry);
+                entries.remove();
+            }
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now >= entry.expiresAt;
+    }
+
+    private int payloadOffset(int block) {
+        return block * blockSize + NEXT_POINTER_SIZE;
+    }
+
+    private static class Entry {
+        private final int firstBlock;
+        private final int length;
+        private final long expiresAt;
+
+        private Entry(int firstBlock, int length, long expiresAt) {
+            this.firstBlock = firstBlock;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
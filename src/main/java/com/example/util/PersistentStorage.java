@@ -0,0 +1,281 @@
+package com.example.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import com.example.api.Storage;
+
+/**
+ * Storage that survives a node being stopped and restarted.
+ *
+ * Every mutation is appended to a memory-mapped log, and once the log grows
+ * past a threshold the current state is written out as a compacted snapshot
+ * and the log is reset. On startup the snapshot is mapped and the log tail is
+ * replayed on top of it, so recovery only costs a couple of sequential reads.
+ *
+ * Reads are served from an in-memory map that mirrors the persisted state.
+ */
+public class PersistentStorage implements Storage, AutoCloseable {
+    static final String SNAPSHOT_FILE = "storage.snapshot";
+    static final String LOG_FILE = "storage.log";
+
+    private static final int SNAPSHOT_MAGIC = 0x44534e50; // "DSNP"
+    private static final long DEFAULT_LOG_CAPACITY = 4L * 1024 * 1024;
+
+    private static final byte OP_END = 0;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+
+    private final Map<String, Object> store = new ConcurrentHashMap<>();
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final long compactThreshold;
+    private final FileChannel logChannel;
+    private MappedByteBuffer log;
+
+    public PersistentStorage(Path directory) throws IOException {
+        this(directory, DEFAULT_LOG_CAPACITY);
+    }
+
+    /**
+     * @param directory   where the snapshot and log files live (e.g. a docker
+     *                    volume)
+     * @param logCapacity size of the mapped log region; the log is compacted
+     *                    into a snapshot once half of it is used
+     */
+    public PersistentStorage(Path directory, long logCapacity) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        this.logPath = directory.resolve(LOG_FILE);
+        this.compactThreshold = logCapacity / 2;
+
+        loadSnapshot();
+
+        this.logChannel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(logCapacity, logChannel.size()));
+        replayLog();
+    }
+
+    @Override
+    public synchronized void put(String key, Object value) {
+        // checked before anything is logged, a null in the log would fail the replay
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Storage keys and values cannot be null");
+        }
+        byte[] encoded = StorageCodec.encode(value);
+        append(OP_PUT, key, encoded);
+        store.put(key, value);
+    }
+
+    @Override
+    public Object get(String key) {
+        return store.get(key);
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        return store.containsKey(key);
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        if (store.containsKey(key)) {
+            append(OP_REMOVE, key, null);
+            store.remove(key);
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        append(OP_CLEAR, "", null);
+        store.clear();
+    }
+
+    @Override
+    public int size() {
+        return store.size();
+    }
+
+    @Override
+    public Map<String, Object> getAll() {
+        return new HashMap<>(store);
+    }
+
+    @Override
+    public void forEach(BiConsumer<String, Object> action) {
+        store.forEach(action);
+    }
+
+    /**
+     * Writes the current state to a new snapshot and resets the log.
+     */
+    public synchronized void snapshot() {
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write storage snapshot: " + e.getMessage(), e);
+        }
+        // the snapshot now covers everything in the log, wipe it so the next
+        // recovery does not replay stale entries
+        int used = log.position();
+        for (int i = 0; i < used; i++) {
+            log.put(i, OP_END);
+        }
+        log.position(0);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        log.force();
+        logChannel.close();
+    }
+
+    private void append(byte op, String key, byte[] value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int valueLength = value == null ? 0 : value.length;
+        int recordLength = 1 + 4 + keyBytes.length + 4 + valueLength;
+
+        if (log.position() > 0 && log.position() + recordLength > compactThreshold) {
+            snapshot();
+        }
+        ensureCapacity(recordLength);
+
+        // write the body first and publish the op byte last, so a record that
+        // was cut short is read back as the end of the log
+        int start = log.position();
+        log.position(start + 1);
+        log.putInt(keyBytes.length);
+        log.put(keyBytes);
+        log.putInt(valueLength);
+        if (value != null) {
+            log.put(value);
+        }
+        log.put(start, op);
+    }
+
+    private void ensureCapacity(int recordLength) {
+        // one extra byte so there is always an OP_END marker after the last record
+        long required = (long) log.position() + recordLength + 1;
+        if (required <= log.capacity()) {
+            return;
+        }
+        try {
+            int position = log.position();
+            long newCapacity = Math.max(required, (long) log.capacity() * 2);
+            log = logChannel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+            log.position(position);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to grow storage log: " + e.getMessage(), e);
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            if (channel.size() < 8) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Corrupt storage snapshot: " + snapshotPath);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = readString(buffer);
+                store.put(key, StorageCodec.decode(readSlice(buffer)));
+            }
+        }
+    }
+
+    private void replayLog() {
+        int position = 0;
+        while (position < log.capacity()) {
+            byte op = log.get(position);
+            if (op != OP_PUT && op != OP_REMOVE && op != OP_CLEAR) {
+                break;
+            }
+            ByteBuffer record = log.duplicate();
+            record.position(position + 1);
+            if (!hasBytes(record, 4)) {
+                break;
+            }
+            int keyLength = record.getInt();
+            if (keyLength < 0 || !hasBytes(record, keyLength + 4)) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            record.get(keyBytes);
+            int valueLength = record.getInt();
+            if (valueLength < 0 || !hasBytes(record, valueLength)) {
+                break;
+            }
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+
+            if (op == OP_PUT) {
+                ByteBuffer value = record.slice();
+                value.limit(valueLength);
+                store.put(key, StorageCodec.decode(value));
+            } else if (op == OP_REMOVE) {
+                store.remove(key);
+            } else {
+                store.clear();
+            }
+            position = record.position() + valueLength;
+        }
+        log.position(position);
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path tmp = snapshotPath.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(SNAPSHOT_MAGIC).putInt(store.size());
+            header.flip();
+            channel.write(header);
+            for (Map.Entry<String, Object> entry : store.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] value = StorageCodec.encode(entry.getValue());
+                ByteBuffer record = ByteBuffer.allocate(8 + key.length + value.length);
+                record.putInt(key.length).put(key).putInt(value.length).put(value);
+                record.flip();
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static boolean hasBytes(ByteBuffer buffer, int count) {
+        return buffer.remaining() >= count;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        ByteBuffer slice = readSlice(buffer);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    private static ByteBuffer readSlice(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes Storage values into a tagged byte form so they can live outside the
+ * java heap (memory-mapped files, direct buffers). Common value types get a
+ * compact encoding, anything else falls back to java serialization.
+ */
+public final class StorageCodec {
+    public static final byte NULL = 0;
+    public static final byte STRING = 1;
+    public static final byte LONG = 2;
+    public static final byte INT = 3;
+    public static final byte DOUBLE = 4;
+    public static final byte BOOLEAN = 5;
+    public static final byte BYTES = 6;
+    public static final byte SERIALIZED = 7;
+
+    private StorageCodec() {
+    }
+
+    public static byte[] encode(Object value) {
+        if (value == null) {
+            return new byte[] { NULL };
+        }
+        if (value instanceof String) {
+            byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(1 + utf8.length).put(STRING).put(utf8).array();
+        }
+        if (value instanceof Long) {
+            return ByteBuffer.allocate(9).put(LONG).putLong((Long) value).array();
+        }
+        if (value instanceof Integer) {
+            return ByteBuffer.allocate(5).put(INT).putInt((Integer) value).array();
+        }
+        if (value instanceof Double) {
+            return ByteBuffer.allocate(9).put(DOUBLE).putDouble((Double) value).array();
+        }
+        if (value instanceof Boolean) {
+            return new byte[] { BOOLEAN, (byte) (((Boolean) value) ? 1 : 0) };
+        }
+        if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            return ByteBuffer.allocate(1 + bytes.length).put(BYTES).put(bytes).array();
+        }
+        if (value instanceof Serializable) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            bos.write(SERIALIZED);
+            try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+                out.writeObject(value);
+                out.flush();
+                return bos.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to serialize value of type " + value.getClass().getName(), e);
+            }
+        }
+        throw new IllegalArgumentException(
+                "Storage values must be Serializable, got " + value.getClass().getName());
+    }
+
+    /**
+     * Decodes a value from the remaining bytes of the buffer. The buffer's
+     * position is advanced to its limit.
+     */
+    public static Object decode(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return StandardCharsets.UTF_8.decode(buffer).toString();
+            case LONG:
+                return buffer.getLong();
+            case INT:
+                return buffer.getInt();
+            case DOUBLE:
+                return buffer.getDouble();
+            case BOOLEAN:
+                return buffer.get() != 0;
+            case BYTES: {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                return bytes;
+            }
+            case SERIALIZED: {
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return in.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new IllegalStateException("Failed to deserialize stored value", e);
+                }
+            }
+            default:
+                throw new IllegalStateException("Unknown storage value tag: " + tag);
+        }
+    }
+
+    public static Object decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.server.service;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.server.websocket.EventPipeline;
+import com.example.simulator.DockerSimulator;
+import com.example.simulator.EventStreamServer;
+import com.example.simulator.LatencyTracker;
+import com.example.simulator.MonitorState;
+
+public class SimulationServiceTest {
+  private DockerSimulator simulator;
+  private EventPipeline eventPipeline;
+  private MonitorState monitorState;
+  private EventStreamServer eventStreamServer;
+  private SimulationService service;
+
+  @Before
+  public void setUp() {
+    simulator = mock(DockerSimulator.class);
+    when(simulator.getNodeIds()).thenReturn(Set.of("node1", "node2"));
+    eventPipeline = mock(EventPipeline.class);
+    monitorState = mock(MonitorState.class);
+    eventStreamServer = mock(EventStreamServer.class);
+    service = new SimulationService(eventPipeline, monitorState, mock(LatencyTracker.class), eventStreamServer,
+        topology -> simulator);
+  }
+
+  @After
+  public void tearDown() {
+    service.shutdown();
+  }
+
+  private static Throwable failure(java.util.concurrent.Future<String> result) throws Exception {
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      fail("Expected the command to fail");
+      return null;
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+  }
+
+  @Test
+  public void testStartRunsCommandsAndStops() throws Exception {
+    Path topology = Files.createTempFile("topology-", ".yaml");
+
+    assertEquals("Simulation started with 2 nodes", service.start(topology).get(5, TimeUnit.SECONDS));
+    assertEquals(SimulationService.Status.RUNNING, service.getStatus());
+    verify(simulator).startSimulation();
+    verify(monitorState).clear();
+    verify(eventStreamServer).clear();
+    assertFalse(Files.exists(topology));
+
+    assertEquals("Paused node: node1", service.pauseNode("node1").get(5, TimeUnit.SECONDS));
+    verify(simulator).pauseNode("node1");
+    verify(monitorState).setNodeStatus("node1", "PAUSED");
+
+    service.stop().get(5, TimeUnit.SECONDS);
+    verify(simulator).shutdown();
+    assertEquals(SimulationService.Status.IDLE, service.getStatus());
+    verify(eventPipeline, atLeast(4)).publish(contains("SIMULATION_STATUS"));
+  }
+
+  @Test
+  public void testCommandsNeedARunningSimulation() throws Exception {
+    assertTrue(failure(service.pauseNode("node1")) instanceof IllegalStateException);
+    assertTrue(failure(service.stop()) instanceof IllegalStateException);
+
+    service.start(Files.createTempFile("topology-", ".yaml")).get(5, TimeUnit.SECONDS);
+    assertTrue(failure(service.start(Files.createTempFile("topology-", ".yaml"))) instanceof IllegalStateException);
+    assertTrue(failure(service.restartNode("node9")) instanceof NoSuchElementException);
+    verify(simulator, never()).restartNode(anyString());
+  }
+
+  @Test
+  public void testFailedStartCleansUp() throws Exception {
+    doThrow(new java.io.IOException("no docker")).when(simulator).startSimulation();
+
+    Throwable error = failure(service.start(Files.createTempFile("topology-", ".yaml")));
+    assertTrue(error.getMessage().contains("no docker"));
+    verify(simulator).shutdown();
+    assertEquals(SimulationService.Status.FAILED, service.getStatus());
+
+    // a failed start leaves nothing running, so the next one may go ahead
+    doNothing().when(simulator).startSimulation();
+    service.start(Files.createTempFile("topology-", ".yaml")).get(5, TimeUnit.SECONDS);
+    assertEquals(SimulationService.Status.RUNNING, service.getStatus());
+  }
+}
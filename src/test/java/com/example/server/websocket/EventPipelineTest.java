@@ -0,0 +1,189 @@
+package com.example.server.websocket;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.example.simulator.BinaryEventCodec;
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.example.simulator.Subscription;
+
+public class EventPipelineTest {
+
+  private static WebSocketSession session(String id, List<String> frames) throws Exception {
+    WebSocketSession session = mock(WebSocketSession.class);
+    when(session.getId()).thenReturn(id);
+    when(session.isOpen()).thenReturn(true);
+    doAnswer(invocation -> {
+      frames.add(((TextMessage) invocation.getArgument(0)).getPayload());
+      return null;
+    }).when(session).sendMessage(any());
+    return session;
+  }
+
+  private static void await(List<String> frames, String expected) throws Exception {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!String.join("", frames).contains(expected) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testEventsAreFramedPerSubscription() throws Exception {
+    EventPipeline pipeline = new EventPipeline(10, 64 * 1024, 16);
+    List<String> allFrames = new CopyOnWriteArrayList<>();
+    List<String> node3Frames = new CopyOnWriteArrayList<>();
+    WebSocketSession all = session("all", allFrames);
+    WebSocketSession node3 = session("node3", node3Frames);
+    pipeline.subscribe(all);
+    pipeline.subscribe(node3);
+    pipeline.setSubscription(node3, Subscription.parse("{\"type\":\"SUBSCRIBE\",\"nodes\":[\"node3\"]}"));
+
+    pipeline.publish(new MessageEvent("SENT", "node1", "node2", "a", 1));
+    pipeline.publish(new MessageEvent("SENT", "node1", "node3", "b", 2));
+    await(allFrames, "\"b\"");
+    await(node3Frames, "\"b\"");
+    pipeline.close();
+
+    String allJoined = String.join("", allFrames);
+    assertTrue(allJoined.startsWith("["));
+    assertTrue(allJoined.contains("\"message\":\"a\""));
+    assertTrue(allJoined.contains("\"message\":\"b\""));
+    String node3All = String.join("", node3Frames);
+    assertFalse(node3All.contains("\"message\":\"a\""));
+    assertTrue(node3All.contains("\"message\":\"b\""));
+  }
+
+  @Test
+  public void testUnsubscribedSessionGetsNothing() throws Exception {
+    EventPipeline pipeline = new EventPipeline(10, 64 * 1024, 16);
+    List<String> frames = new CopyOnWriteArrayList<>();
+    WebSocketSession session = session("s", frames);
+    pipeline.subscribe(session);
+    pipeline.unsubscribe(session);
+    assertEquals(0, pipeline.getSubscriberCount());
+
+    pipeline.publish("{\"type\":\"SENT\"}");
+    Thread.sleep(50);
+    pipeline.close();
+    assertTrue(frames.isEmpty());
+  }
+
+  @Test
+  public void testStalledSessionKeepsFramesCapped() throws Exception {
+    int maxFrameBytes = 256;
+    EventPipeline pipeline = new EventPipeline(10, maxFrameBytes, 4);
+    List<String> frames = new CopyOnWriteArrayList<>();
+    CountDownLatch stalled = new CountDownLatch(1);
+    WebSocketSession session = mock(WebSocketSession.class);
+    when(session.getId()).thenReturn("slow");
+    when(session.isOpen()).thenReturn(true);
+    doAnswer(invocation -> {
+      stalled.await(5, TimeUnit.SECONDS);
+      frames.add(((TextMessage) invocation.getArgument(0)).getPayload());
+      return null;
+    }).when(session).sendMessage(any());
+    pipeline.subscribe(session);
+
+    int published = 500;
+    for (int i = 0; i < published; i++) {
+      pipeline.publish(new MessageEvent("SENT", "node1", "node2", "m" + i, i));
+    }
+    Thread.sleep(100);
+    stalled.countDown();
+    // the events that did not fit in the session's buffer never arrive
+    Thread.sleep(300);
+    pipeline.close();
+
+    // a frame stops growing once it is full, one event past the cap at most
+    int delivered = 0;
+    for (String frame : frames) {
+      assertTrue(frame.length() < 2 * maxFrameBytes);
+      delivered += frame.split("\"type\"", -1).length - 1;
+    }
+    assertTrue(delivered < published);
+  }
+
+  @Test
+  public void testStalledSessionsDoNotHoldUpOthers() throws Exception {
+    EventPipeline pipeline = new EventPipeline(10, 64 * 1024, 16);
+    CountDownLatch stalled = new CountDownLatch(1);
+    try {
+      for (int i = 0; i < 3; i++) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("stalled-" + i);
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+          stalled.await(10, TimeUnit.SECONDS);
+          return null;
+        }).when(session).sendMessage(any());
+        pipeline.subscribe(session);
+      }
+      List<String> frames = new CopyOnWriteArrayList<>();
+      pipeline.subscribe(session("fast", frames));
+
+      // every event in its own interval, each one a flush the stalled sessions also take part in
+      for (int i = 0; i < 5; i++) {
+        pipeline.publish(new MessageEvent("SENT", "node1", "node2", "m" + i, i));
+        await(frames, "\"m" + i + "\"");
+        assertTrue(String.join("", frames).contains("\"m" + i + "\""));
+      }
+    } finally {
+      stalled.countDown();
+      pipeline.close();
+    }
+  }
+
+  @Test
+  public void testBinarySessionStartsOverAfterFailedSend() throws Exception {
+    EventPipeline pipeline = new EventPipeline(10, 64 * 1024, 16);
+    List<byte[]> frames = new CopyOnWriteArrayList<>();
+    AtomicInteger attempts = new AtomicInteger();
+    WebSocketSession session = mock(WebSocketSession.class);
+    when(session.getId()).thenReturn("binary");
+    when(session.isOpen()).thenReturn(true);
+    doAnswer(invocation -> {
+      // the first frame, with the dictionary records, never arrives
+      if (attempts.incrementAndGet() == 1) {
+        throw new IOException("connection reset");
+      }
+      frames.add(((BinaryMessage) invocation.getArgument(0)).getPayload().array());
+      return null;
+    }).when(session).sendMessage(any(BinaryMessage.class));
+    pipeline.subscribe(session, null, true);
+
+    pipeline.publish(new MessageEvent("SENT", "node1", "node2", "a", 100));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (attempts.get() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    pipeline.publish(new MessageEvent("SENT", "node1", "node2", "b", 200));
+    while (frames.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    pipeline.close();
+
+    BinaryEventCodec.Decoder decoder = new BinaryEventCodec.Decoder();
+    List<BinaryEventCodec.Event> events = new ArrayList<>();
+    for (byte[] frame : frames) {
+      events.addAll(decoder.decode(frame));
+    }
+    assertEquals(1, events.size());
+    assertEquals("node1", events.get(0).event.fromNode);
+    assertEquals("node2", events.get(0).event.toNode);
+    assertEquals(200, events.get(0).event.timestamp);
+  }
+}
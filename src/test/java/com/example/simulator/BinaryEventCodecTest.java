@@ -0,0 +1,90 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BinaryEventCodecTest {
+
+  @Test
+  public void testRoundTrip() {
+    BinaryEventCodec.Encoder encoder = new BinaryEventCodec.Encoder();
+    BinaryEventCodec.Decoder decoder = new BinaryEventCodec.Decoder();
+
+    encoder.encode(new MessageEvent("SENT", "node-1", "node-2", "hello", 1_700_000_000_000L), 10);
+    encoder.encode(new MessageEvent("REPORTER_STATS", "node-2", null, null, 1_700_000_000_005L), 11);
+    List<BinaryEventCodec.Event> events = decoder.decode(encoder.drain());
+    // an earlier timestamp in a later frame
+    encoder.encode(new MessageEvent("RECEIVED", "node-1", "node-2", "héllo", 1_699_999_999_990L), 12);
+    events.addAll(decoder.decode(encoder.drain()));
+    assertNull(encoder.drain());
+
+    assertEquals(3, events.size());
+    assertEquals(10, events.get(0).id);
+    assertEquals("SENT", events.get(0).event.type);
+    assertEquals("node-1", events.get(0).event.fromNode);
+    assertEquals("node-2", events.get(0).event.toNode);
+    assertEquals(1_700_000_000_000L, events.get(0).event.timestamp);
+    assertEquals(5, events.get(0).payloadBytes);
+    assertNull(events.get(1).event.toNode);
+    assertEquals(-1, events.get(1).payloadBytes);
+    assertEquals(12, events.get(2).id);
+    assertEquals("RECEIVED", events.get(2).event.type);
+    assertEquals(1_699_999_999_990L, events.get(2).event.timestamp);
+    assertEquals(6, events.get(2).payloadBytes);
+  }
+
+  @Test
+  public void testMuchSmallerThanJson() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    BinaryEventCodec.Encoder encoder = new BinaryEventCodec.Encoder();
+    long jsonBytes = 0;
+    for (int i = 0; i < 1000; i++) {
+      MessageEvent event = new MessageEvent(i % 2 == 0 ? "SENT" : "RECEIVED", "node-" + (i % 10),
+          "node-" + ((i + 1) % 10), "{\"term\":3,\"index\":" + i + "}", 1_700_000_000_000L + i);
+      jsonBytes += objectMapper.writeValueAsBytes(event).length;
+      encoder.encode(event, i + 1);
+    }
+    int binaryBytes = encoder.drain().length;
+    assertTrue("binary " + binaryBytes + " vs json " + jsonBytes, binaryBytes * 10 < jsonBytes);
+  }
+
+  @Test
+  public void testNewEncoderResetsDecoder() {
+    BinaryEventCodec.Decoder decoder = new BinaryEventCodec.Decoder();
+    BinaryEventCodec.Encoder first = new BinaryEventCodec.Encoder();
+    first.encode(new MessageEvent("SENT", "a", "b", "m", 100), 1);
+    decoder.decode(first.drain());
+    // this frame is lost, so the server starts over with a fresh encoder
+    first.encode(new MessageEvent("SENT", "c", "d", "m", 200), 2);
+    first.drain();
+
+    BinaryEventCodec.Encoder second = new BinaryEventCodec.Encoder();
+    second.encode(new MessageEvent("DROPPED", "c", "d", "m", 300), 3);
+    List<BinaryEventCodec.Event> events = new ArrayList<>(decoder.decode(second.drain()));
+    assertEquals("DROPPED", events.get(0).event.type);
+    assertEquals("c", events.get(0).event.fromNode);
+    assertEquals(300, events.get(0).event.timestamp);
+    assertEquals(3, events.get(0).id);
+  }
+
+  @Test
+  public void testPayloadCache() {
+    PayloadCache cache = new PayloadCache(2);
+    long first = cache.put("one");
+    long second = cache.put("two");
+    assertEquals("two", cache.get(second));
+    cache.put("three");
+    assertNull(cache.get(first));
+
+    assertEquals("{\"type\":\"PAYLOAD\",\"id\":" + second + ",\"message\":\"two\"}",
+        cache.answer("{\"type\":\"PAYLOAD\",\"id\":" + second + "}"));
+    assertNull(cache.answer("{\"type\":\"SUBSCRIBE\"}"));
+  }
+}
@@ -1,36 +1,73 @@
 package com.example.simulator;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.async.ResultCallback;
 import com.github.dockerjava.api.command.ConnectToNetworkCmd;
 import com.github.dockerjava.api.command.CreateContainerCmd;
 import com.github.dockerjava.api.command.CreateContainerResponse;
 import com.github.dockerjava.api.command.CreateNetworkCmd;
 import com.github.dockerjava.api.command.CreateNetworkResponse;
+import com.github.dockerjava.api.command.CopyArchiveToContainerCmd;
+import com.github.dockerjava.api.command.DisconnectFromNetworkCmd;
+import com.github.dockerjava.api.command.ExecCreateCmd;
+import com.github.dockerjava.api.command.InspectContainerCmd;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.command.ExecCreateCmdResponse;
+import com.github.dockerjava.api.command.ExecStartCmd;
+import com.github.dockerjava.api.command.InfoCmd;
+import com.github.dockerjava.api.command.InspectImageCmd;
+import com.github.dockerjava.api.command.ListContainersCmd;
 import com.github.dockerjava.api.command.ListNetworksCmd;
 import com.github.dockerjava.api.command.PauseContainerCmd;
+import com.github.dockerjava.api.command.RemoveContainerCmd;
+import com.github.dockerjava.api.command.RemoveVolumeCmd;
+import com.github.dockerjava.api.command.RestartContainerCmd;
 import com.github.dockerjava.api.command.StartContainerCmd;
 import com.github.dockerjava.api.command.StopContainerCmd;
 import com.github.dockerjava.api.command.UnpauseContainerCmd;
-
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.api.model.Info;
+import com.example.model.NodeConfig;
+import com.example.model.ResourceProfile;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class DockerManagerTest {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Mock
   private DockerClient dockerClient;
 
+  @Mock
+  private InspectImageCmd inspectImageCmd;
+
   @Mock
   private CreateNetworkCmd createNetworkCmd;
 
@@ -61,6 +98,15 @@ public class DockerManagerTest {
   @Mock
   private StopContainerCmd stopContainerCmd;
 
+  @Mock
+  private RestartContainerCmd restartContainerCmd;
+
+  @Mock
+  private RemoveContainerCmd removeContainerCmd;
+
+  @Mock
+  private RemoveVolumeCmd removeVolumeCmd;
+
   private DockerManager dockerManager;
 
   @Before
@@ -89,6 +135,7 @@ public class DockerManagerTest {
     when(createContainerCmd.withName(anyString())).thenReturn(createContainerCmd);
     when(createContainerCmd.withEnv(anyList())).thenReturn(createContainerCmd);
     when(createContainerCmd.withHostName(anyString())).thenReturn(createContainerCmd);
+    when(createContainerCmd.withHostConfig(any())).thenReturn(createContainerCmd);
     when(createContainerCmd.exec()).thenReturn(createContainerResponse);
     when(createContainerResponse.getId()).thenReturn("container-123");
 
@@ -101,6 +148,15 @@ public class DockerManagerTest {
 
     // Mock container stop
     when(dockerClient.stopContainerCmd(anyString())).thenReturn(stopContainerCmd);
+    when(stopContainerCmd.withTimeout(anyInt())).thenReturn(stopContainerCmd);
+
+    // Mock container and volume removal
+    when(dockerClient.removeContainerCmd(anyString())).thenReturn(removeContainerCmd);
+    when(removeContainerCmd.withForce(anyBoolean())).thenReturn(removeContainerCmd);
+    when(dockerClient.removeVolumeCmd(anyString())).thenReturn(removeVolumeCmd);
+
+    // Mock container restart
+    when(dockerClient.restartContainerCmd(anyString())).thenReturn(restartContainerCmd);
 
     // Create DockerManager with mocked client
     dockerManager = new DockerManager(dockerClient);
@@ -129,6 +185,226 @@ public class DockerManagerTest {
     verify(createContainerCmd).withName("test-node");
     verify(createContainerCmd).withHostName("test-node");
     verify(startContainerCmd).exec();
+
+    // the network is attached at create time
+    ArgumentCaptor<HostConfig> hostConfig = ArgumentCaptor.forClass(HostConfig.class);
+    verify(createContainerCmd).withHostConfig(hostConfig.capture());
+    assertEquals("simulator-network", hostConfig.getValue().getNetworkMode());
+    verify(dockerClient, never()).connectToNetworkCmd();
+  }
+
+  @Test
+  public void testCreateAndCleanupNodeContainersInParallel() {
+    Map<String, NodeConfig> nodes = new LinkedHashMap<>();
+    for (int i = 1; i <= 20; i++) {
+      nodes.put("node" + i, new NodeConfig("node" + i, "test-program", new ArrayList<>()));
+    }
+    dockerManager.setParallelism(4);
+
+    Map<String, String> containerIds = dockerManager.createNodeContainers(nodes);
+    assertEquals(new ArrayList<>(nodes.keySet()), new ArrayList<>(containerIds.keySet()));
+    verify(startContainerCmd, times(20)).exec();
+
+    dockerManager.cleanupContainers();
+    verify(stopContainerCmd, times(20)).withTimeout(DockerManager.STOP_TIMEOUT_SECONDS);
+    verify(removeContainerCmd, times(20)).exec();
+    verify(removeVolumeCmd, times(20)).exec();
+  }
+
+  @Test
+  public void testCreateNodeContainersReportsFailedNodes() {
+    Map<String, NodeConfig> nodes = new LinkedHashMap<>();
+    nodes.put("node1", new NodeConfig("node1", "test-program", new ArrayList<>()));
+    nodes.put("node2", new NodeConfig("node2", "test-program", new ArrayList<>()));
+    when(createContainerCmd.withName("node2")).thenThrow(new IllegalStateException("name in use"));
+
+    try {
+      dockerManager.createNodeContainers(nodes);
+      fail("Expected the failed node to be reported");
+    } catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("[node2]"));
+    }
+    // the other node was started regardless
+    verify(startContainerCmd).exec();
+  }
+
+  @Test
+  public void testCachedNodeImageIsNotRebuilt() throws Exception {
+    Path jar = folder.newFile("node-runner.jar").toPath();
+    Path dockerfile = folder.newFile("Dockerfile.node").toPath();
+    Files.write(jar, new byte[] { 1, 2, 3 });
+    String tag = NodeImage.tagFor(jar, dockerfile);
+    when(dockerClient.inspectImageCmd(tag)).thenReturn(inspectImageCmd);
+
+    assertEquals(tag, dockerManager.ensureNodeImage(jar, dockerfile));
+    verify(dockerClient, never()).buildImageCmd(any(File.class));
+
+    dockerManager.createNodeContainer("test-node", "test-program", new ArrayList<>());
+    verify(dockerClient).createContainerCmd(tag);
+  }
+
+  private void mockPool() {
+    Container pooled = mock(Container.class);
+    when(pooled.getId()).thenReturn("pooled-1");
+    when(pooled.getNames()).thenReturn(new String[] { "/distro-pool-1" });
+    when(pooled.getImage()).thenReturn(NodeImage.LATEST);
+    when(pooled.getState()).thenReturn("running");
+    ListContainersCmd listContainersCmd = mock(ListContainersCmd.class, RETURNS_SELF);
+    when(listContainersCmd.exec()).thenReturn(Arrays.asList(pooled));
+    when(dockerClient.listContainersCmd()).thenReturn(listContainersCmd);
+
+    DisconnectFromNetworkCmd disconnectCmd = mock(DisconnectFromNetworkCmd.class, RETURNS_SELF);
+    when(dockerClient.disconnectFromNetworkCmd()).thenReturn(disconnectCmd);
+    when(connectToNetworkCmd.withContainerNetwork(any())).thenReturn(connectToNetworkCmd);
+    CopyArchiveToContainerCmd copyCmd = mock(CopyArchiveToContainerCmd.class, RETURNS_SELF);
+    when(dockerClient.copyArchiveToContainerCmd("pooled-1")).thenReturn(copyCmd);
+  }
+
+  /*
+   * The state the pooled container is in when the simulation ends and the
+   * wiping command run in it
+   */
+  private ExecCreateCmd mockReset(boolean running) {
+    InspectContainerResponse.ContainerState state = mock(InspectContainerResponse.ContainerState.class);
+    when(state.getRunning()).thenReturn(running);
+    when(state.getPaused()).thenReturn(false);
+    InspectContainerResponse inspectResponse = mock(InspectContainerResponse.class);
+    when(inspectResponse.getState()).thenReturn(state);
+    InspectContainerCmd inspectContainerCmd = mock(InspectContainerCmd.class);
+    when(inspectContainerCmd.exec()).thenReturn(inspectResponse);
+    when(dockerClient.inspectContainerCmd("pooled-1")).thenReturn(inspectContainerCmd);
+
+    ExecCreateCmd execCreateCmd = mock(ExecCreateCmd.class, RETURNS_SELF);
+    ExecCreateCmdResponse execCreateResponse = mock(ExecCreateCmdResponse.class);
+    when(execCreateResponse.getId()).thenReturn("exec-1");
+    when(execCreateCmd.exec()).thenReturn(execCreateResponse);
+    when(dockerClient.execCreateCmd("pooled-1")).thenReturn(execCreateCmd);
+    ExecStartCmd execStartCmd = mock(ExecStartCmd.class, RETURNS_SELF);
+    when(execStartCmd.exec(any())).thenAnswer(invocation -> {
+      ResultCallback.Adapter<?> callback = invocation.getArgument(0);
+      callback.onComplete();
+      return callback;
+    });
+    when(dockerClient.execStartCmd("exec-1")).thenReturn(execStartCmd);
+    when(restartContainerCmd.withTimeout(anyInt())).thenReturn(restartContainerCmd);
+    return execCreateCmd;
+  }
+
+  /*
+   * A pool found running, as left by an earlier run, is wiped before use
+   */
+  private void adoptPool() {
+    mockPool();
+    mockReset(true);
+    dockerManager.ensurePool(1);
+    clearInvocations(dockerClient, restartContainerCmd);
+  }
+
+  @Test
+  public void testAdoptedPooledContainerIsWipedFirst() throws Exception {
+    mockPool();
+    ExecCreateCmd wipe = mockReset(true);
+
+    dockerManager.ensurePool(1);
+    // it may still run the node of a crashed run
+    verify(wipe).exec();
+    verify(dockerClient).restartContainerCmd("pooled-1");
+    verify(createContainerCmd, never()).exec();
+
+    // once this manager has reset it, it is known to be idle
+    dockerManager.ensurePool(1);
+    verify(wipe).exec();
+    assertEquals("pooled-1", dockerManager.createNodeContainer("node1", "test-program", Arrays.asList("node2")));
+  }
+
+  @Test
+  public void testPooledContainerIsClaimedAndReset() throws Exception {
+    adoptPool();
+    assertEquals("pooled-1", dockerManager.createNodeContainer("node1", "test-program", Arrays.asList("node2")));
+    verify(dockerClient.copyArchiveToContainerCmd("pooled-1")).exec();
+    verify(createContainerCmd, never()).exec();
+    // a second node finds the pool empty and gets its own container
+    assertEquals("container-123", dockerManager.createNodeContainer("node2", "test-program", Arrays.asList("node1")));
+
+    mockReset(true);
+    dockerManager.cleanupContainers();
+    // the pooled container is reset for the next simulation, the other removed
+    verify(dockerClient).restartContainerCmd("pooled-1");
+    verify(dockerClient, never()).removeContainerCmd("pooled-1");
+    verify(removeContainerCmd).exec();
+  }
+
+  @Test
+  public void testStoppedPooledContainerIsStartedAndWiped() throws Exception {
+    adoptPool();
+    dockerManager.createNodeContainer("node1", "test-program", Arrays.asList("node2"));
+    dockerManager.stopNode("node1");
+
+    ExecCreateCmd wipe = mockReset(false);
+    dockerManager.cleanupContainers();
+    InOrder inOrder = inOrder(dockerClient);
+    inOrder.verify(dockerClient).startContainerCmd("pooled-1");
+    inOrder.verify(dockerClient).execCreateCmd("pooled-1");
+    verify(wipe).exec();
+    verify(dockerClient).restartContainerCmd("pooled-1");
+    verify(dockerClient, never()).removeContainerCmd("pooled-1");
+  }
+
+  @Test
+  public void testFailedResetRemovesPooledVolume() throws Exception {
+    adoptPool();
+    dockerManager.createNodeContainer("node1", "test-program", Arrays.asList("node2"));
+
+    ExecCreateCmd wipe = mockReset(true);
+    when(wipe.exec()).thenThrow(new RuntimeException("container is not running"));
+    dockerManager.cleanupContainers();
+    // the next container in the slot must not find this simulation's data
+    verify(dockerClient).removeContainerCmd("pooled-1");
+    verify(dockerClient).removeVolumeCmd("distro-pool-1");
+  }
+
+  @Test
+  public void testNewPooledContainerGetsFreshVolume() {
+    ListContainersCmd listContainersCmd = mock(ListContainersCmd.class, RETURNS_SELF);
+    when(listContainersCmd.exec()).thenReturn(new ArrayList<>());
+    when(dockerClient.listContainersCmd()).thenReturn(listContainersCmd);
+    when(createContainerCmd.withLabels(any())).thenReturn(createContainerCmd);
+    when(createContainerCmd.withEnv(any(String[].class))).thenReturn(createContainerCmd);
+
+    dockerManager.ensurePool(1);
+    InOrder inOrder = inOrder(dockerClient, createContainerCmd);
+    inOrder.verify(dockerClient).removeVolumeCmd("distro-pool-1");
+    inOrder.verify(createContainerCmd).exec();
+  }
+
+  @Test
+  public void testResourceLimitsAreApplied() {
+    Info info = mock(Info.class);
+    when(info.getNCPU()).thenReturn(4);
+    InfoCmd infoCmd = mock(InfoCmd.class);
+    when(infoCmd.exec()).thenReturn(info);
+    when(dockerClient.infoCmd()).thenReturn(infoCmd);
+    ResourceProfile resources = ResourceProfile.fromMap(Map.of("memory", "256m", "cpus", 1.5, "cpuset", "auto"));
+
+    List<String> cpusets = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      dockerManager.createNodeContainer("node" + i, "test-program", new ArrayList<>(), i + 1, resources);
+    }
+    ArgumentCaptor<HostConfig> hostConfig = ArgumentCaptor.forClass(HostConfig.class);
+    verify(createContainerCmd, times(3)).withHostConfig(hostConfig.capture());
+    for (HostConfig config : hostConfig.getAllValues()) {
+      assertEquals(256L * 1024 * 1024, config.getMemory().longValue());
+      assertEquals(1_500_000_000L, config.getNanoCPUs().longValue());
+      cpusets.add(config.getCpusetCpus());
+    }
+    // two cores each, spread over the host's four
+    assertEquals(Arrays.asList("0-1", "2-3", "0-1"), cpusets);
+  }
+
+  @Test
+  public void testCloseReleasesDockerClient() throws Exception {
+    dockerManager.close();
+    verify(dockerClient).close();
   }
 
   @Test
@@ -154,4 +430,15 @@ public class DockerManagerTest {
     dockerManager.stopNode("test-node");
     verify(stopContainerCmd).exec();
   }
+
+  @Test
+  public void testRestartNode() {
+    // First create and stop a node
+    dockerManager.createNodeContainer("test-node", "test-program", new ArrayList<>());
+    dockerManager.stopNode("test-node");
+
+    // Restart the node
+    dockerManager.restartNode("test-node");
+    verify(restartContainerCmd).exec();
+  }
 }
@@ -0,0 +1,92 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.model.NodeConfig;
+
+public class DockerSimulatorTest {
+  private DockerManager dockerManager;
+  private NodeControlClient nodeControl;
+  private DockerSimulator simulator;
+
+  @Before
+  public void setUp() {
+    TopologyManager topologyManager = mock(TopologyManager.class);
+    Map<String, NodeConfig> nodes = new LinkedHashMap<>();
+    for (String nodeId : List.of("node1", "node2", "node3")) {
+      nodes.put(nodeId, mock(NodeConfig.class));
+    }
+    when(topologyManager.getNodes()).thenReturn(nodes);
+    dockerManager = mock(DockerManager.class);
+    nodeControl = mock(NodeControlClient.class);
+    when(nodeControl.send(anyMap())).thenReturn(Map.of());
+    simulator = new DockerSimulator(topologyManager, dockerManager, nodeControl);
+  }
+
+  @Test
+  public void testPausedNodeIsSkippedAndGetsFaultsOnResume() {
+    simulator.pauseNode("node2");
+
+    DockerSimulator.FaultResult result = simulator.partition(List.of(Set.of("node1")));
+
+    assertEquals(2, result.getApplied());
+    assertEquals(Set.of("node2"), result.skipped);
+    verify(nodeControl).send(Map.of(
+        "node1", List.of("unblock *", "block node2,node3"),
+        "node3", List.of("unblock *", "block node1")));
+
+    simulator.setDelay("node2", 50);
+    simulator.resumeNode("node2");
+
+    verify(nodeControl).send(Map.of("node2", List.of("reset", "unblock *", "block node1", "delay 50")));
+  }
+
+  @Test
+  public void testHealReplacesPartitionForPausedNode() {
+    simulator.stopNode("node3");
+    simulator.partition(List.of(Set.of("node1")));
+    simulator.heal();
+    simulator.restartNode("node3");
+
+    verify(nodeControl).send(Map.of("node3", List.of("reset", "unblock *")));
+  }
+
+  @Test
+  public void testResetForgetsFaultsOfPausedNode() {
+    simulator.pauseNode("node1");
+    simulator.holdDelivery("node1");
+    simulator.resetFaults();
+    reset(nodeControl);
+
+    simulator.resumeNode("node1");
+
+    verify(nodeControl, never()).send(anyMap());
+  }
+
+  @Test
+  public void testPartialFailureIsReportedNotThrown() {
+    when(nodeControl.send(anyMap())).thenReturn(Map.of("node2", "No reply within 5000ms"));
+
+    DockerSimulator.FaultResult result = simulator.heal();
+
+    assertEquals(2, result.getApplied());
+    assertEquals(Map.of("node2", "No reply within 5000ms"), result.failed);
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void testFailureOnEveryNodeThrows() {
+    when(nodeControl.send(anyMap())).thenReturn(Map.of("node1", "down"));
+
+    simulator.holdDelivery("node1");
+  }
+}
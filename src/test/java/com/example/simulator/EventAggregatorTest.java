@@ -0,0 +1,71 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class EventAggregatorTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  public void testCountsPerEdgeAndNode() throws Exception {
+    List<String> windows = new ArrayList<>();
+    EventAggregator aggregator = new EventAggregator(250, windows::add);
+
+    aggregator.add(new MessageEvent("SENT", "node-1", "node-2", "hello", 1));
+    aggregator.add(new MessageEvent("SENT", "node-1", "node-2", "hé", 2));
+    aggregator.add(new MessageEvent("RECEIVED", "node-1", "node-2", "hello", 3));
+    aggregator.add(new MessageEvent("DROPPED", "node-1", "node-2", "hé", 4));
+    aggregator.add(new MessageEvent("REPORTER_STATS", "node-1", null, "{}", 5));
+    aggregator.closeWindow();
+
+    assertEquals(1, windows.size());
+    JsonNode window = objectMapper.readTree(windows.get(0));
+    assertEquals("AGGREGATE", window.get("type").asText());
+    assertEquals(4, window.get("events").asLong());
+
+    JsonNode edge = window.get("edges").get(0);
+    assertEquals("node-1", edge.get("from").asText());
+    assertEquals("node-2", edge.get("to").asText());
+    assertEquals(2, edge.get("sent").asLong());
+    assertEquals(1, edge.get("received").asLong());
+    assertEquals(1, edge.get("dropped").asLong());
+    assertEquals(5 + 3, edge.get("bytes").asLong());
+
+    for (JsonNode node : window.get("nodes")) {
+      if (node.get("node").asText().equals("node-1")) {
+        assertEquals(2, node.get("sent").asLong());
+        assertEquals(1, node.get("dropped").asLong());
+      } else {
+        assertEquals("node-2", node.get("node").asText());
+        assertEquals(1, node.get("received").asLong());
+      }
+    }
+  }
+
+  @Test
+  public void testWindowsAreTumbling() throws Exception {
+    List<String> windows = new ArrayList<>();
+    EventAggregator aggregator = new EventAggregator(250, windows::add);
+
+    aggregator.add(new MessageEvent("SENT", "node-1", "node-2", "a", 1));
+    aggregator.closeWindow();
+    // nothing happened in this window, nothing is emitted
+    aggregator.closeWindow();
+    aggregator.add(new MessageEvent("SENT", "node-2", "node-1", "b", 2));
+    aggregator.closeWindow();
+
+    assertEquals(2, windows.size());
+    JsonNode second = objectMapper.readTree(windows.get(1));
+    assertEquals(1, second.get("edges").size());
+    assertEquals("node-2", second.get("edges").get(0).get("from").asText());
+  }
+}
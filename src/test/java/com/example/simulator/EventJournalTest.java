@@ -0,0 +1,96 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+public class EventJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRecordAndRead() throws Exception {
+    File file = new File(folder.getRoot(), "events.journal");
+
+    EventJournal journal = new EventJournal(file.toPath(), "node1");
+    journal.recordSent("node2", "ping".getBytes(StandardCharsets.UTF_8), 100, 100);
+    journal.recordReceived("node2", "pong".getBytes(StandardCharsets.UTF_8), 200, 200);
+    journal.close();
+
+    try (EventJournal.Reader reader = EventJournal.Reader.open(file.toPath())) {
+      List<MessageEvent> events = reader.readAll();
+      assertEquals(2, events.size());
+      assertEquals("SENT", events.get(0).type);
+      assertEquals("node1", events.get(0).fromNode);
+      assertEquals("node2", events.get(0).toNode);
+      assertEquals("ping", events.get(0).message);
+      assertEquals(100, events.get(0).timestamp);
+      assertEquals("RECEIVED", events.get(1).type);
+      assertEquals("node2", events.get(1).fromNode);
+      assertEquals("node1", events.get(1).toNode);
+      assertEquals("pong", events.get(1).message);
+      assertEquals(200, events.get(1).hlc);
+    }
+  }
+
+  @Test
+  public void testWrapAroundAndTail() throws Exception {
+    File file = new File(folder.getRoot(), "events.journal");
+    EventJournal journal = new EventJournal(file.toPath(), "node1", 8, 128);
+
+    try (EventJournal.Reader reader = EventJournal.Reader.open(file.toPath())) {
+      for (int i = 0; i < 5; i++) {
+        journal.recordSent("node2", ("m" + i).getBytes(StandardCharsets.UTF_8), i, i);
+      }
+      long next = reader.read(1, event -> {
+      });
+      assertEquals(6, next);
+
+      // the writer laps the reader, only the last 8 records are still there
+      for (int i = 5; i < 20; i++) {
+        journal.recordSent("node2", ("m" + i).getBytes(StandardCharsets.UTF_8), i, i);
+      }
+      StringBuilder seen = new StringBuilder();
+      next = reader.read(next, event -> seen.append(event.message).append(' '));
+      assertEquals(21, next);
+      assertEquals("m12 m13 m14 m15 m16 m17 m18 m19 ", seen.toString());
+      assertEquals(7, reader.getSkipped());
+    }
+    journal.close();
+  }
+
+  @Test
+  public void testTruncatesLargePayloadAndReopens() throws Exception {
+    File file = new File(folder.getRoot(), "events.journal");
+    byte[] large = new byte[1000];
+    Arrays.fill(large, (byte) 'x');
+
+    EventJournal journal = new EventJournal(file.toPath(), "node1", 16, 128);
+    journal.recordSent("node2", large, 1, 1, 7L << 40 | 1);
+    journal.close();
+
+    // a restarted node continues after its previous records
+    journal = new EventJournal(file.toPath(), "node1", 16, 128);
+    assertEquals(2, journal.getNextSeq());
+    journal.recordReceived("node3", "ok".getBytes(StandardCharsets.UTF_8), 2, 2);
+    journal.close();
+
+    try (EventJournal.Reader reader = EventJournal.Reader.open(file.toPath())) {
+      List<MessageEvent> events = reader.readAll();
+      assertEquals(2, events.size());
+      assertEquals(128 - 42 - 5 - 5, events.get(0).message.length());
+      assertEquals(7L << 40 | 1, events.get(0).messageId);
+      assertEquals("ok", events.get(1).message);
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.example.simulator.EventRingBuffer.OverflowPolicy;
+import com.example.simulator.MessageReporter.MessageEvent;
+
+public class EventRingBufferTest {
+
+  @Test
+  public void testDropOldest() {
+    EventRingBuffer buffer = new EventRingBuffer(3, OverflowPolicy.DROP_OLDEST, 1);
+    for (int i = 0; i < 5; i++) {
+      assertTrue(buffer.offer(event("SENT", i)));
+    }
+
+    assertEquals(3, buffer.size());
+    assertEquals(2, buffer.getShed());
+    assertEquals(List.of(2L, 3L, 4L), drainTimestamps(buffer));
+  }
+
+  @Test
+  public void testDropNewest() {
+    EventRingBuffer buffer = new EventRingBuffer(3, OverflowPolicy.DROP_NEWEST, 1);
+    for (int i = 0; i < 5; i++) {
+      buffer.offer(event("SENT", i));
+    }
+
+    assertEquals(2, buffer.getShed());
+    assertEquals(List.of(0L, 1L, 2L), drainTimestamps(buffer));
+  }
+
+  @Test
+  public void testSamplesPerTypeUnderPressure() {
+    EventRingBuffer buffer = new EventRingBuffer(100, OverflowPolicy.SAMPLE, 10);
+    // below half capacity everything is kept
+    for (int i = 0; i < 50; i++) {
+      buffer.offer(event("SENT", i));
+    }
+    assertEquals(0, buffer.getShed());
+
+    // then only 1 in 10 per type
+    for (int i = 0; i < 20; i++) {
+      buffer.offer(event("SENT", i));
+      buffer.offer(event("RECEIVED", i));
+    }
+    assertEquals(54, buffer.size());
+    assertEquals(36, buffer.getShed());
+  }
+
+  @Test
+  public void testDrainInBatches() {
+    EventRingBuffer buffer = new EventRingBuffer(4, OverflowPolicy.DROP_OLDEST, 1);
+    for (int i = 0; i < 6; i++) {
+      buffer.offer(event("SENT", i));
+    }
+
+    List<MessageEvent> out = new ArrayList<>();
+    assertEquals(3, buffer.drainTo(out, 3));
+    assertEquals(1, buffer.size());
+    buffer.offer(event("SENT", 6));
+    assertEquals(2, buffer.drainTo(out, 10));
+    assertEquals(0, buffer.size());
+    assertEquals(6, out.get(4).timestamp);
+  }
+
+  private static MessageEvent event(String type, long timestamp) {
+    return new MessageEvent(type, "node-0", "node-1", "payload", timestamp);
+  }
+
+  private static List<Long> drainTimestamps(EventRingBuffer buffer) {
+    List<MessageEvent> out = new ArrayList<>();
+    buffer.drainTo(out, Integer.MAX_VALUE);
+    List<Long> timestamps = new ArrayList<>();
+    for (MessageEvent event : out) {
+      timestamps.add(event.timestamp);
+    }
+    return timestamps;
+  }
+}
@@ -0,0 +1,100 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+public class EventStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testQueryPagesThroughRange() throws Exception {
+    try (EventStore store = new EventStore(folder.getRoot().toPath())) {
+      for (int i = 0; i < 1000; i++) {
+        store.append(new MessageEvent("SENT", "node" + (i % 4), "node" + ((i + 1) % 4), "m" + i, 1000 + i));
+      }
+
+      EventStore.Page page = store.query(1100, 1600, null, 0, 300);
+      assertEquals(300, page.events.size());
+      assertTrue(page.hasMore);
+      assertEquals("m100", page.events.get(0).message);
+
+      page = store.query(1100, 1600, null, page.cursor, 300);
+      assertEquals(200, page.events.size());
+      assertFalse(page.hasMore);
+      assertEquals("m400", page.events.get(0).message);
+      assertEquals("m599", page.events.get(199).message);
+    }
+  }
+
+  @Test
+  public void testQueryFiltersByNode() throws Exception {
+    try (EventStore store = new EventStore(folder.getRoot().toPath())) {
+      for (int i = 0; i < 600; i++) {
+        store.append(new MessageEvent("SENT", "node" + (i % 3), "node" + ((i + 1) % 3), "m" + i, i));
+      }
+
+      EventStore.Page page = store.query(0, Long.MAX_VALUE, "node0", 0, 1000);
+      // node0 sends every third message and receives every third message
+      assertEquals(400, page.events.size());
+      for (MessageEvent event : page.events) {
+        assertTrue("node0".equals(event.fromNode) || "node0".equals(event.toNode));
+      }
+    }
+  }
+
+  @Test
+  public void testReopenRecoversIndex() throws Exception {
+    try (EventStore store = new EventStore(folder.getRoot().toPath())) {
+      for (int i = 0; i < 10; i++) {
+        store.append(new MessageEvent("RECEIVED", "node1", "node2", "m" + i, 100 + i));
+      }
+    }
+
+    try (EventStore store = new EventStore(folder.getRoot().toPath())) {
+      assertEquals(11, store.getNextSeq());
+      store.append(new MessageEvent("RECEIVED", "node1", "node2", "m10", 110));
+      EventStore.Page page = store.query(105, 200, "node2", 0, 100);
+      assertEquals(6, page.events.size());
+      assertEquals("m5", page.events.get(0).message);
+      assertEquals("m10", page.events.get(5).message);
+    }
+  }
+
+  @Test
+  public void testRetentionDropsOldestSegments() throws Exception {
+    try (EventStore store = new EventStore(folder.getRoot().toPath(), 4096, 3)) {
+      for (int i = 0; i < 2000; i++) {
+        store.append(new MessageEvent("SENT", "node1", "node2", "message " + i, i));
+      }
+      assertEquals(3, store.getSegmentCount());
+
+      EventStore.Page page = store.query(0, Long.MAX_VALUE, null, 0, 10_000);
+      assertTrue(page.events.size() < 2000);
+      assertEquals("message 1999", page.events.get(page.events.size() - 1).message);
+    }
+  }
+
+  @Test
+  public void testReplayKeepsOrder() throws Exception {
+    try (EventStore store = new EventStore(folder.getRoot().toPath())) {
+      for (int i = 0; i < 5; i++) {
+        store.append(new MessageEvent("SENT", "node1", "node2", "m" + i, 1000 + i * 10));
+      }
+
+      List<String> played = new ArrayList<>();
+      long count = store.replay(0, Long.MAX_VALUE, null, 100, event -> played.add(event.message));
+      assertEquals(5, count);
+      assertEquals("[m0, m1, m2, m3, m4]", played.toString());
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+public class EventStreamTest {
+
+  @Test
+  public void testDeliversEventsInOrder() throws Exception {
+    List<MessageEvent> received = new CopyOnWriteArrayList<>();
+    EventStreamServer server = new EventStreamServer(0, received::add);
+    server.start();
+
+    EventStreamClient client = new EventStreamClient("node-0", "localhost", server.getPort(), 10000);
+    List<MessageEvent> batch = new ArrayList<>();
+    for (int i = 0; i < 2500; i++) {
+      batch.add(new MessageEvent("SENT", "node-0", "node-1", "message-" + i, i));
+    }
+    client.send(batch);
+
+    waitForEvents(received, 2500);
+    assertEquals("message-0", received.get(0).message);
+    assertEquals("node-1", received.get(2499).toNode);
+    assertEquals(2499, received.get(2499).timestamp);
+
+    client.close();
+    server.stop();
+  }
+
+  @Test
+  public void testResendsAfterMonitorRestart() throws Exception {
+    List<MessageEvent> received = new CopyOnWriteArrayList<>();
+    EventStreamServer server = new EventStreamServer(0, received::add);
+    server.start();
+    int port = server.getPort();
+
+    EventStreamClient client = new EventStreamClient("node-0", "localhost", port, 1000);
+    client.send(Arrays.asList(new MessageEvent("SENT", "node-0", "node-1", "first", 1)));
+    waitForEvents(received, 1);
+
+    // Monitor goes away, events sent meanwhile stay buffered on the node
+    server.stop();
+    Thread.sleep(100);
+    client.send(Arrays.asList(new MessageEvent("SENT", "node-0", "node-1", "second", 2)));
+    client.send(Arrays.asList(new MessageEvent("RECEIVED", "node-1", "node-0", "third", 3)));
+
+    EventStreamServer restarted = new EventStreamServer(port, received::add);
+    restarted.start();
+
+    // flushes without new events keep trying to reconnect
+    long deadline = System.currentTimeMillis() + 10000;
+    while (received.size() < 3 && System.currentTimeMillis() < deadline) {
+      client.send(new ArrayList<>());
+      Thread.sleep(50);
+    }
+    assertEquals(3, received.size());
+    assertEquals("second", received.get(1).message);
+    assertEquals("third", received.get(2).message);
+
+    client.close();
+    restarted.stop();
+  }
+
+  @Test
+  public void testForgetsSessionsOfRestartedNodes() throws Exception {
+    List<MessageEvent> received = new CopyOnWriteArrayList<>();
+    EventStreamServer server = new EventStreamServer(0, received::add);
+    server.start();
+
+    // every client is a new session, as after a node restart
+    for (int i = 0; i < 3; i++) {
+      EventStreamClient client = new EventStreamClient("node-0", "localhost", server.getPort(), 10000);
+      client.send(Arrays.asList(new MessageEvent("SENT", "node-0", "node-1", "run-" + i, i)));
+      waitForEvents(received, i + 1);
+      client.close();
+    }
+    EventStreamClient other = new EventStreamClient("node-1", "localhost", server.getPort(), 10000);
+    other.send(Arrays.asList(new MessageEvent("SENT", "node-1", "node-0", "other", 3)));
+    waitForEvents(received, 4);
+    assertEquals(2, server.getSessionCount());
+
+    server.clear();
+    assertEquals(0, server.getSessionCount());
+
+    other.close();
+    server.stop();
+  }
+
+  private void waitForEvents(List<MessageEvent> received, int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (received.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, received.size());
+  }
+}
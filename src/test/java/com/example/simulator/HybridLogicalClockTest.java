@@ -0,0 +1,76 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+public class HybridLogicalClockTest {
+
+  @Test
+  public void testTickIsMonotonic() {
+    AtomicLong wallClock = new AtomicLong(1000);
+    HybridLogicalClock clock = new HybridLogicalClock(wallClock::get);
+
+    long first = clock.tick();
+    long second = clock.tick();
+    assertEquals(1000, HybridLogicalClock.physicalMillis(first));
+    assertEquals(first + 1, second);
+    assertEquals(1, HybridLogicalClock.logical(second));
+
+    // the wall clock going backwards does not move the clock back
+    wallClock.set(900);
+    assertTrue(clock.tick() > second);
+
+    wallClock.set(2000);
+    long later = clock.tick();
+    assertEquals(2000, HybridLogicalClock.physicalMillis(later));
+    assertEquals(0, HybridLogicalClock.logical(later));
+  }
+
+  @Test
+  public void testReceiveOrdersAfterSendDespiteSkew() {
+    // the receiver's clock is 500ms behind the sender's
+    HybridLogicalClock sender = new HybridLogicalClock(() -> 5000);
+    HybridLogicalClock receiver = new HybridLogicalClock(() -> 4500);
+
+    long sent = sender.tick();
+    long received = receiver.update(sent);
+    assertTrue(received > sent);
+    assertEquals(5000, HybridLogicalClock.physicalMillis(received));
+
+    // and the receiver's later events stay after it
+    assertTrue(receiver.tick() > received);
+  }
+
+  @Test
+  public void testCausalOrderBufferReordersReports() throws Exception {
+    List<MessageEvent> released = new CopyOnWriteArrayList<>();
+    CausalOrderBuffer buffer = new CausalOrderBuffer(50, released::add);
+    buffer.start();
+
+    HybridLogicalClock sender = new HybridLogicalClock(() -> 5000);
+    HybridLogicalClock receiver = new HybridLogicalClock(() -> 4000);
+    long sent = sender.tick();
+    long received = receiver.update(sent);
+
+    // the receiving node reports first
+    buffer.offer(new MessageEvent("RECEIVED", "node-1", "node-2", "m", 4000, received));
+    buffer.offer(new MessageEvent("SENT", "node-1", "node-2", "m", 5000, sent));
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (released.size() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    buffer.stop();
+
+    assertEquals(2, released.size());
+    assertEquals("SENT", released.get(0).type);
+    assertEquals("RECEIVED", released.get(1).type);
+  }
+}
@@ -0,0 +1,66 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+public class IngestDispatcherTest {
+
+  @Test
+  public void testDispatchesInOrder() throws Exception {
+    List<String> handled = new CopyOnWriteArrayList<>();
+    IngestDispatcher dispatcher = new IngestDispatcher(100,
+        body -> handled.add(new String(body, StandardCharsets.UTF_8)));
+    dispatcher.start();
+
+    for (int i = 0; i < 50; i++) {
+      assertTrue(dispatcher.offer(("m" + i).getBytes(StandardCharsets.UTF_8)));
+    }
+    // stopping drains what was already queued
+    dispatcher.stop();
+
+    assertEquals(50, handled.size());
+    assertEquals("m0", handled.get(0));
+    assertEquals("m49", handled.get(49));
+    assertEquals(0, dispatcher.size());
+  }
+
+  @Test
+  public void testRejectsWhenFull() throws Exception {
+    List<byte[]> handled = new CopyOnWriteArrayList<>();
+    IngestDispatcher dispatcher = new IngestDispatcher(2, handled::add);
+
+    // not started, so nothing is taken off the queue
+    assertTrue(dispatcher.offer(new byte[1]));
+    assertTrue(dispatcher.offer(new byte[1]));
+    assertFalse(dispatcher.offer(new byte[1]));
+    assertEquals(2, dispatcher.size());
+
+    dispatcher.start();
+    dispatcher.stop();
+    assertEquals(2, handled.size());
+    assertEquals(0, dispatcher.size());
+  }
+
+  @Test
+  public void testRejectsWhenQueuedBytesAreFull() throws Exception {
+    List<byte[]> handled = new CopyOnWriteArrayList<>();
+    IngestDispatcher dispatcher = new IngestDispatcher(100, 1000, handled::add);
+
+    // far below the entry count, but the bodies fill the byte budget
+    assertTrue(dispatcher.offer(new byte[600]));
+    assertFalse(dispatcher.offer(new byte[600]));
+    assertTrue(dispatcher.offer(new byte[400]));
+    assertEquals(2, dispatcher.size());
+    assertEquals(1000, dispatcher.queuedBytes());
+
+    dispatcher.start();
+    dispatcher.stop();
+    assertEquals(2, handled.size());
+    assertEquals(0, dispatcher.queuedBytes());
+  }
+}
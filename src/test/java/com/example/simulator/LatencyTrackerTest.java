@@ -0,0 +1,84 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class LatencyTrackerTest {
+
+  private static MessageEvent event(String type, String from, String to, long timestamp, long messageId) {
+    return new MessageEvent(type, from, to, "m", timestamp, 0, messageId);
+  }
+
+  @Test
+  public void testPairsSentAndReceivedInAnyOrder() throws Exception {
+    LatencyTracker tracker = new LatencyTracker(LatencyTracker.DEFAULT_LOST_AFTER_MS, 100);
+    for (int i = 1; i <= 10; i++) {
+      tracker.add(event("SENT", "node1", "node2", 1000 + i, i));
+      tracker.add(event("RECEIVED", "node1", "node2", 1000 + i + 10 * i, i));
+    }
+    // the receiver's reporter can be ahead of the sender's
+    tracker.add(event("RECEIVED", "node2", "node1", 2050, 11));
+    tracker.add(event("SENT", "node2", "node1", 2000, 11));
+    // events without an id are not paired
+    tracker.add(event("SENT", "node2", "node1", 2000, 0));
+    assertEquals(0, tracker.getPendingCount());
+
+    JsonNode latency = new ObjectMapper().readTree(tracker.toJson());
+    assertEquals("LATENCY", latency.get("type").asText());
+    JsonNode edges = latency.get("edges");
+    assertEquals(2, edges.size());
+
+    JsonNode edge = edges.get(0);
+    assertEquals("node1", edge.get("from").asText());
+    assertEquals("node2", edge.get("to").asText());
+    assertEquals(10, edge.get("delivered").asLong());
+    // the histogram is accurate to about 3%
+    assertEquals(50, edge.get("latencyMs").get("p50").asLong(), 2);
+    assertEquals(100, edge.get("latencyMs").get("max").asLong(), 3);
+
+    assertEquals(50, edges.get(1).get("latencyMs").get("p99").asLong(), 2);
+  }
+
+  @Test
+  public void testCountsDroppedAndLostMessages() throws Exception {
+    LatencyTracker tracker = new LatencyTracker(1000, 100);
+    tracker.add(event("SENT", "node1", "node2", 1000, 1));
+    tracker.add(event("DROPPED", "node1", "node2", 1001, 1));
+    tracker.add(event("SENT", "node1", "node2", 1002, 2));
+    // a drop on send is reported before the send, with the same clock stamp
+    tracker.add(event("DROPPED", "node1", "node2", 1003, 3));
+    tracker.add(event("SENT", "node1", "node2", 1003, 3));
+    assertEquals(1, tracker.getPendingCount());
+
+    tracker.expire(System.currentTimeMillis());
+    assertEquals(1, tracker.getPendingCount());
+    tracker.expire(System.currentTimeMillis() + 1000);
+    assertEquals(0, tracker.getPendingCount());
+
+    JsonNode latency = new ObjectMapper().readTree(tracker.toJson());
+    JsonNode edge = latency.get("edges").get(0);
+    assertEquals(3, edge.get("sent").asLong());
+    assertEquals(0, edge.get("delivered").asLong());
+    assertEquals(2, edge.get("dropped").asLong());
+    assertEquals(1, edge.get("lost").asLong());
+    assertEquals(1, latency.get("recentlyLost").size());
+    assertEquals(2, latency.get("recentlyLost").get(0).get("messageId").asLong());
+  }
+
+  @Test
+  public void testPendingMessagesAreBounded() throws Exception {
+    LatencyTracker tracker = new LatencyTracker(LatencyTracker.DEFAULT_LOST_AFTER_MS, 3);
+    for (int i = 1; i <= 5; i++) {
+      tracker.add(event("SENT", "node1", "node2", i, i));
+    }
+    assertEquals(3, tracker.getPendingCount());
+
+    JsonNode edge = new ObjectMapper().readTree(tracker.toJson()).get("edges").get(0);
+    assertEquals(2, edge.get("lost").asLong());
+  }
+}
@@ -0,0 +1,42 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MessageIdSequenceTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRestartContinuesAfterUsedIds() throws Exception {
+    Path file = folder.getRoot().toPath().resolve(MessageIdSequence.FILE_NAME);
+    MessageIdSequence first = new MessageIdSequence(3, file);
+    long last = 0;
+    // crosses into a second reserved block
+    for (long i = 0; i < MessageIdSequence.BLOCK_SIZE + 10; i++) {
+      last = first.next();
+    }
+    assertEquals(3, last >>> MessageIdSequence.SEQ_BITS);
+
+    // the restarted node has no idea how far its previous process got
+    MessageIdSequence restarted = new MessageIdSequence(3, file);
+    assertTrue(restarted.next() > last);
+  }
+
+  @Test
+  public void testSequenceNeverReachesNodeIndex() throws Exception {
+    // the clock seed leaves half of the sequence as headroom
+    long latestSeed = MessageIdSequence.clockSeed(Long.MAX_VALUE);
+    assertTrue(latestSeed < 1L << (MessageIdSequence.SEQ_BITS - 1));
+
+    MessageIdSequence sequence = new MessageIdSequence(5, null);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(5, sequence.next() >>> MessageIdSequence.SEQ_BITS);
+    }
+  }
+}
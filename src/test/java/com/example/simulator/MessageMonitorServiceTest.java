@@ -0,0 +1,73 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageMonitorServiceTest {
+  private final HttpClient client = HttpClient.newHttpClient();
+  private MessageMonitorService service;
+
+  @Before
+  public void setUp() throws Exception {
+    service = new MessageMonitorService(0, 0, 0);
+    service.setMaxBodyBytes(1024);
+    service.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    service.stop();
+  }
+
+  private HttpResponse<String> post(String path, HttpRequest.BodyPublisher body) throws Exception {
+    HttpRequest request = HttpRequest.newBuilder()
+        .uri(URI.create("http://localhost:" + service.getHttpPort() + path))
+        .header("Content-Type", "application/json")
+        .POST(body)
+        .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString());
+  }
+
+  private String state() throws Exception {
+    HttpRequest request = HttpRequest.newBuilder()
+        .uri(URI.create("http://localhost:" + service.getHttpPort() + "/state"))
+        .build();
+    return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+  }
+
+  @Test
+  public void testBatchIsQueuedAndApplied() throws Exception {
+    String batch = "[{\"type\":\"SENT\",\"fromNode\":\"node1\",\"toNode\":\"node2\",\"message\":\"hi\","
+        + "\"timestamp\":1,\"hlc\":1,\"messageId\":7}]";
+    assertEquals(202, post("/messages", HttpRequest.BodyPublishers.ofString(batch)).statusCode());
+
+    // released by the causal order buffer after its hold time
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!state().contains("\"events\":1") && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+    }
+    assertTrue(state().contains("\"events\":1"));
+    // a malformed batch is dropped by the dispatcher, not by the Jetty thread
+    assertEquals(202, post("/messages", HttpRequest.BodyPublishers.ofString("not json")).statusCode());
+  }
+
+  @Test
+  public void testOversizedBodiesAreRejected() throws Exception {
+    String large = "[" + "\"x\",".repeat(600) + "\"x\"]";
+    assertEquals(413, post("/messages", HttpRequest.BodyPublishers.ofString(large)).statusCode());
+    assertEquals(413, post("/message", HttpRequest.BodyPublishers.ofString(large)).statusCode());
+
+    // without a Content-Length the limit applies while reading
+    HttpRequest.BodyPublisher chunked = HttpRequest.BodyPublishers.ofInputStream(
+        () -> new java.io.ByteArrayInputStream(large.getBytes()));
+    assertEquals(413, post("/messages", chunked).statusCode());
+  }
+}
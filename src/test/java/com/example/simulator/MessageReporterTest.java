@@ -0,0 +1,116 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+public class MessageReporterTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final List<JsonNode> batches = new CopyOnWriteArrayList<>();
+  private final List<JsonNode> events = new CopyOnWriteArrayList<>();
+  private final List<JsonNode> stats = new CopyOnWriteArrayList<>();
+  private HttpServer monitor;
+
+  @Before
+  public void setup() throws Exception {
+    // Stand-in for the monitor's batch endpoint
+    monitor = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    monitor.createContext("/messages", exchange -> {
+      JsonNode batch = objectMapper.readTree(exchange.getRequestBody());
+      batches.add(batch);
+      for (JsonNode event : batch) {
+        if ("REPORTER_STATS".equals(event.get("type").asText())) {
+          stats.add(event);
+        } else {
+          events.add(event);
+        }
+      }
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    monitor.start();
+  }
+
+  @After
+  public void teardown() {
+    monitor.stop(0);
+  }
+
+  @Test
+  public void testFlushesFullBatch() throws Exception {
+    MessageReporter reporter = createReporter(3, 60_000);
+
+    reporter.reportMessageSent("node-1", "a".getBytes(StandardCharsets.UTF_8), 1);
+    reporter.reportMessageSent("node-2", "b".getBytes(StandardCharsets.UTF_8), 2);
+    reporter.reportMessageReceived("node-1", "c".getBytes(StandardCharsets.UTF_8), 3);
+
+    waitForEvents(3);
+    assertEquals("SENT", events.get(0).get("type").asText());
+    assertEquals("node-2", events.get(1).get("toNode").asText());
+    assertEquals("RECEIVED", events.get(2).get("type").asText());
+    assertEquals("node-0", events.get(2).get("toNode").asText());
+
+    // counted once the monitor has answered
+    long deadline = System.currentTimeMillis() + 5000;
+    while (reporter.getReportedEvents() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(3, reporter.getReportedEvents());
+
+    reporter.shutdown();
+  }
+
+  @Test
+  public void testFlushesPartialBatchOnInterval() throws Exception {
+    MessageReporter reporter = createReporter(100, 20);
+
+    reporter.reportMessageSent("node-1", "a".getBytes(StandardCharsets.UTF_8), 1);
+
+    waitForEvents(1);
+    assertEquals("a", events.get(0).get("message").asText());
+
+    reporter.shutdown();
+  }
+
+  @Test
+  public void testReportsStats() throws Exception {
+    MessageReporter reporter = createReporter(100, 20);
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (stats.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertFalse(stats.isEmpty());
+    JsonNode counters = objectMapper.readTree(stats.get(0).get("message").asText());
+    assertEquals(0, counters.get("shed").asLong());
+    assertEquals(16, counters.get("capacity").asInt());
+
+    reporter.shutdown();
+  }
+
+  private MessageReporter createReporter(int batchSize, long flushIntervalMs) {
+    EventRingBuffer buffer = new EventRingBuffer(16, EventRingBuffer.OverflowPolicy.DROP_OLDEST, 1);
+    return new MessageReporter("node-0", "localhost", String.valueOf(monitor.getAddress().getPort()), buffer,
+        batchSize, flushIntervalMs);
+  }
+
+  private void waitForEvents(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (events.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, events.size());
+  }
+}
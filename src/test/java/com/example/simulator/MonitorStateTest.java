@@ -0,0 +1,52 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MonitorStateTest {
+
+  @Test
+  public void testSnapshotCompactsEvents() throws Exception {
+    MonitorState state = new MonitorState();
+    for (int i = 0; i < 10; i++) {
+      state.apply(new MessageEvent("SENT", "node1", "node2", "m" + i, i));
+      state.apply(new MessageEvent("RECEIVED", "node1", "node2", "m" + i, i));
+    }
+    state.apply(new MessageEvent("DROPPED", "node2", "node1", "x", 20));
+    state.apply(new MessageEvent("REPORTER_STATS", "node1", null, "{\"reported\":20,\"shed\":0}", 21));
+    state.setNodeStatus("node2", "PAUSED");
+
+    JsonNode snapshot = new ObjectMapper().readTree(state.toSnapshot());
+    assertEquals("SNAPSHOT", snapshot.get("type").asText());
+    assertEquals(22, snapshot.get("events").asLong());
+
+    JsonNode node1 = snapshot.get("nodes").get("node1");
+    assertEquals(10, node1.get("sent").asLong());
+    assertEquals("REPORTER_STATS", node1.get("lastEvent").get("type").asText());
+    assertEquals("m9", node1.get("latest").get("SENT").get("message").asText());
+    assertEquals("RUNNING", node1.get("status").asText());
+
+    JsonNode node2 = snapshot.get("nodes").get("node2");
+    assertEquals(10, node2.get("received").asLong());
+    assertEquals(1, node2.get("dropped").asLong());
+    assertEquals("PAUSED", node2.get("status").asText());
+
+    JsonNode edges = snapshot.get("edges");
+    assertEquals(2, edges.size());
+    assertEquals("node1", edges.get(0).get("from").asText());
+    assertEquals(10, edges.get(0).get("sent").asLong());
+    assertEquals(10, edges.get(0).get("received").asLong());
+    assertEquals(20, edges.get(0).get("bytes").asLong());
+    assertEquals(1, edges.get(1).get("dropped").asLong());
+
+    assertEquals("x", snapshot.get("latest").get("DROPPED").get("message").asText());
+
+    state.clear();
+    assertEquals(0, state.getEventCount());
+  }
+}
@@ -0,0 +1,134 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NodeControlTest {
+  private LinkFaults faults;
+  private NodeControl control;
+  private NodeControlClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    faults = new LinkFaults(0.1, 50);
+    control = new NodeControl("node1", faults);
+    control.start(0);
+    client = new NodeControlClient(nodeId -> "node1".equals(nodeId) ? "localhost" : null, control.getPort());
+  }
+
+  @After
+  public void tearDown() {
+    client.close();
+    control.stop();
+  }
+
+  @Test
+  public void testBatchIsApplied() {
+    Map<String, String> failures = client.send(Map.of("node1",
+        List.of("block node2,node3", "drop 0.5 node4", "delay 200", "unblock node3")));
+
+    assertTrue(failures.isEmpty());
+    assertTrue(faults.isBlocked("node2"));
+    assertFalse(faults.isBlocked("node3"));
+    assertTrue(faults.shouldDrop("node2"));
+    assertEquals(200, faults.getDelayMs());
+    assertEquals("OK blocked=[node2] drop=0.1 peerDrop={node4=0.5} delay=200 held=false",
+        control.execute("status"));
+
+    assertTrue(client.send(Map.of("node1", List.of("reset"))).isEmpty());
+    assertFalse(faults.isBlocked("node2"));
+    assertEquals(50, faults.getDelayMs());
+  }
+
+  @Test
+  public void testErrorsAreReportedPerNode() {
+    Map<String, String> failures = client.send(Map.of(
+        "node1", List.of("drop 2", "delay 10"),
+        "node9", List.of("heal")));
+
+    assertEquals("ERR Drop rate should be between 0 and 1", failures.get("node1"));
+    assertEquals("No address for node node9", failures.get("node9"));
+    // the commands after a failed one still apply
+    assertEquals(10, faults.getDelayMs());
+    assertEquals("ERR unknown command: heal", control.execute("heal"));
+    assertEquals("ERR missing argument to block", control.execute("block"));
+  }
+
+  @Test
+  public void testReconnectsToRestartedNode() throws Exception {
+    assertTrue(client.send(Map.of("node1", List.of("delay 1"))).isEmpty());
+    int port = control.getPort();
+    control.stop();
+
+    // the old connection broke with the node, the next batch finds the new one
+    faults = new LinkFaults(0, 0);
+    control = new NodeControl("node1", faults);
+    control.start(port);
+    assertTrue(client.send(Map.of("node1", List.of("block node2"))).isEmpty());
+    assertTrue(faults.isBlocked("node2"));
+  }
+
+  @Test
+  public void testSilentNodeIsNotRetried() throws Exception {
+    // accepts like a paused container's kernel does, but never answers
+    try (ServerSocket silent = new ServerSocket(0)) {
+      AtomicInteger accepted = new AtomicInteger();
+      Thread acceptor = new Thread(() -> {
+        List<Socket> sockets = new ArrayList<>();
+        try {
+          while (true) {
+            sockets.add(silent.accept());
+            accepted.incrementAndGet();
+          }
+        } catch (IOException e) {
+          sockets.forEach(socket -> {
+            try {
+              socket.close();
+            } catch (IOException ignored) {
+            }
+          });
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+
+      try (NodeControlClient silentClient = new NodeControlClient(nodeId -> "localhost", silent.getLocalPort())) {
+        Map<String, String> failures = silentClient.send(Map.of("node1", List.of("reset")));
+        assertEquals("No reply within 5000ms", failures.get("node1"));
+      }
+      assertEquals(1, accepted.get());
+    }
+  }
+
+  @Test
+  public void testHeldDeliveryWaitsForRelease() throws Exception {
+    faults.hold();
+    CountDownLatch delivered = new CountDownLatch(1);
+    Thread receiver = new Thread(() -> {
+      try {
+        faults.awaitDelivery();
+        delivered.countDown();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    receiver.start();
+
+    assertFalse(delivered.await(100, TimeUnit.MILLISECONDS));
+    assertTrue(client.send(Map.of("node1", List.of("release"))).isEmpty());
+    assertTrue(delivered.await(1, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,31 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NodeImageTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testTagFollowsContent() throws Exception {
+    Path jar = folder.newFile("node-runner.jar").toPath();
+    Path dockerfile = folder.newFile("Dockerfile.node").toPath();
+    Files.write(jar, new byte[] { 1, 2, 3 });
+    Files.write(dockerfile, "FROM scratch".getBytes());
+
+    String tag = NodeImage.tagFor(jar, dockerfile);
+    assertTrue(tag.matches("distro/node:[0-9a-f]{16}"));
+    assertEquals(tag, NodeImage.tagFor(jar, dockerfile));
+
+    Files.write(jar, new byte[] { 1, 2, 4 });
+    assertNotEquals(tag, NodeImage.tagFor(jar, dockerfile));
+  }
+}
@@ -0,0 +1,60 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+public class NodeMetricsTest {
+
+  @Test
+  public void testHistogramQuantilesWithinPrecision() {
+    Histogram histogram = new Histogram();
+    for (long i = 1; i <= 100_000; i++) {
+      histogram.record(i);
+    }
+    assertEquals(100_000, histogram.getCount());
+    assertEquals(100_000L * 100_001 / 2, histogram.getSum());
+
+    long median = histogram.getValueAtQuantile(0.5);
+    long p99 = histogram.getValueAtQuantile(0.99);
+    assertTrue("median " + median, Math.abs(median - 50_000) <= 50_000 * 0.035);
+    assertTrue("p99 " + p99, Math.abs(p99 - 99_000) <= 99_000 * 0.035);
+    assertEquals(0, new Histogram().getValueAtQuantile(0.5));
+  }
+
+  @Test
+  public void testBucketsCoverAllValues() {
+    for (long value : new long[] { 0, 1, 31, 32, 33, 1000, 1L << 40, Long.MAX_VALUE }) {
+      long highest = Histogram.highestEquivalent(Histogram.bucketOf(value));
+      assertTrue(value + " -> " + highest, highest >= value);
+      assertTrue(value + " -> " + highest, highest - value <= Math.max(1, value / 32));
+    }
+  }
+
+  @Test
+  public void testPrometheusExposition() {
+    NodeMetrics metrics = new NodeMetrics("node1", () -> 3);
+    metrics.messagesSent.add(5);
+    metrics.droppedOnReceive.increment();
+    metrics.delayMillis.record(20);
+
+    String text = metrics.toPrometheus();
+    assertTrue(text.contains("# TYPE distro_messages_sent_total counter\n"));
+    assertTrue(text.contains("distro_messages_sent_total{node=\"node1\"} 5\n"));
+    assertTrue(text.contains("distro_messages_dropped_total{node=\"node1\",side=\"receive\"} 1\n"));
+    assertTrue(text.contains("distro_inbox_depth{node=\"node1\"} 3\n"));
+    assertTrue(text.contains("distro_applied_delay_milliseconds{node=\"node1\",quantile=\"0.5\"} 20\n"));
+    assertTrue(text.contains("distro_applied_delay_milliseconds_count{node=\"node1\"} 1\n"));
+
+    // the monitor merges the nodes' expositions
+    MonitorState state = new MonitorState();
+    state.apply(new MessageEvent("METRICS", "node1", null, text, 1));
+    state.apply(new MessageEvent("METRICS", "node2", null, new NodeMetrics("node2", () -> 0).toPrometheus(), 1));
+    String merged = state.toMetrics();
+    assertEquals(merged.indexOf("# TYPE distro_inbox_depth gauge"),
+        merged.lastIndexOf("# TYPE distro_inbox_depth gauge"));
+    assertTrue(merged.contains("distro_inbox_depth{node=\"node2\"} 0\n"));
+  }
+}
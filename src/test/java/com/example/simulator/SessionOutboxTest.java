@@ -0,0 +1,171 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+public class SessionOutboxTest {
+
+  @Mock
+  private Session session;
+
+  @Mock
+  private RemoteEndpoint remote;
+
+  // writes the fake frontend has not completed yet
+  private final List<WriteCallback> pendingWrites = new ArrayList<>();
+  private final List<String> written = new ArrayList<>();
+  private final List<byte[]> writtenBinary = new ArrayList<>();
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.openMocks(this);
+    when(session.getRemote()).thenReturn(remote);
+    when(session.isOpen()).thenReturn(true);
+    doAnswer(invocation -> {
+      written.add(invocation.getArgument(0));
+      pendingWrites.add(invocation.getArgument(1));
+      return null;
+    }).when(remote).sendString(anyString(), any(WriteCallback.class));
+    doAnswer(invocation -> {
+      ByteBuffer buffer = invocation.getArgument(0);
+      byte[] frame = new byte[buffer.remaining()];
+      buffer.get(frame);
+      writtenBinary.add(frame);
+      pendingWrites.add(invocation.getArgument(1));
+      return null;
+    }).when(remote).sendBytes(any(ByteBuffer.class), any(WriteCallback.class));
+  }
+
+  private static MessageEvent event(String type, String from, long timestamp) {
+    MessageEvent event = new MessageEvent();
+    event.type = type;
+    event.fromNode = from;
+    event.toNode = "node0";
+    event.timestamp = timestamp;
+    return event;
+  }
+
+  private List<BinaryEventCodec.Event> decodeWritten() {
+    BinaryEventCodec.Decoder decoder = new BinaryEventCodec.Decoder();
+    List<BinaryEventCodec.Event> events = new ArrayList<>();
+    for (byte[] frame : writtenBinary) {
+      events.addAll(decoder.decode(frame));
+    }
+    return events;
+  }
+
+  @Test
+  public void testBinaryFramesDecodeAfterDrops() {
+    SessionOutbox outbox = new SessionOutbox(session, 2, SessionOutbox.SlowConsumerPolicy.DROP_OLDEST);
+    outbox.setEncoder(new BinaryEventCodec.Encoder());
+
+    // event 1 is in flight, 2 and 3 are dropped along with the first use of
+    // node2 and node3, which later events refer to
+    outbox.offerEvent(event("MESSAGE_SENT", "node1", 100), 1);
+    outbox.offerEvent(event("MESSAGE_RECEIVED", "node2", 200), 2);
+    outbox.offerEvent(event("MESSAGE_DROPPED", "node3", 300), 3);
+    outbox.offerEvent(event("MESSAGE_RECEIVED", "node2", 400), 4);
+    outbox.offerEvent(event("MESSAGE_DROPPED", "node3", 500), 5);
+    assertEquals(2, outbox.getStats().dropped);
+
+    pendingWrites.remove(0).writeSuccess();
+    pendingWrites.remove(0).writeSuccess();
+    List<BinaryEventCodec.Event> events = decodeWritten();
+    assertEquals(3, events.size());
+    assertEquals(1, events.get(0).id);
+    assertEquals(4, events.get(1).id);
+    assertEquals("node2", events.get(1).event.fromNode);
+    assertEquals("MESSAGE_RECEIVED", events.get(1).event.type);
+    assertEquals(400, events.get(1).event.timestamp);
+    assertEquals(5, events.get(2).id);
+    assertEquals("node3", events.get(2).event.fromNode);
+    assertEquals(500, events.get(2).event.timestamp);
+  }
+
+  @Test
+  public void testFailedBinaryFrameStartsOver() {
+    SessionOutbox outbox = new SessionOutbox(session, 10, SessionOutbox.SlowConsumerPolicy.DROP_OLDEST);
+    outbox.setEncoder(new BinaryEventCodec.Encoder());
+
+    outbox.offerEvent(event("MESSAGE_SENT", "node1", 100), 1);
+    outbox.offerEvent(event("MESSAGE_SENT", "node1", 200), 2);
+    pendingWrites.remove(0).writeFailed(new RuntimeException("connection reset"));
+    writtenBinary.remove(0);
+    pendingWrites.remove(0).writeSuccess();
+
+    // the client never saw the first frame, the second has to stand on its own
+    List<BinaryEventCodec.Event> events = decodeWritten();
+    assertEquals(1, events.size());
+    assertEquals(2, events.get(0).id);
+    assertEquals("node1", events.get(0).event.fromNode);
+    assertEquals(200, events.get(0).event.timestamp);
+  }
+
+  @Test
+  public void testWritesOneMessageAtATime() {
+    SessionOutbox outbox = new SessionOutbox(session, 10, SessionOutbox.SlowConsumerPolicy.DROP_OLDEST);
+
+    outbox.offer("a");
+    outbox.offer("b");
+    outbox.offer("c");
+    assertEquals(List.of("a"), written);
+
+    pendingWrites.remove(0).writeSuccess();
+    pendingWrites.remove(0).writeSuccess();
+    assertEquals(List.of("a", "b", "c"), written);
+
+    SessionOutbox.Stats stats = outbox.getStats();
+    assertEquals(2, stats.sent);
+    assertEquals(0, stats.queued);
+    assertEquals(2, stats.highWater);
+  }
+
+  @Test
+  public void testDropsOldestWhenBehind() {
+    SessionOutbox outbox = new SessionOutbox(session, 2, SessionOutbox.SlowConsumerPolicy.DROP_OLDEST);
+
+    // "a" is in flight, the frontend never acknowledges it
+    outbox.offer("a");
+    assertTrue(outbox.offer("b"));
+    assertTrue(outbox.offer("c"));
+    assertFalse(outbox.offer("d"));
+
+    pendingWrites.remove(0).writeSuccess();
+    pendingWrites.remove(0).writeSuccess();
+    assertEquals(List.of("a", "c", "d"), written);
+    assertEquals(1, outbox.getStats().dropped);
+    verify(session, never()).close(anyInt(), anyString());
+  }
+
+  @Test
+  public void testDisconnectsSlowConsumer() {
+    SessionOutbox outbox = new SessionOutbox(session, 2, SessionOutbox.SlowConsumerPolicy.DISCONNECT);
+
+    outbox.offer("a");
+    outbox.offer("b");
+    outbox.offer("c");
+    assertFalse(outbox.offer("d"));
+
+    verify(session).close(anyInt(), anyString());
+    assertTrue(outbox.isClosed());
+    assertFalse(outbox.offer("e"));
+    assertEquals(3, outbox.getStats().dropped);
+  }
+}
@@ -0,0 +1,53 @@
+package com.example.simulator;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.example.simulator.MessageReporter.MessageEvent;
+
+public class SubscriptionTest {
+
+  @Test
+  public void testNodesAndEdges() {
+    Subscription subscription = Subscription.parse(
+        "{\"type\":\"SUBSCRIBE\",\"nodes\":[\"node1\"],\"edges\":[{\"from\":\"node2\",\"to\":\"node3\"}]}");
+
+    assertTrue(subscription.matches(new MessageEvent("SENT", "node1", "node4", "m", 1)));
+    assertTrue(subscription.matches(new MessageEvent("RECEIVED", "node4", "node1", "m", 1)));
+    assertTrue(subscription.matches(new MessageEvent("SENT", "node2", "node3", "m", 1)));
+    assertFalse(subscription.matches(new MessageEvent("SENT", "node3", "node2", "m", 1)));
+    assertFalse(subscription.matches(new MessageEvent("SENT", "node4", "node5", "m", 1)));
+    // events without nodes are not filtered by node
+    assertTrue(subscription.matches(new MessageEvent("REPORTER_STATS", null, null, "{}", 1)));
+  }
+
+  @Test
+  public void testTypesAndSampling() {
+    Subscription subscription = Subscription.parse(
+        "{\"type\":\"SUBSCRIBE\",\"types\":[\"DROPPED\"],\"sampleRate\":0.25}");
+
+    int matched = 0;
+    for (int i = 0; i < 100; i++) {
+      assertFalse(subscription.matches(new MessageEvent("SENT", "node1", "node2", "m", i)));
+      if (subscription.matches(new MessageEvent("DROPPED", "node1", "node2", "m", i))) {
+        matched++;
+      }
+    }
+    assertEquals(25, matched);
+  }
+
+  @Test
+  public void testInvalidSubscription() {
+    try {
+      Subscription.parse("{\"type\":\"SUBSCRIBE\",\"sampleRate\":0}");
+      fail("A zero sample rate should be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      Subscription.parse("not json");
+      fail("Malformed JSON should be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -5,6 +5,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.example.model.NodeConfig;
+import com.example.model.ResourceProfile;
 import java.io.File;
 import java.util.Map;
 
@@ -70,6 +71,51 @@ public class TopologyManagerTest {
     assertEquals("LeaderElection", nodes.get("fc-node-0").getProgramName());
   }
 
+  @Test
+  public void testLoadStorageConfig() throws Exception {
+    TopologyManager manager = new TopologyManager(TEST_RESOURCES + "test-topology-storage.yml");
+    Map<String, Object> storageConfig = manager.getStorageConfig();
+
+    assertEquals("offheap", storageConfig.get("type"));
+    assertEquals(1048576, ((Number) storageConfig.get("max_bytes")).longValue());
+    assertEquals(60000, ((Number) storageConfig.get("ttl_ms")).longValue());
+  }
+
+  @Test
+  public void testLoadResourceProfiles() throws Exception {
+    TopologyManager manager = new TopologyManager(TEST_RESOURCES + "test-topology-resources.yml");
+    Map<String, NodeConfig> nodes = manager.getNodes();
+
+    // group settings on top of the defaults
+    ResourceProfile ringNode = nodes.get("ring-node-1").getResources();
+    assertEquals(256L * 1024 * 1024, ringNode.getMemoryBytes().longValue());
+    assertEquals(0.5, ringNode.getCpus(), 0.0);
+    assertEquals("auto", ringNode.getCpuset());
+    assertEquals("-XX:+UseSerialGC -XX:MaxRAMPercentage=75", ringNode.jvmOptions());
+
+    // a single node of the group overridden, its peers kept
+    ResourceProfile overridden = nodes.get("ring-node-0").getResources();
+    assertEquals(2.0, overridden.getCpus(), 0.0);
+    assertEquals(2, overridden.coreCount());
+    assertEquals("auto", overridden.getCpuset());
+    assertTrue(nodes.get("ring-node-0").getPeerNodeIds().contains("ring-node-1"));
+
+    ResourceProfile coordinator = nodes.get("coordinator").getResources();
+    assertEquals(1024L * 1024 * 1024, coordinator.getMemoryBytes().longValue());
+    assertEquals("-XX:+UseG1GC -Xmx786432k", coordinator.jvmOptions());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidResourceProfile() {
+    ResourceProfile.fromMap(Map.of("memory", "256m", "heap", "512m"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testHeapAboveMergedMemoryLimit() throws Exception {
+    // the group's heap is fine on its own, not with the node's smaller limit
+    new TopologyManager(TEST_RESOURCES + "test-topology-invalid-heap.yml");
+  }
+
   @Test(expected = Exception.class)
   public void testInvalidTopology() throws Exception {
     // This should throw an exception due to invalid topology
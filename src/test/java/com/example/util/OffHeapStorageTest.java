@@ -0,0 +1,109 @@
+package com.example.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class OffHeapStorageTest {
+
+  @Test
+  public void testPutAndGet() {
+    OffHeapStorage storage = new OffHeapStorage(64 * 1024, 0);
+
+    StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      longValue.append("spans-several-blocks-");
+    }
+
+    storage.put("leader", "node-3");
+    storage.put("payload", longValue.toString());
+    storage.putLong("round", 42L);
+    storage.putInt("votes", 7);
+    storage.putDouble("ratio", 0.5);
+    storage.putBoolean("voted", true);
+
+    assertEquals("node-3", storage.get("leader"));
+    assertEquals(longValue.toString(), storage.get("payload"));
+    assertEquals(42L, storage.getLong("round", -1));
+    assertEquals(7, storage.getInt("votes", -1));
+    assertEquals(0.5, storage.getDouble("ratio", -1), 0.0);
+    assertTrue(storage.getBoolean("voted", false));
+    assertEquals(-1, storage.getLong("missing", -1));
+    assertEquals(6, storage.size());
+
+    // boxed and primitive accessors see the same values
+    assertEquals(42L, storage.get("round"));
+    storage.put("round", 43L);
+    assertEquals(43L, storage.getLong("round", -1));
+
+    Map<String, Object> visited = new HashMap<>();
+    storage.forEach(visited::put);
+    assertEquals(storage.getAll(), visited);
+
+    storage.remove("payload");
+    assertFalse(storage.containsKey("payload"));
+    storage.clear();
+    assertEquals(0, storage.size());
+    assertEquals(0, storage.getUsedBytes());
+  }
+
+  @Test
+  public void testForEachCallbackCanUseStorage() {
+    OffHeapStorage storage = new OffHeapStorage(64 * 1024, 0);
+    storage.put("a", "1");
+    storage.put("b", "2");
+    storage.put("c", "3");
+
+    Map<String, Object> visited = new HashMap<>();
+    storage.forEach((key, value) -> {
+      visited.put(key, value);
+      storage.get("a");
+      storage.put("copy-" + key, value);
+    });
+
+    assertEquals(Map.of("a", "1", "b", "2", "c", "3"), visited);
+    assertEquals("3", storage.get("copy-c"));
+    assertEquals(6, storage.size());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    // room for exactly four single-block entries
+    OffHeapStorage storage = new OffHeapStorage(4 * 64, 0, 64);
+
+    for (int i = 0; i < 4; i++) {
+      storage.putLong("key-" + i, i);
+    }
+    // touch key-0 so key-1 becomes the eldest entry
+    storage.getLong("key-0", -1);
+    storage.putLong("key-4", 4);
+
+    assertEquals(4, storage.size());
+    assertEquals(1, storage.getEvictions());
+    assertTrue(storage.containsKey("key-0"));
+    assertFalse(storage.containsKey("key-1"));
+    assertTrue(storage.containsKey("key-4"));
+    assertEquals(storage.getCapacityBytes(), storage.getUsedBytes());
+  }
+
+  @Test
+  public void testExpiresEntries() throws Exception {
+    OffHeapStorage storage = new OffHeapStorage(64 * 1024, 50);
+
+    storage.put("last_message_from_a", "hello");
+    assertEquals("hello", storage.get("last_message_from_a"));
+
+    Thread.sleep(100);
+    assertNull(storage.get("last_message_from_a"));
+    assertEquals(0, storage.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsValueLargerThanBudget() {
+    OffHeapStorage storage = new OffHeapStorage(128, 0, 64);
+    storage.put("too-big", new byte[1024]);
+  }
+}
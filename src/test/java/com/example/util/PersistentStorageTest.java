@@ -0,0 +1,86 @@
+package com.example.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PersistentStorageTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRecoverFromLog() throws Exception {
+    File dir = folder.newFolder("node");
+
+    PersistentStorage storage = new PersistentStorage(dir.toPath());
+    storage.put("round", 3L);
+    storage.put("leader", "node-2");
+    storage.put("voted", true);
+    storage.put("peers", new java.util.ArrayList<>(Arrays.asList("a", "b")));
+    storage.put("stale", 1);
+    storage.remove("stale");
+    storage.close();
+
+    // Simulate the node restarting on the same volume
+    PersistentStorage recovered = new PersistentStorage(dir.toPath());
+    assertEquals(4, recovered.size());
+    assertEquals(3L, recovered.get("round"));
+    assertEquals("node-2", recovered.get("leader"));
+    assertEquals(true, recovered.get("voted"));
+    assertEquals(Arrays.asList("a", "b"), recovered.get("peers"));
+    assertFalse(recovered.containsKey("stale"));
+    recovered.close();
+  }
+
+  @Test
+  public void testRecoverAfterCompaction() throws Exception {
+    File dir = folder.newFolder("node");
+
+    // Small log so that it gets compacted into a snapshot several times
+    PersistentStorage storage = new PersistentStorage(dir.toPath(), 1024);
+    for (int i = 0; i < 500; i++) {
+      storage.put("key-" + (i % 10), i);
+    }
+    storage.clear();
+    storage.put("after-clear", "value");
+    storage.close();
+
+    assertTrue(new File(dir, PersistentStorage.SNAPSHOT_FILE).exists());
+
+    PersistentStorage recovered = new PersistentStorage(dir.toPath(), 1024);
+    assertEquals(1, recovered.size());
+    assertEquals("value", recovered.get("after-clear"));
+    recovered.close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsNonSerializableValues() throws Exception {
+    PersistentStorage storage = new PersistentStorage(folder.newFolder("node").toPath());
+    storage.put("thread", new Object());
+  }
+
+  @Test
+  public void testRejectsNullWithoutLoggingIt() throws Exception {
+    File dir = folder.newFolder("node");
+    PersistentStorage storage = new PersistentStorage(dir.toPath());
+    storage.put("a", 1L);
+    try {
+      storage.put("b", null);
+      fail("Expected null to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    storage.close();
+
+    PersistentStorage recovered = new PersistentStorage(dir.toPath());
+    assertEquals(1L, recovered.get("a"));
+    assertFalse(recovered.containsKey("b"));
+    recovered.close();
+  }
+}